@@ -0,0 +1,125 @@
+package it.unimore.programmazioneoggetti.budget;
+
+import it.unimore.programmazioneoggetti.budget.controller.LedgerApiServer;
+import it.unimore.programmazioneoggetti.budget.model.BudgetManager;
+import it.unimore.programmazioneoggetti.budget.model.Expense;
+import it.unimore.programmazioneoggetti.budget.model.Income;
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Strumento di prova di carico locale dell'API HTTP ({@link LedgerApiServer}): crea un
+ * conto sintetico, avvia il server su una porta libera e lo interroga da
+ * più client in parallelo, riportando richieste al secondo e latenze.
+ * Il carico è composto per lo più da letture (saldo e intervalli di date)
+ * con una piccola quota di inserimenti, che invalidano l'istantanea.
+ * <pre>
+ * mvn -q exec:java -Dexec.mainClass=it.unimore.programmazioneoggetti.budget.ApiLoadTool \
+ *     -Dexec.args="100000 16 10"
+ * </pre>
+ * Argomenti (facoltativi): righe del conto, client concorrenti, durata in secondi.
+ */
+public class ApiLoadTool {
+
+    /** Una richiesta su {@code WRITE_EVERY} è un inserimento. */
+    private static final int WRITE_EVERY = 200;
+
+    /** Punto di ingresso dello strumento. */
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        // come nell'applicazione (vedi App.main), da impostare prima di creare il server
+        if (System.getProperty(LedgerApiServer.NODELAY_PROPERTY) == null) {
+            System.setProperty(LedgerApiServer.NODELAY_PROPERTY, "true");
+        }
+
+        BudgetManager model = new BudgetManager();
+        List<Transaction> data = new ArrayList<>(rows);
+        LocalDate first = LocalDate.now().minusYears(5);
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        for (int i = 0; i < rows; i++) {
+            LocalDate d = first.plusDays(rnd.nextInt(5 * 365));
+            BigDecimal amount = BigDecimal.valueOf(rnd.nextInt(1, 100_000), 2);
+            data.add(i % 3 == 0 ? new Income(d, "Entrata " + i, amount) : new Expense(d, "Spesa " + i, amount));
+        }
+        model.addAll(data);
+
+        // senza interfaccia i comandi vengono applicati direttamente (sul thread grafico)
+        LedgerApiServer server = new LedgerApiServer(0, model, command -> command.apply(model));
+        server.start();
+        String base = "http://127.0.0.1:" + server.getPort() + "/api";
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong ok = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long[][] latencies = new long[clients][];
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            final int id = c;
+            threads[c] = new Thread(() -> {
+                long[] lat = new long[1 << 16];
+                int n = 0;
+                long count = 0;
+                while (System.nanoTime() < deadline) {
+                    HttpRequest request = nextRequest(base, count++);
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() < 300) ok.incrementAndGet(); else failed.incrementAndGet();
+                    } catch (Exception ex) {
+                        failed.incrementAndGet();
+                    }
+                    if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                    lat[n++] = System.nanoTime() - start;
+                }
+                latencies[id] = Arrays.copyOf(lat, n);
+            }, "load-" + c);
+            threads[c].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        server.stop();
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("Righe: %d, client: %d, durata: %d s%n", rows, clients, seconds);
+        System.out.printf("Richieste riuscite: %d, fallite: %d, %.0f richieste/s%n",
+                ok.get(), failed.get(), (ok.get() + failed.get()) / (double) seconds);
+        if (all.length > 0) {
+            System.out.printf("Latenza p50: %.2f ms, p99: %.2f ms, max: %.2f ms%n",
+                    all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6, all[all.length - 1] / 1e6);
+        }
+        System.exit(0);
+    }
+
+    private static HttpRequest nextRequest(String base, long count) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        if (count % WRITE_EVERY == WRITE_EVERY - 1) {
+            String body = "{\"date\":\"" + LocalDate.now() + "\",\"description\":\"Carico " + count
+                    + "\",\"amount\":\"1.00\",\"type\":\"Expense\"}";
+            return HttpRequest.newBuilder(URI.create(base + "/transactions"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        }
+        if (rnd.nextBoolean()) {
+            return HttpRequest.newBuilder(URI.create(base + "/balance")).GET().build();
+        }
+        LocalDate from = LocalDate.now().minusDays(rnd.nextInt(5 * 365));
+        return HttpRequest.newBuilder(URI.create(base + "/transactions?from=" + from + "&to=" + from.plusDays(7)
+                + "&limit=50")).GET().build();
+    }
+}
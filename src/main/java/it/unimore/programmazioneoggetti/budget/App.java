@@ -1,25 +1,49 @@
 package it.unimore.programmazioneoggetti.budget;
 
 import it.unimore.programmazioneoggetti.budget.controller.BudgetController;
+import it.unimore.programmazioneoggetti.budget.controller.LedgerApiServer;
 import it.unimore.programmazioneoggetti.budget.model.BudgetManager;
+import it.unimore.programmazioneoggetti.budget.model.LedgerRegistry;
+import it.unimore.programmazioneoggetti.budget.util.Metrics;
+import it.unimore.programmazioneoggetti.budget.util.SessionSnapshot;
 import it.unimore.programmazioneoggetti.budget.view.BudgetFrame;
 
 import javax.swing.SwingUtilities;
 
 /**
  * Classe principale che avvia l'applicazione Gestione Bilancio.
- * Crea il model, la view e il controller, e lancia il tutto sul
- * thread per l'interfaccia grafica.
+ * Crea il registro dei conti, la view e il controller, e lancia il tutto sul
+ * thread per l'interfaccia grafica. La finestra viene mostrata subito; la
+ * sessione precedente viene ripristinata in background e la registrazione
+ * JMX delle metriche avviene fuori dal thread grafico.
  */
 public class App {
 
+    /** Numero massimo di conti tenuti contemporaneamente in memoria. */
+    private static final int MAX_RESIDENT_ACCOUNTS = 8;
+
+    /**
+     * Proprietà di sistema usata dal profilo Maven {@code appcds}: se vale
+     * {@code true} l'applicazione termina appena la sessione è ripristinata,
+     * così la JVM può scrivere l'archivio delle classi caricate all'avvio.
+     */
+    static final String TRAINING_EXIT_PROPERTY = "budget.trainingExit";
+
     /** Punto di ingresso dell’applicazione. */
     public static void main(String[] args) {
+        // risposte dell'API locale senza il ritardo di Nagle, salvo diversa scelta all'avvio
+        if (System.getProperty(LedgerApiServer.NODELAY_PROPERTY) == null) {
+            System.setProperty(LedgerApiServer.NODELAY_PROPERTY, "true");
+        }
         SwingUtilities.invokeLater(() -> {
-            BudgetManager model = new BudgetManager();
+            LedgerRegistry registry = new LedgerRegistry(MAX_RESIDENT_ACCOUNTS);
+            registry.registerInMemory(BudgetController.DEFAULT_ACCOUNT, new BudgetManager());
             BudgetFrame view = new BudgetFrame();
             view.setVisible(true);
-            new BudgetController(model, view);
+            BudgetController controller = new BudgetController(registry, BudgetController.DEFAULT_ACCOUNT, view);
+            Runnable whenDone = Boolean.getBoolean(TRAINING_EXIT_PROPERTY) ? () -> System.exit(0) : null;
+            controller.restoreSession(SessionSnapshot.defaultFile(), whenDone);
         });
+        Metrics.registerMBean();
     }
 }
@@ -0,0 +1,129 @@
+package it.unimore.programmazioneoggetti.budget;
+
+import it.unimore.programmazioneoggetti.budget.model.AggregationEngine;
+import it.unimore.programmazioneoggetti.budget.model.BudgetManager;
+import it.unimore.programmazioneoggetti.budget.model.Expense;
+import it.unimore.programmazioneoggetti.budget.model.Income;
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+import it.unimore.programmazioneoggetti.budget.model.TransactionQuery;
+import it.unimore.programmazioneoggetti.budget.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Interrogazione da riga di comando di un file CSV, senza interfaccia
+ * grafica. Esempio:
+ * <pre>
+ * mvn -q exec:java -Dexec.mainClass=it.unimore.programmazioneoggetti.budget.QueryCli \
+ *     -Dexec.args="movimenti.csv --from 01/01/2024 --type uscita --sort importo --limit 10"
+ * </pre>
+ * Opzioni: {@code --from}, {@code --to} (gg/MM/aaaa), {@code --type}
+ * (entrata|uscita), {@code --min}, {@code --max}, {@code --text}, {@code --category},
+ * {@code --sort} (data|descrizione|importo), {@code --desc}, {@code --limit},
+ * {@code --rates} (file dei tassi di cambio per il totale, vedi
+ * {@link FileUtil#loadExchangeRates(File)}).
+ */
+public class QueryCli {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    /** Punto di ingresso dello strumento. */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        TransactionQuery q = new TransactionQuery();
+        LocalDate from = null;
+        LocalDate to = null;
+        BigDecimal min = null;
+        BigDecimal max = null;
+        TransactionQuery.SortKey sort = null;
+        boolean ascending = true;
+        File ratesFile = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String opt = args[i];
+                if (opt.equals("--desc")) {
+                    ascending = false;
+                    continue;
+                }
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Valore mancante per " + opt);
+                String value = args[++i];
+                switch (opt) {
+                    case "--from":  from = LocalDate.parse(value, DATE_FORMATTER); break;
+                    case "--to":    to = LocalDate.parse(value, DATE_FORMATTER); break;
+                    case "--min":   min = new BigDecimal(value); break;
+                    case "--max":   max = new BigDecimal(value); break;
+                    case "--text":  q.descriptionContains(value); break;
+                    case "--category": q.inCategory(value); break;
+                    case "--limit": q.limit(Integer.parseInt(value)); break;
+                    case "--type":  q.ofType(parseType(value)); break;
+                    case "--sort":  sort = parseSort(value); break;
+                    case "--rates": ratesFile = new File(value); break;
+                    default: throw new IllegalArgumentException("Opzione sconosciuta: " + opt);
+                }
+            }
+        } catch (DateTimeParseException ex) {
+            System.err.println("Formato data non valido. Usa gg/MM/aaaa");
+            System.exit(2);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            usage();
+            System.exit(2);
+        }
+        q.between(from, to).amountBetween(min, max).sortBy(sort, ascending);
+
+        BudgetManager model = new BudgetManager();
+        try {
+            model.addAll(FileUtil.loadFromCSV(new File(args[0])));
+            if (ratesFile != null) model.setExchangeRates(FileUtil.loadExchangeRates(ratesFile));
+        } catch (IOException ex) {
+            System.err.println("Errore durante il caricamento: " + ex.getMessage());
+            System.exit(1);
+        }
+        List<Transaction> result = model.query(q);
+        for (Transaction t : result) {
+            System.out.println(t.getDate().format(DATE_FORMATTER) + "," + t.getDescription() + ","
+                    + t.getAmount().toPlainString() + "," + t.getClass().getSimpleName() + "," + t.getCategory()
+                    + "," + t.getCurrency());
+        }
+        try {
+            BigDecimal total = AggregationEngine.sumConverted(result, model.getExchangeRates());
+            System.out.println(result.size() + " transazioni, totale " + total.toPlainString() + " "
+                    + model.getReportingCurrency());
+        } catch (IllegalStateException ex) {
+            System.out.println(result.size() + " transazioni, totale n/d (" + ex.getMessage() + ")");
+        }
+    }
+
+    private static Class<? extends Transaction> parseType(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "entrata": case "income":  return Income.class;
+            case "uscita":  case "expense": return Expense.class;
+            default: throw new IllegalArgumentException("Tipo non valido: " + value);
+        }
+    }
+
+    private static TransactionQuery.SortKey parseSort(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "data":        return TransactionQuery.SortKey.DATE;
+            case "descrizione": return TransactionQuery.SortKey.DESCRIPTION;
+            case "importo":     return TransactionQuery.SortKey.AMOUNT;
+            default: throw new IllegalArgumentException("Ordinamento non valido: " + value);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Uso: QueryCli <file.csv> [--from gg/MM/aaaa] [--to gg/MM/aaaa]"
+                + " [--type entrata|uscita] [--min n] [--max n] [--text testo] [--category categoria]"
+                + " [--sort data|descrizione|importo] [--desc] [--limit n] [--rates tassi.csv]");
+    }
+}
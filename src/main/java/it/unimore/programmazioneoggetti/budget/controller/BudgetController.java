@@ -1,24 +1,59 @@
 package it.unimore.programmazioneoggetti.budget.controller;
 
+import it.unimore.programmazioneoggetti.budget.model.ArchiveStore;
+import it.unimore.programmazioneoggetti.budget.model.BudgetLimits;
 import it.unimore.programmazioneoggetti.budget.model.BudgetManager;
+import it.unimore.programmazioneoggetti.budget.model.CashFlowForecaster;
+import it.unimore.programmazioneoggetti.budget.model.DailySeries;
+import it.unimore.programmazioneoggetti.budget.model.DuplicateIndex;
+import it.unimore.programmazioneoggetti.budget.model.ExchangeRates;
+import it.unimore.programmazioneoggetti.budget.model.LedgerCommand;
+import it.unimore.programmazioneoggetti.budget.model.CommandLog;
 import it.unimore.programmazioneoggetti.budget.model.Income;
+import it.unimore.programmazioneoggetti.budget.model.LedgerRegistry;
+import it.unimore.programmazioneoggetti.budget.model.Reconciler;
+import it.unimore.programmazioneoggetti.budget.model.RecurringTemplate;
 import it.unimore.programmazioneoggetti.budget.model.Transaction;
+import it.unimore.programmazioneoggetti.budget.model.TransactionQuery;
+import it.unimore.programmazioneoggetti.budget.model.YearSummary;
 import it.unimore.programmazioneoggetti.budget.model.Expense;
 import it.unimore.programmazioneoggetti.budget.view.BudgetFrame;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.Period;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import it.unimore.programmazioneoggetti.budget.util.CsvFollower;
+import it.unimore.programmazioneoggetti.budget.util.CsvImporter;
 import it.unimore.programmazioneoggetti.budget.util.FileUtil;
+import it.unimore.programmazioneoggetti.budget.util.GzipArchiveStore;
+import it.unimore.programmazioneoggetti.budget.util.LedgerEvents;
+import it.unimore.programmazioneoggetti.budget.util.Metrics;
+import it.unimore.programmazioneoggetti.budget.util.SessionSnapshot;
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.io.UncheckedIOException;
 import javax.swing.JFileChooser;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import java.text.ParseException;
 
 /**
  * Controller per l'applicazione Gestione Bilancio.
@@ -27,12 +62,61 @@ import javax.swing.filechooser.FileNameExtensionFilter;
  */
 public class BudgetController {
 
-    private final BudgetManager model;
+    /** Nome del conto creato quando il controller riceve un singolo model. */
+    public static final String DEFAULT_ACCOUNT = "Principale";
+
+    private final LedgerRegistry registry;
     private final BudgetFrame view;
 
+    // Conto corrente e relativo model (cambiano quando l'utente seleziona un altro conto)
+    private String currentAccount;
+    private BudgetManager model;
+
+    /** Limiti della storia Annulla/Ripeti di ciascun conto. */
+    private static final int  UNDO_MAX_COMMANDS     = 200;
+    private static final long UNDO_MAX_TRANSACTIONS = 1_000_000L;
+
+    // Registrazione JFR avviata dal menu (null se nessuna)
+    private Recording recording;
+
+    // File CSV seguito in modalità “tail” (null se nessuno)
+    private CsvFollower follower;
+
+    // API HTTP locale (null se non avviata)
+    private LedgerApiServer apiServer;
+
+    // File della sessione da salvare alla chiusura (null = sessione non salvata)
+    private File sessionFile;
+
+    // Dati mostrati nei grafici: model (debole, per non trattenere conti scaricati), versione e giorno
+    private WeakReference<BudgetManager> chartModel = new WeakReference<>(null);
+    private long chartVersion;
+    private LocalDate chartDay;
+
+    // Storia dei comandi per ogni conto: sopravvive allo scaricamento del conto dal registro
+    private final Map<String, CommandLog> commandLogs = new HashMap<>();
+
+    // Model a cui è già registrato l'ascoltatore dei limiti di spesa
+    private final Map<BudgetManager, Boolean> limitWatched = new WeakHashMap<>();
+
     /** Formatter per parsing e formattazione di date (gg/MM/aaaa). */
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
+    /** Latenza di {@link #refreshView()} (vedi Metrics). */
+    private static final Metrics.Timer REFRESH_VIEW = Metrics.timer("view.refresh");
+
+    /** Orizzonte della previsione del saldo, in giorni. */
+    private static final int FORECAST_HORIZON_DAYS = 365;
+
+    /** Periodicità proposte per le transazioni ricorrenti. */
+    private static final Map<String, Period> RECURRENCE_INTERVALS = new LinkedHashMap<>();
+    static {
+        RECURRENCE_INTERVALS.put("Settimanale", Period.ofWeeks(1));
+        RECURRENCE_INTERVALS.put("Mensile", Period.ofMonths(1));
+        RECURRENCE_INTERVALS.put("Trimestrale", Period.ofMonths(3));
+        RECURRENCE_INTERVALS.put("Annuale", Period.ofYears(1));
+    }
+
     /**
      * Costruisce il controller, inizializza i dati di default nella view
      * e registra tutti gli ActionListener per i bottoni e le voci di menu.
@@ -41,8 +125,28 @@ public class BudgetController {
      * @param view  istanza di {@link BudgetFrame} sulla quale si registrano gli eventi
      */
     public BudgetController(BudgetManager model, BudgetFrame view) {
-        this.model = model;
+        this(singleAccount(model), DEFAULT_ACCOUNT, view);
+    }
+
+    /**
+     * Costruisce il controller su un registro di più conti, mostrando
+     * inizialmente il conto indicato.
+     *
+     * @param registry registro dei conti disponibili
+     * @param account  nome del conto da aprire all'avvio
+     * @param view     istanza di {@link BudgetFrame} sulla quale si registrano gli eventi
+     * @throws IllegalArgumentException se il conto non è registrato o non può essere caricato
+     */
+    public BudgetController(LedgerRegistry registry, String account, BudgetFrame view) {
+        this.registry = registry;
         this.view = view;
+        this.currentAccount = account;
+        try {
+            this.model = registry.get(account);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Impossibile aprire il conto " + account, ex);
+        }
+        view.setAccounts(registry.getAccountNames(), account);
 
         // Imposta la data odierna nel form e aggiorna la vista
         String todayStr = LocalDate.now().format(dateFormatter);
@@ -58,17 +162,223 @@ public class BudgetController {
         view.addLoadCsvMenuListener(new LoadButtonListener());
         view.addLoadTxtMenuListener(new LoadTxtButtonListener());
         view.addExportTxtMenuListener(new ExportTextButtonListener());
+        view.addUndoMenuListener(e -> undoRedo(true));
+        view.addRedoMenuListener(e -> undoRedo(false));
+        view.addFilterDateButtonListener(new FilterDateButtonListener());
+        view.addAddRecurringMenuListener(new AddRecurringListener());
+        view.addRemoveRecurringMenuListener(new RemoveRecurringListener());
+        view.addForecastMenuListener(new ForecastListener());
+        view.addMergeCsvMenuListener(new MergeCsvListener());
+        view.addFollowCsvMenuListener(new FollowCsvListener());
+        view.addAttachArchiveMenuListener(e -> chooseArchive());
+        view.addStartRecordingMenuListener(e -> startRecording());
+        view.addDumpRecordingMenuListener(e -> dumpRecording());
+        view.addCloseYearMenuListener(new CloseYearListener());
+        view.addStopFollowMenuListener(e -> stopFollowing());
+        view.addStartApiMenuListener(e -> startApi());
+        view.addStopApiMenuListener(e -> stopApi());
+        view.addAddAccountMenuListener(new AddAccountListener());
+        view.addTotalBalanceMenuListener(new TotalBalanceListener());
+        view.addLoadExchangeRatesMenuListener(e -> chooseExchangeRates());
+        view.addReconcileMenuListener(new ReconcileListener());
+        view.addSpendingLimitsMenuListener(new SpendingLimitsListener());
+        view.addAccountSelectionListener(new AccountSelectionListener());
+        view.addTabChangeListener(e -> refreshCharts());
+
+        // Alla chiusura chiede se salvare i conti su file con modifiche pendenti, compatta i file
+        // con differenze e salva la sessione
+        view.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                stopFollowing();
+                stopApi();
+                List<String> modified = registry.getModifiedAccounts();
+                if (!modified.isEmpty() && JOptionPane.showConfirmDialog(view,
+                        "Salvare le modifiche ai conti " + String.join(", ", modified) + " sui loro file?",
+                        "Modifiche non salvate", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                    try {
+                        registry.flush();
+                    } catch (IOException ex) {
+                        JOptionPane.showMessageDialog(view,
+                                "Errore durante il salvataggio dei conti: " + ex.getMessage(),
+                                "Errore IO", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+                // i salvataggi della sessione hanno scritto solo le differenze:
+                // alla chiusura i file tornano completi, leggibili da altri programmi
+                try {
+                    registry.compact();
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(view,
+                            "Errore durante la compattazione dei conti: " + ex.getMessage(),
+                            "Errore IO", JOptionPane.ERROR_MESSAGE);
+                }
+                saveSession();
+            }
+        });
+    }
+
+    private static LedgerRegistry singleAccount(BudgetManager model) {
+        LedgerRegistry registry = new LedgerRegistry(1);
+        registry.registerInMemory(DEFAULT_ACCOUNT, model);
+        return registry;
     }
 
     /**
-     * Rilegge tutte le transazioni dal model, aggiorna la tabella della view
-     * e ricalcola il saldo totale visualizzato.
+     * Rilegge tutte le transazioni dal model (comprese le occorrenze ricorrenti
+     * fino a oggi), aggiorna la tabella della view e ricalcola il saldo totale
+     * visualizzato.
      */
     private void refreshView() {
-        List<Transaction> all = model.getAllTransactions();
+        long start = Metrics.start();
+        List<Transaction> all = model.getTransactionsUpTo(LocalDate.now());
         view.refreshTable(all);
+        view.setCategories(model.getCategories());
+        updateBalanceLabel();
+        CommandLog log = commands();
+        view.setUndoRedoEnabled(log.canUndo(), log.canRedo());
+        refreshCharts();
+        watchLimits();
+        view.showLimitAlerts(model.getLimitAlerts(YearMonth.now()));
+        REFRESH_VIEW.stop(start);
+    }
+
+    /**
+     * Registra, una volta per conto, l'ascoltatore dei limiti di spesa. Gli
+     * avvisi arrivano mentre il model viene modificato: la view viene
+     * aggiornata dopo, con invokeLater, così l'inserimento non aspetta
+     * l'interfaccia. L'etichetta mostra sempre lo stato del mese corrente:
+     * un avviso di un mese passato (es. da un'importazione) non la sostituisce.
+     * Gli avvisi dei conti non visibili vengono ignorati.
+     */
+    private void watchLimits() {
+        BudgetManager m = model;
+        if (limitWatched.put(m, Boolean.TRUE) != null) return;
+        m.addLimitListener(alerts -> SwingUtilities.invokeLater(() -> {
+            if (m == model) view.showLimitAlerts(m.getLimitAlerts(YearMonth.now()));
+        }));
+    }
+
+    /**
+     * Aggiorna i grafici con la serie giornaliera del conto corrente, solo se
+     * la scheda dei grafici è visibile e i dati sono cambiati dall'ultimo
+     * aggiornamento. Gli anni archiviati entrano come saldo iniziale, calcolato
+     * come nel saldo del conto. Se manca un tasso di cambio i grafici restano
+     * vuoti: il motivo è già riportato nell'etichetta del saldo.
+     */
+    private void refreshCharts() {
+        if (!view.isChartsTabSelected()) return;
+        LocalDate today = LocalDate.now();
+        if (chartModel.get() == model && chartVersion == model.getModCount() && today.equals(chartDay)) return;
+        try {
+            view.setChartData(model.getDailySeries(today), model.getArchivedBalance().doubleValue());
+        } catch (IllegalStateException ex) {
+            view.setChartData(DailySeries.of(List.of(), model.getExchangeRates()), 0);
+        }
+        chartModel = new WeakReference<>(model);
+        chartVersion = model.getModCount();
+        chartDay = today;
+    }
+
+    /**
+     * Esegue un comando sul conto corrente registrandolo nella storia
+     * Annulla/Ripeti e in un evento JFR di modifica.
+     */
+    private void execute(LedgerCommand command) {
+        LedgerEvents.Edit event = new LedgerEvents.Edit();
+        event.begin();
+        commands().execute(command);
+        commitEdit(event, command.getName(), command.weight());
+    }
+
+    /**
+     * Esegue un comando richiesto dall'interfaccia. Se il model lo rifiuta
+     * (ad esempio righe datate in un anno archiviato) mostra il motivo e
+     * lascia il conto invariato.
+     *
+     * @return {@code true} se il comando è stato eseguito
+     */
+    private boolean tryExecute(LedgerCommand command) {
+        try {
+            execute(command);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(view, ex.getMessage(), "Errore di input", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+
+    /**
+     * Annulla o ripete l'ultimo comando del conto corrente e aggiorna la vista.
+     *
+     * @param undo {@code true} per annullare, {@code false} per ripetere
+     */
+    private void undoRedo(boolean undo) {
+        LedgerEvents.Edit event = new LedgerEvents.Edit();
+        event.begin();
+        LedgerCommand command = undo ? commands().undo() : commands().redo();
+        if (command != null) {
+            commitEdit(event, (undo ? "Annulla " : "Ripeti ") + command.getName(), command.weight());
+        }
+        refreshView();
+    }
+
+    private static void commitEdit(LedgerEvents.Edit event, String operation, int rows) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.rowCount = rows;
+            event.commit();
+        }
+    }
+
+    /**
+     * Calcola il saldo del conto corrente registrando un evento JFR.
+     */
+    private BigDecimal balance() {
+        LedgerEvents.Balance event = new LedgerEvents.Balance();
+        event.begin();
         BigDecimal saldo = model.calculateTotalBalance();
-        view.updateBalanceLabel("Saldo: " + saldo.toString());
+        event.end();
+        if (event.shouldCommit()) {
+            event.rowCount = model.getAllTransactions().size();
+            event.balance = saldo.toString();
+            event.commit();
+        }
+        return saldo;
+    }
+
+    /**
+     * Aggiorna l'etichetta del saldo nella valuta di riferimento. Se manca il
+     * tasso di cambio di qualche riga il saldo non è calcolabile: l'etichetta
+     * mostra "n/d" con il motivo.
+     */
+    private void updateBalanceLabel() {
+        try {
+            BigDecimal saldo = balance();
+            view.updateBalanceLabel("Saldo: " + saldo.toString() + " " + model.getReportingCurrency());
+        } catch (IllegalStateException ex) {
+            view.updateBalanceLabel("Saldo: n/d (" + ex.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Ritorna la storia Annulla/Ripeti del conto corrente, creandola se necessario.
+     * Tutte le modifiche al model passano da qui per poter essere annullate.
+     */
+    private CommandLog commands() {
+        return commands(currentAccount, model);
+    }
+
+    /**
+     * Ritorna la storia Annulla/Ripeti di un conto, collegandola al model
+     * attuale del conto (che cambia se il registro lo ha scaricato e riletto).
+     */
+    private CommandLog commands(String account, BudgetManager manager) {
+        CommandLog log = commandLogs.computeIfAbsent(account,
+                a -> new CommandLog(manager, UNDO_MAX_COMMANDS, UNDO_MAX_TRANSACTIONS));
+        log.rebind(manager);
+        return log;
     }
 
     /**
@@ -119,11 +429,33 @@ public class BudgetController {
             return null;
         }
 
-        // 4) Crea l’oggetto Income o Expense in base al tipo selezionato
+        // 4) Controllo della valuta
+        String currency;
+        try {
+            currency = Transaction.normalizeCurrency(view.getCurrencyFieldText());
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(view,
+                    "Valuta non valida. Usa un codice di tre lettere (es. EUR, USD).",
+                    "Errore di input",
+                    JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+
+        // 5) Controllo della categoria (i separatori dei campi romperebbero i file salvati)
+        String category = view.getCategoryFieldText();
+        if (!Transaction.isValidCategory(category)) {
+            JOptionPane.showMessageDialog(view,
+                    "Categoria non valida: non può contenere virgole o tabulazioni.",
+                    "Errore di input",
+                    JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+
+        // 6) Crea l’oggetto Income o Expense in base al tipo selezionato
         if ("Income".equals(type)) {
-            return new Income(date, description, amount);
+            return new Income(date, description, amount, category, currency);
         } else {
-            return new Expense(date, description, amount);
+            return new Expense(date, description, amount, category, currency);
         }
     }
 
@@ -135,8 +467,7 @@ public class BudgetController {
         @Override
         public void actionPerformed(ActionEvent e) {
             Transaction t = parseFormInput();
-            if (t != null) {
-                model.addTransaction(t);
+            if (t != null && tryExecute(CommandLog.add(t))) {
                 refreshView();
                 // Ripristina il form con data odierna e campi vuoti
                 String todayStr = LocalDate.now().format(dateFormatter);
@@ -164,22 +495,22 @@ public class BudgetController {
 
             // Recupera la transazione selezionata
             Transaction oldT = view.getTransactionAt(selectedRow);
+            if (rejectRecurringOccurrence(oldT)) return;
             String dateStr = oldT.getDate().format(dateFormatter);
             view.setDefaultFormData(dateStr, oldT.getDescription(), oldT.getAmount().toString(),
                     (oldT instanceof Income) ? "Income" : "Expense");
+            view.setCategoryFieldText(oldT.getCategory());
+            view.setCurrencyFieldText(oldT.getCurrency());
 
             int response = JOptionPane.showConfirmDialog(view,
                     "Confermi la modifica dei dati nel form?",
                     "Conferma Modifica",
                     JOptionPane.YES_NO_OPTION);
             if (response == JOptionPane.YES_OPTION) {
-                model.removeTransaction(oldT);
                 Transaction newT = parseFormInput();
+                // Se input non valido, l’oggetto originale resta invariato
                 if (newT != null) {
-                    model.addTransaction(newT);
-                } else {
-                    // Se input non valido, reinserisce l’oggetto originale
-                    model.addTransaction(oldT);
+                    tryExecute(CommandLog.replace(oldT, newT));
                 }
                 refreshView();
                 String todayStr = LocalDate.now().format(dateFormatter);
@@ -188,6 +519,22 @@ public class BudgetController {
         }
     }
 
+    /**
+     * Mostra un errore se la transazione è un'occorrenza ricorrente, che non
+     * può essere modificata o eliminata singolarmente.
+     *
+     * @return {@code true} se l'operazione va interrotta
+     */
+    private boolean rejectRecurringOccurrence(Transaction t) {
+        if (!model.isRecurringOccurrence(t)) return false;
+        JOptionPane.showMessageDialog(view,
+                "La voce selezionata è generata da una ricorrenza.\n"
+                        + "Usa il menu “Ricorrenze” per modificarla.",
+                "Errore",
+                JOptionPane.ERROR_MESSAGE);
+        return true;
+    }
+
     /**
      * Listener per il pulsante “Elimina”: rimuove la transazione selezionata
      * dopo richiesta di conferma, poi aggiorna la vista.
@@ -204,12 +551,13 @@ public class BudgetController {
                 return;
             }
             Transaction toRemove = view.getTransactionAt(selectedRow);
+            if (rejectRecurringOccurrence(toRemove)) return;
             int response = JOptionPane.showConfirmDialog(view,
                     "Sei sicuro di voler eliminare: " + toRemove.getDescription() + "?",
                     "Conferma Eliminazione",
                     JOptionPane.YES_NO_OPTION);
             if (response == JOptionPane.YES_OPTION) {
-                model.removeTransaction(toRemove);
+                execute(CommandLog.remove(toRemove));
                 refreshView();
             }
         }
@@ -218,6 +566,10 @@ public class BudgetController {
     /**
      * Listener per la voce di menu “Salva CSV”: apre un {@link JFileChooser} per
      * selezionare il file di destinazione, poi salva le transazioni correnti in CSV.
+     * Sul file da cui il conto è stato caricato (o salvato l'ultima volta) si
+     * scrivono solo le modifiche (vedi {@link FileUtil#saveChanges(BudgetManager, File)}),
+     * che vengono riunite al file quando diventano troppe e alla chiusura
+     * dell'applicazione; un altro file viene scritto per intero.
      *
      * @brief Se il file esiste già, chiede conferma all’utente prima di sovrascrivere.
      */
@@ -235,8 +587,8 @@ public class BudgetController {
                     fileToSave = new File(fileToSave.getParentFile(), fileToSave.getName() + ".csv");
                 }
 
-                // Se il file esiste già, chiedi conferma prima di sovrascrivere
-                if (fileToSave.exists()) {
+                // Se il file esiste già (e non è quello del conto), chiedi conferma prima di sovrascrivere
+                if (fileToSave.exists() && !fileToSave.getAbsoluteFile().equals(model.getSavedFile())) {
                     int overwrite = JOptionPane.showConfirmDialog(
                             view,
                             "Il file \"" + fileToSave.getName() + "\" esiste già.\nVuoi sovrascriverlo?",
@@ -251,7 +603,11 @@ public class BudgetController {
                 }
 
                 try {
-                    FileUtil.saveAsCSV(model.getAllTransactions(), fileToSave);
+                    FileUtil.saveChanges(model, fileToSave);
+                    File source = registry.getSource(currentAccount);
+                    if (source != null && source.getAbsoluteFile().equals(fileToSave.getAbsoluteFile())) {
+                        registry.markSaved(currentAccount);
+                    }
                     JOptionPane.showMessageDialog(view, "Salvataggio CSV completato!");
                 } catch (IOException ex) {
                     JOptionPane.showMessageDialog(
@@ -268,6 +624,7 @@ public class BudgetController {
     /**
      * Listener per la voce di menu “Carica CSV”: apre un {@link JFileChooser} per
      * selezionare un file CSV, lo legge e rimpiazza tutte le transazioni correnti nel model.
+     * Le righe non valide vengono riportate e si può scegliere di caricare solo le altre.
      */
     private class LoadButtonListener implements ActionListener {
         @Override
@@ -278,20 +635,53 @@ public class BudgetController {
             int userSelection = chooser.showOpenDialog(view);
             if (userSelection == JFileChooser.APPROVE_OPTION) {
                 File fileToOpen = chooser.getSelectedFile();
-                try {
-                    List<Transaction> loaded = FileUtil.loadFromCSV(fileToOpen);
-                    model.getAllTransactions().forEach(model::removeTransaction);
-                    for (Transaction t : loaded) {
-                        model.addTransaction(t);
+                importCsv(fileToOpen, result -> {
+                    if (!tryExecute(CommandLog.bulkLoad(model.getAllTransactions(), result.getValid()))) return;
+                    if (result.getErrorCount() == 0) {
+                        model.markSaved(fileToOpen);
+                    } else {
+                        // le righe scartate sono ancora nel file: il prossimo salvataggio lo riscrive per intero
+                        model.discardUnsavedChanges();
                     }
                     refreshView();
                     JOptionPane.showMessageDialog(view, "Caricamento CSV completato!");
-                } catch (IOException ex) {
+                });
+            }
+        }
+    }
+
+    /**
+     * Importa un file CSV in background con {@link CsvImporter}. Se alcune
+     * righe non sono valide mostra il resoconto e prosegue solo se l'utente
+     * sceglie di importare le righe valide.
+     *
+     * @param file     file CSV da importare
+     * @param onLoaded azione eseguita sul thread grafico con il risultato
+     *                 dell'importazione, di cui vanno importate le righe valide
+     */
+    private void importCsv(File file, Consumer<CsvImporter.Result> onLoaded) {
+        new SwingWorker<CsvImporter.Result, Void>() {
+            @Override
+            protected CsvImporter.Result doInBackground() throws IOException {
+                return new CsvImporter().importFile(file);
+            }
+
+            @Override
+            protected void done() {
+                CsvImporter.Result result;
+                try {
+                    result = get();
+                } catch (InterruptedException | ExecutionException ex) {
                     JOptionPane.showMessageDialog(view, "Errore durante il caricamento: " + ex.getMessage(),
                             "Errore IO", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (result.getErrorCount() > 0 && !view.showImportReport(file.getName(), result)) {
+                    return;
                 }
+                onLoaded.accept(result);
             }
-        }
+        }.execute();
     }
 
     /**
@@ -322,22 +712,61 @@ public class BudgetController {
         }
     }
 
+    /**
+     * Costruisce la query corrispondente ai campi di ricerca, di data e di
+     * categoria della finestra: i criteri si combinano, così “Cerca” e
+     * “Filtra” restringono entrambi tutti i criteri impostati.
+     *
+     * @return query dei campi correnti
+     * @throws DateTimeParseException se una delle date non è nel formato gg/MM/aaaa
+     */
+    private TransactionQuery currentQuery() {
+        String raw = view.getSearchFieldText();
+        TransactionQuery q = new TransactionQuery()
+                .descriptionContains(raw)
+                .inCategory(view.getCategoryFilter());
+        String fromStr = view.getFromDateFieldText().trim();
+        String toStr = view.getToDateFieldText().trim();
+        if (!fromStr.isEmpty() || !toStr.isEmpty()) {
+            q.between(fromStr.isEmpty() ? LocalDate.MIN : LocalDate.parse(fromStr, dateFormatter),
+                    toStr.isEmpty() ? LocalDate.now() : LocalDate.parse(toStr, dateFormatter));
+        }
+        return q;
+    }
+
     /**
      * Listener per il pulsante “Cerca”: filtra le transazioni correnti in base
-     * al testo inserito nel campo di ricerca e aggiorna la tabella.
+     * al testo inserito nel campo di ricerca (e alle eventuali date “Da”/“A”)
+     * e aggiorna la tabella.
      */
     private class SearchButtonListener implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
-            String raw = view.getSearchFieldText();
-            if (raw == null) raw = "";
-            String searchKey = raw.trim().toLowerCase();
-
-            List<Transaction> filtered = model.getAllTransactions().stream()
-                    .filter(t -> t.getDescription().toLowerCase().contains(searchKey))
-                    .collect(java.util.stream.Collectors.toList());
-
-            view.refreshTable(filtered);
+            TransactionQuery q;
+            try {
+                q = currentQuery();
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(view,
+                        "Formato data non valido. Usa gg/MM/aaaa",
+                        "Errore di input",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            try {
+                LedgerEvents.Search event = new LedgerEvents.Search();
+                event.begin();
+                List<Transaction> filtered = model.query(q);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.query = q.getText();
+                    event.rowCount = filtered.size();
+                    event.commit();
+                }
+                view.refreshTable(filtered);
+            } catch (UncheckedIOException ex) {
+                JOptionPane.showMessageDialog(view, "Errore durante la lettura dell'archivio: "
+                        + ex.getCause().getMessage(), "Errore IO", JOptionPane.ERROR_MESSAGE);
+            }
         }
     }
 
@@ -357,10 +786,8 @@ public class BudgetController {
                 File fileToOpen = chooser.getSelectedFile();
                 try {
                     List<Transaction> loaded = FileUtil.loadFromText(fileToOpen);
-                    model.getAllTransactions().forEach(model::removeTransaction);
-                    for (Transaction t : loaded) {
-                        model.addTransaction(t);
-                    }
+                    if (!tryExecute(CommandLog.bulkLoad(model.getAllTransactions(), loaded))) return;
+                    model.markSaved(fileToOpen);
                     refreshView();
                     JOptionPane.showMessageDialog(view, "Caricamento TXT completato!");
                 } catch (IOException ex) {
@@ -372,4 +799,765 @@ public class BudgetController {
         }
     }
 
+    /**
+     * Listener per la voce di menu “Aggiungi conto...”: registra un nuovo conto
+     * associato a un file CSV o TXT e lo rende il conto corrente.
+     */
+    private class AddAccountListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Apri file del conto");
+            chooser.setFileFilter(new FileNameExtensionFilter("CSV o testo", "csv", "txt"));
+            if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return;
+            File file = chooser.getSelectedFile();
+
+            String suggested = file.getName().replaceFirst("\\.[^.]*$", "");
+            String name = JOptionPane.showInputDialog(view, "Nome del conto:", suggested);
+            if (name == null || name.isBlank()) return;
+            try {
+                registry.register(name.trim(), file);
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(view, ex.getMessage(), "Errore", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            view.setAccounts(registry.getAccountNames(), currentAccount);
+            switchAccount(name.trim());
+        }
+    }
+
+    /**
+     * Listener del selettore dei conti: passa al conto scelto dall'utente.
+     */
+    private class AccountSelectionListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            String selected = view.getSelectedAccount();
+            if (selected != null && !selected.equals(currentAccount)) {
+                switchAccount(selected);
+            }
+        }
+    }
+
+    /**
+     * Rende corrente il conto indicato. I conti già in memoria vengono
+     * mostrati senza rileggere il file.
+     */
+    private void switchAccount(String account) {
+        try {
+            model = registry.get(account);
+            currentAccount = account;
+            if (apiServer != null) apiServer.setModel(model);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(view, "Errore durante il caricamento del conto: " + ex.getMessage(),
+                    "Errore IO", JOptionPane.ERROR_MESSAGE);
+        }
+        view.setAccounts(registry.getAccountNames(), currentAccount);
+        refreshView();
+    }
+
+    /**
+     * Ripristina in background la sessione salvata nel file indicato e, da
+     * quel momento, la salva di nuovo nello stesso file alla chiusura. La
+     * finestra resta utilizzabile durante la lettura: i conti vengono
+     * ricostruiti fuori dal thread grafico e registrati solo alla fine.
+     * Un conto solo in memoria già presente viene riempito solo se è ancora
+     * vuoto, per non duplicare righe inserite nel frattempo.
+     *
+     * @param file     file della sessione (se non esiste si parte da una sessione vuota)
+     * @param whenDone azione da eseguire sul thread grafico al termine, oppure null
+     */
+    public void restoreSession(File file, Runnable whenDone) {
+        this.sessionFile = file;
+        new SwingWorker<Map<String, BudgetManager>, Void>() {
+            private SessionSnapshot snapshot;
+
+            @Override
+            protected Map<String, BudgetManager> doInBackground() throws IOException {
+                Map<String, BudgetManager> managers = new LinkedHashMap<>();
+                if (!file.isFile()) return managers;
+                snapshot = SessionSnapshot.read(file);
+                for (SessionSnapshot.Account a : snapshot.getAccounts()) {
+                    if (a.getSource() != null) continue;
+                    BudgetManager manager = new BudgetManager();
+                    manager.addAll(a.getRows());
+                    for (RecurringTemplate r : a.getTemplates()) {
+                        manager.addRecurring(r);
+                    }
+                    if (a.getArchiveDirectory() != null && a.getArchiveDirectory().isDirectory()) {
+                        manager.setArchive(new GzipArchiveStore(a.getArchiveDirectory()));
+                    }
+                    manager.setSpendingLimits(a.getLimits());
+                    managers.put(a.getName(), manager);
+                }
+                return managers;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    applySession(snapshot, get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    JOptionPane.showMessageDialog(view, "Impossibile ripristinare la sessione precedente: "
+                            + ex.getMessage(), "Sessione", JOptionPane.WARNING_MESSAGE);
+                }
+                if (whenDone != null) whenDone.run();
+            }
+        }.execute();
+    }
+
+    /**
+     * Registra i conti della sessione ripristinata e ne riapplica lo stato
+     * della finestra. Va chiamato sul thread grafico.
+     */
+    private void applySession(SessionSnapshot snapshot, Map<String, BudgetManager> managers) {
+        if (snapshot == null) return;
+        List<String> known = registry.getAccountNames();
+        for (SessionSnapshot.Account a : snapshot.getAccounts()) {
+            BudgetManager restored = managers.get(a.getName());
+            if (!known.contains(a.getName())) {
+                if (restored != null) {
+                    registry.registerInMemory(a.getName(), restored);
+                } else if (a.getSource().isFile()) {
+                    registry.register(a.getName(), a.getSource());
+                    registry.restoreRecurringTemplates(a.getName(), a.getTemplates());
+                    registry.restoreArchive(a.getName(), openArchive(a.getArchiveDirectory()));
+                    registry.restoreSpendingLimits(a.getName(), a.getLimits());
+                }
+            } else if (restored == null && a.getSource().equals(registry.getSource(a.getName()))) {
+                // conto già aperto dallo stesso file: si riprende ciò che non ha
+                if (registry.getRecurringTemplates(a.getName()).isEmpty()) {
+                    registry.restoreRecurringTemplates(a.getName(), a.getTemplates());
+                }
+                if (registry.getArchive(a.getName()) == null) {
+                    registry.restoreArchive(a.getName(), openArchive(a.getArchiveDirectory()));
+                }
+                if (registry.getSpendingLimits(a.getName()).isEmpty()) {
+                    registry.restoreSpendingLimits(a.getName(), a.getLimits());
+                }
+            } else if (restored != null && registry.getSource(a.getName()) == null) {
+                try {
+                    BudgetManager existing = registry.get(a.getName());
+                    if (existing.getAllTransactions().isEmpty() && existing.getRecurringTemplates().isEmpty()) {
+                        existing.addAll(restored.getAllTransactions());
+                        for (RecurringTemplate r : restored.getRecurringTemplates()) {
+                            existing.addRecurring(r);
+                        }
+                        existing.setArchive(restored.getArchive());
+                    }
+                    if (existing.getSpendingLimits().getLimits().isEmpty()) {
+                        existing.setSpendingLimits(a.getLimits());
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex); // i conti solo in memoria non leggono file
+                }
+            }
+        }
+        view.setBounds(snapshot.getBounds());
+        view.setSearchFields(snapshot.getSearchText(), snapshot.getFromText(), snapshot.getToText());
+        view.sortTable(snapshot.getSortColumn(), snapshot.isAscending());
+        String account = registry.getAccountNames().contains(snapshot.getCurrentAccount())
+                ? snapshot.getCurrentAccount() : currentAccount;
+        switchAccount(account);
+    }
+
+    /**
+     * Salva la sessione corrente, se è stata attivata con
+     * {@link #restoreSession(File, Runnable)}. Le righe dei conti associati a
+     * un file vengono salvate sui loro file da {@link LedgerRegistry#flush()},
+     * se l'utente lo conferma alla chiusura; le loro ricorrenze e i limiti di
+     * spesa sono salvati qui, insieme a quelli dei conti solo in memoria.
+     */
+    private void saveSession() {
+        if (sessionFile == null) return;
+        List<SessionSnapshot.Account> accounts = new ArrayList<>();
+        try {
+            for (String name : registry.getAccountNames()) {
+                File source = registry.getSource(name);
+                if (source != null) {
+                    // le righe sono nel file, ricorrenze, archivio e limiti solo nella sessione
+                    accounts.add(new SessionSnapshot.Account(name, source, List.of(),
+                            registry.getRecurringTemplates(name), archiveDirectory(registry.getArchive(name)),
+                            registry.getSpendingLimits(name)));
+                    continue;
+                }
+                BudgetManager manager = registry.get(name);
+                accounts.add(new SessionSnapshot.Account(name, null, manager.getAllTransactions(),
+                        manager.getRecurringTemplates(), archiveDirectory(manager.getArchive()),
+                        manager.getSpendingLimits().getLimits()));
+            }
+            new SessionSnapshot(currentAccount, accounts, view.getBounds(),
+                    view.getSortColumn(), view.isSortAscending(), view.getSearchFieldText(),
+                    view.getFromDateFieldText(), view.getToDateFieldText()).write(sessionFile);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(view, "Errore durante il salvataggio della sessione: " + ex.getMessage(),
+                    "Errore IO", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static File archiveDirectory(ArchiveStore archive) {
+        return (archive instanceof GzipArchiveStore) ? ((GzipArchiveStore) archive).getDirectory() : null;
+    }
+
+    /**
+     * Riapre l'archivio salvato nella sessione. Una cartella sparita o
+     * illeggibile lascia il conto senza archivio invece di bloccare il ripristino.
+     */
+    private static ArchiveStore openArchive(File directory) {
+        if (directory == null || !directory.isDirectory()) return null;
+        try {
+            return new GzipArchiveStore(directory);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Listener per la voce di menu “Saldo complessivo”: mostra il saldo di
+     * ogni conto e il totale di tutti i conti.
+     */
+    private class TotalBalanceListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            try {
+                Map<String, BigDecimal> balances = registry.balanceByAccount();
+                StringBuilder sb = new StringBuilder();
+                BigDecimal total = BigDecimal.ZERO;
+                for (Map.Entry<String, BigDecimal> entry : balances.entrySet()) {
+                    sb.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+                    total = total.add(entry.getValue());
+                }
+                sb.append('\n').append("Totale: ").append(total)
+                        .append(' ').append(registry.getExchangeRates().getReportingCurrency());
+                JOptionPane.showMessageDialog(view, sb.toString(), "Saldo complessivo",
+                        JOptionPane.INFORMATION_MESSAGE);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(view, "Errore durante il calcolo: " + ex.getMessage(),
+                        "Errore IO", JOptionPane.ERROR_MESSAGE);
+            } catch (IllegalStateException ex) {
+                JOptionPane.showMessageDialog(view, "Saldo non calcolabile: " + ex.getMessage(),
+                        "Tasso di cambio mancante", JOptionPane.WARNING_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Listener per il pulsante “Filtra”: mostra le transazioni (comprese le
+     * occorrenze ricorrenti) comprese tra le date “Da” e “A”, limitate al
+     * testo di ricerca se presente.
+     */
+    private class FilterDateButtonListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            TransactionQuery q;
+            try {
+                q = currentQuery();
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(view,
+                        "Formato data non valido. Usa gg/MM/aaaa",
+                        "Errore di input",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (!q.hasDateRange() && q.getText() == null && q.getCategory() == null) {
+                refreshView();
+                return;
+            }
+            try {
+                LedgerEvents.Filter event = new LedgerEvents.Filter();
+                event.begin();
+                List<Transaction> filtered = model.query(q);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.from = String.valueOf(q.getFrom());
+                    event.to = String.valueOf(q.getTo());
+                    event.rowCount = filtered.size();
+                    event.commit();
+                }
+                view.refreshTable(filtered);
+            } catch (UncheckedIOException ex) {
+                JOptionPane.showMessageDialog(view, "Errore durante la lettura dell'archivio: "
+                        + ex.getCause().getMessage(), "Errore IO", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Listener per la voce di menu “Nuova ricorrenza dal form...”: usa i dati
+     * del form (la data è la prima occorrenza) e chiede periodicità e fine.
+     */
+    private class AddRecurringListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            Transaction first = parseFormInput();
+            if (first == null) return;
+            String[] input = view.showRecurrenceDialog(RECURRENCE_INTERVALS.keySet().toArray(new String[0]));
+            if (input == null) return;
+            LocalDate end = null;
+            if (!input[1].isEmpty()) {
+                try {
+                    end = LocalDate.parse(input[1], dateFormatter);
+                } catch (DateTimeParseException ex) {
+                    JOptionPane.showMessageDialog(view,
+                            "Formato data non valido. Usa gg/MM/aaaa",
+                            "Errore di input",
+                            JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
+            try {
+                execute(CommandLog.addRecurring(new RecurringTemplate(first.getDescription(), first.getAmount(),
+                        first instanceof Income, RECURRENCE_INTERVALS.get(input[0]), first.getDate(), end)));
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(view, ex.getMessage(), "Errore di input", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            refreshView();
+            String todayStr = LocalDate.now().format(dateFormatter);
+            view.setDefaultFormData(todayStr, "", "", "Income");
+        }
+    }
+
+    /**
+     * Listener per la voce di menu “Elimina ricorrenza...”: mostra l'elenco
+     * dei modelli ricorrenti e rimuove quello scelto.
+     */
+    private class RemoveRecurringListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            List<RecurringTemplate> templates = model.getRecurringTemplates();
+            if (templates.isEmpty()) {
+                JOptionPane.showMessageDialog(view, "Non ci sono ricorrenze.");
+                return;
+            }
+            Object selected = JOptionPane.showInputDialog(view, "Ricorrenza da eliminare:",
+                    "Elimina ricorrenza", JOptionPane.QUESTION_MESSAGE, null,
+                    templates.toArray(), templates.get(0));
+            if (selected != null) {
+                execute(CommandLog.removeRecurring((RecurringTemplate) selected));
+                refreshView();
+            }
+        }
+    }
+
+    /**
+     * Listener per la voce di menu “Previsione saldo...”: aggrega lo storico
+     * sul thread grafico, calcola la previsione in background e la mostra
+     * in un pannello della view.
+     */
+    private class ForecastListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            DailySeries history;
+            double opening;
+            try {
+                history = model.getDailySeries(LocalDate.now());
+                opening = model.getArchivedBalance().doubleValue();
+            } catch (IllegalStateException ex) {
+                JOptionPane.showMessageDialog(view, "Previsione non calcolabile: " + ex.getMessage(),
+                        "Tasso di cambio mancante", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            if (history.isEmpty()) {
+                JOptionPane.showMessageDialog(view, "Non ci sono dati storici per la previsione.");
+                return;
+            }
+            new SwingWorker<CashFlowForecaster.Forecast, Void>() {
+                @Override
+                protected CashFlowForecaster.Forecast doInBackground() {
+                    double balance = opening;
+                    for (int i = 0; i < history.size(); i++) {
+                        balance += history.netAt(i);
+                    }
+                    return new CashFlowForecaster().forecast(history, balance, FORECAST_HORIZON_DAYS);
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        view.showForecast(get());
+                    } catch (InterruptedException | ExecutionException ex) {
+                        JOptionPane.showMessageDialog(view, "Errore durante la previsione: " + ex.getMessage(),
+                                "Errore", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
+        }
+    }
+
+    /**
+     * Listener per la voce di menu “Limiti di spesa...”: imposta o rimuove
+     * il limite mensile complessivo o di una categoria del conto corrente.
+     */
+    private class SpendingLimitsListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            BudgetLimits limits = model.getSpendingLimits();
+            StringBuilder current = new StringBuilder("<html>Limiti attuali (" + model.getReportingCurrency() + "):");
+            if (limits.getMonthlyLimit() != null) {
+                current.append("<br>Totale: ").append(limits.getMonthlyLimit().toPlainString());
+            }
+            limits.getCategoryLimits().forEach((category, limit) ->
+                    current.append("<br>").append(category).append(": ").append(limit.toPlainString()));
+            if (limits.getMonthlyLimit() == null && limits.getCategoryLimits().isEmpty()) {
+                current.append(" nessuno");
+            }
+            String[] input = view.showSpendingLimitDialog(model.getCategories(), current.append("</html>").toString());
+            if (input == null) return;
+            try {
+                BigDecimal limit = input[1].isEmpty() ? null : new BigDecimal(input[1]);
+                model.setSpendingLimit(input[0].isEmpty() ? null : input[0], limit);
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(view, "Limite non valido: deve essere un numero.",
+                        "Errore di input", JOptionPane.ERROR_MESSAGE);
+                return;
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(view, ex.getMessage(), "Errore di input", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            view.showLimitAlerts(model.getLimitAlerts(YearMonth.now()));
+        }
+    }
+
+    /**
+     * Listener per la voce di menu “Riconcilia estratto conto...”: copia le
+     * transazioni del conto sul thread grafico, poi legge l'estratto e lo
+     * riconcilia in background e mostra l'esito in una finestra della view.
+     */
+    private class ReconcileListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Estratto conto da riconciliare");
+            chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+            if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return;
+            File file = chooser.getSelectedFile();
+            List<Transaction> ledger = model.getTransactionsUpTo(LocalDate.now());
+            new SwingWorker<Reconciler.Result, Void>() {
+                @Override
+                protected Reconciler.Result doInBackground() throws IOException {
+                    return new Reconciler().reconcile(FileUtil.loadStatement(file), ledger);
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        view.showReconciliation(file.getName(), get());
+                    } catch (InterruptedException | ExecutionException ex) {
+                        Throwable cause = (ex.getCause() != null) ? ex.getCause() : ex;
+                        JOptionPane.showMessageDialog(view,
+                                "Impossibile riconciliare l'estratto conto: " + cause.getMessage(),
+                                "Errore IO", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
+        }
+    }
+
+    /**
+     * Listener per la voce di menu “Segui CSV...”: segue un file CSV a cui un
+     * programma esterno aggiunge righe e inserisce nel conto corrente solo le
+     * righe nuove, man mano che vengono scritte.
+     */
+    private class FollowCsvListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Segui file CSV");
+            chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+            if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return;
+            File file = chooser.getSelectedFile();
+
+            int existing = JOptionPane.showConfirmDialog(view,
+                    "Importare anche le righe già presenti nel file?",
+                    "Segui CSV",
+                    JOptionPane.YES_NO_CANCEL_OPTION);
+            if (existing == JOptionPane.CANCEL_OPTION || existing == JOptionPane.CLOSED_OPTION) return;
+            long startOffset = (existing == JOptionPane.YES_OPTION) ? 0 : file.length();
+
+            String account = currentAccount;
+            try {
+                CsvFollower[] self = new CsvFollower[1];
+                self[0] = new CsvFollower(file, startOffset,
+                        rows -> SwingUtilities.invokeLater(() -> appendFollowed(self[0], account, rows)),
+                        ex -> SwingUtilities.invokeLater(() -> followFailed(self[0], ex)));
+                follower = self[0];
+                follower.start();
+                view.setFollowing(true);
+            } catch (IOException ex) {
+                follower = null;
+                JOptionPane.showMessageDialog(view, "Impossibile seguire il file: " + ex.getMessage(),
+                        "Errore IO", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Aggiunge al conto le righe lette dal file seguito, come comando
+     * annullabile. Il conto viene cercato di nuovo nel registro a ogni
+     * blocco, perché nel frattempo può essere stato scaricato e riletto. Se
+     * il conto è quello visualizzato, le righe vengono accodate alla tabella
+     * senza ricaricarla.
+     */
+    private void appendFollowed(CsvFollower source, String account, List<Transaction> rows) {
+        if (source != follower) return; // blocco arrivato dopo l'interruzione
+        BudgetManager target;
+        try {
+            target = registry.get(account);
+        } catch (IOException ex) {
+            followFailed(source, ex);
+            return;
+        }
+        LedgerEvents.Edit event = new LedgerEvents.Edit();
+        event.begin();
+        try {
+            commands(account, target).execute(CommandLog.addAll(rows));
+        } catch (IllegalArgumentException ex) {
+            followFailed(source, ex);
+            return;
+        }
+        commitEdit(event, "Segui CSV", rows.size());
+        if (!registry.isResident(currentAccount)) {
+            // rileggere il conto seguito ha scaricato quello visualizzato: lo si ricarica
+            switchAccount(currentAccount);
+        } else if (target == model) {
+            view.appendToTable(rows);
+            updateBalanceLabel();
+            refreshCharts();
+            CommandLog log = commands();
+            view.setUndoRedoEnabled(log.canUndo(), log.canRedo());
+        }
+    }
+
+    /** Interrompe l'inseguimento dopo un errore e lo segnala all'utente. */
+    private void followFailed(CsvFollower source, Exception ex) {
+        if (source != follower) return;
+        stopFollowing();
+        JOptionPane.showMessageDialog(view, "Inseguimento del file interrotto: " + ex.getMessage(),
+                "Errore IO", JOptionPane.ERROR_MESSAGE);
+    }
+
+    /** Interrompe l'eventuale inseguimento di un file CSV. */
+    private void stopFollowing() {
+        if (follower == null) return;
+        try {
+            follower.close();
+        } catch (IOException ex) {
+            // il watcher è comunque inutilizzabile: nulla da fare
+        }
+        follower = null;
+        view.setFollowing(false);
+    }
+
+    /**
+     * Listener per la voce di menu “Unisci CSV...”: aggiunge al conto corrente
+     * le righe di un file CSV, segnalando quelle già presenti e lasciando
+     * scegliere all'utente se saltarle o mantenerle.
+     */
+    private class MergeCsvListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Unisci file CSV");
+            chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+            if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return;
+            importCsv(chooser.getSelectedFile(), result -> merge(result.getValid()));
+        }
+
+        /** Aggiunge le righe importate, chiedendo cosa fare dei duplicati. */
+        private void merge(List<Transaction> loaded) {
+            DuplicateIndex.MergeResult result = new DuplicateIndex(model.getAllTransactions()).partition(loaded);
+
+            List<Transaction> toAdd = result.getFresh();
+            List<Transaction> duplicates = result.getDuplicates();
+            if (!duplicates.isEmpty()) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("Trovate ").append(duplicates.size()).append(" righe già presenti su ")
+                        .append(loaded.size()).append(":\n");
+                int shown = Math.min(10, duplicates.size());
+                for (int i = 0; i < shown; i++) {
+                    Transaction t = duplicates.get(i);
+                    sb.append("  ").append(t.getDate().format(dateFormatter)).append("  ")
+                            .append(t.getDescription()).append("  ").append(t.signedAmount()).append('\n');
+                }
+                if (shown < duplicates.size()) sb.append("  ...\n");
+                String[] options = {"Salta duplicati", "Mantieni tutti", "Annulla"};
+                int choice = JOptionPane.showOptionDialog(view, sb.toString(), "Duplicati trovati",
+                        JOptionPane.DEFAULT_OPTION, JOptionPane.WARNING_MESSAGE, null, options, options[0]);
+                if (choice == 1) {
+                    toAdd = loaded;
+                } else if (choice != 0) {
+                    return;
+                }
+            }
+            if (!toAdd.isEmpty() && !tryExecute(CommandLog.addAll(toAdd))) return;
+            refreshView();
+            JOptionPane.showMessageDialog(view, "Unione completata: aggiunte " + toAdd.size() + " righe.");
+        }
+    }
+
+    /**
+     * Chiede la cartella dell'archivio degli anni chiusi e la collega al
+     * conto corrente.
+     *
+     * @return {@code true} se un archivio è stato collegato
+     */
+    private boolean chooseArchive() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Cartella dell'archivio");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return false;
+        try {
+            int dropped = model.setArchive(new GzipArchiveStore(chooser.getSelectedFile()));
+            // le righe già archiviate sono state tolte: i comandi precedenti non valgono più
+            if (dropped > 0) commands().clear();
+            refreshView();
+            if (dropped > 0) {
+                JOptionPane.showMessageDialog(view, "Rimosse " + dropped
+                        + " righe di anni già presenti nell'archivio.", "Archivio", JOptionPane.INFORMATION_MESSAGE);
+            }
+            return true;
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(view, "Impossibile aprire l'archivio: " + ex.getMessage(),
+                    "Errore IO", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+
+    /**
+     * Chiede un file di tassi di cambio (vedi {@link FileUtil#loadExchangeRates(File)})
+     * e lo applica a tutti i conti; il saldo viene ricalcolato nella nuova
+     * valuta di riferimento.
+     */
+    private void chooseExchangeRates() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("File dei tassi di cambio");
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+        if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return;
+        try {
+            ExchangeRates rates = FileUtil.loadExchangeRates(chooser.getSelectedFile());
+            registry.setExchangeRates(rates);
+            refreshView();
+            JOptionPane.showMessageDialog(view,
+                    "Tassi caricati per " + rates.getCurrencies().size() + " valute (riferimento "
+                            + rates.getReportingCurrency() + ").",
+                    "Tassi di cambio", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(view, "Impossibile leggere i tassi: " + ex.getMessage(),
+                    "Errore IO", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Listener per la voce di menu “Archivia anno chiuso...”: sposta le
+     * transazioni dell'anno scelto nell'archivio compresso del conto.
+     */
+    private class CloseYearListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (model.getArchive() == null && !chooseArchive()) return;
+            String lastYear = String.valueOf(LocalDate.now().getYear() - 1);
+            String input = JOptionPane.showInputDialog(view, "Anno da archiviare:", lastYear);
+            if (input == null) return;
+            int year;
+            try {
+                year = Integer.parseInt(input.trim());
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(view, "Anno non valido.", "Errore di input",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (year >= LocalDate.now().getYear()) {
+                JOptionPane.showMessageDialog(view, "Si possono archiviare solo anni già chiusi.",
+                        "Errore di input", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            try {
+                YearSummary summary = model.closeYear(year);
+                // le righe dell'anno non sono più nella lista: i comandi precedenti non valgono più
+                commands().clear();
+                refreshView();
+                JOptionPane.showMessageDialog(view, "Anno archiviato: " + summary);
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(view, ex.getMessage(), "Errore", JOptionPane.ERROR_MESSAGE);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(view, "Errore durante l'archiviazione: " + ex.getMessage(),
+                        "Errore IO", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Chiede la porta e avvia l'API HTTP locale sul conto corrente. Le
+     * modifiche ricevute dall'API passano dalla storia Annulla/Ripeti.
+     */
+    private void startApi() {
+        if (apiServer != null) return;
+        String input = JOptionPane.showInputDialog(view, "Porta dell'API locale:", LedgerApiServer.DEFAULT_PORT);
+        if (input == null) return;
+        try {
+            int port = Integer.parseInt(input.trim());
+            apiServer = new LedgerApiServer(port, model, command -> {
+                execute(command);
+                refreshView();
+            });
+            apiServer.start();
+            view.setApiRunning(true, apiServer.getPort());
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(view, "Porta non valida", "Errore di input", JOptionPane.ERROR_MESSAGE);
+        } catch (IOException | IllegalArgumentException ex) {
+            apiServer = null;
+            JOptionPane.showMessageDialog(view, "Impossibile avviare l'API locale: " + ex.getMessage(),
+                    "Errore", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /** Ferma l'API HTTP locale, se attiva. */
+    private void stopApi() {
+        if (apiServer == null) return;
+        apiServer.stop();
+        apiServer = null;
+        view.setApiRunning(false, 0);
+    }
+
+    /**
+     * Avvia una registrazione Java Flight Recorder con la configurazione
+     * predefinita, che include gli eventi di {@link LedgerEvents}.
+     */
+    private void startRecording() {
+        if (recording != null) return;
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setName("Gestione Bilancio");
+            recording.start();
+            view.setRecording(true);
+        } catch (IOException | ParseException | IllegalStateException | SecurityException ex) {
+            recording = null;
+            JOptionPane.showMessageDialog(view, "Impossibile avviare la registrazione JFR: " + ex.getMessage(),
+                    "Errore", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Salva su file il contenuto della registrazione JFR in corso, che
+     * continua a registrare.
+     */
+    private void dumpRecording() {
+        if (recording == null) return;
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Salva registrazione JFR");
+        chooser.setFileFilter(new FileNameExtensionFilter("Registrazioni JFR", "jfr"));
+        if (chooser.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) return;
+        File fileToSave = chooser.getSelectedFile();
+        if (!fileToSave.getName().toLowerCase().endsWith(".jfr")) {
+            fileToSave = new File(fileToSave.getParentFile(), fileToSave.getName() + ".jfr");
+        }
+        try {
+            recording.dump(fileToSave.toPath());
+            JOptionPane.showMessageDialog(view, "Registrazione JFR salvata in " + fileToSave.getName());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(view, "Errore durante il salvataggio: " + ex.getMessage(),
+                    "Errore IO", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 }
@@ -0,0 +1,451 @@
+package it.unimore.programmazioneoggetti.budget.controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import it.unimore.programmazioneoggetti.budget.model.BudgetManager;
+import it.unimore.programmazioneoggetti.budget.model.CommandLog;
+import it.unimore.programmazioneoggetti.budget.model.Expense;
+import it.unimore.programmazioneoggetti.budget.model.Income;
+import it.unimore.programmazioneoggetti.budget.model.LedgerCommand;
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+import it.unimore.programmazioneoggetti.budget.model.TransactionQuery;
+import it.unimore.programmazioneoggetti.budget.util.Json;
+import it.unimore.programmazioneoggetti.budget.util.Metrics;
+
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * API HTTP/JSON locale sul conto corrente, per interrogare e modificare il
+ * bilancio da altri script senza usare l'interfaccia grafica. Il server
+ * ascolta solo sull'indirizzo di loopback.
+ * <ul>
+ *   <li>{@code GET /api/balance}: saldo totale nella valuta di riferimento e
+ *       numero di righe (409 se manca un tasso di cambio);</li>
+ *   <li>{@code GET /api/transactions?from=&to=&q=&type=&category=&limit=}:
+ *       transazioni (date ISO aaaa-MM-gg, {@code q} = testo nella
+ *       descrizione, {@code type} = Income|Expense);</li>
+ *   <li>{@code POST /api/transactions}: aggiunge la transazione descritta
+ *       dal corpo JSON ({@code date}, {@code description}, {@code amount},
+ *       {@code type}, {@code category} e {@code currency} facoltative); la
+ *       richiesta deve avere {@code Content-Type: application/json}, altrimenti
+ *       risponde 415;</li>
+ *   <li>{@code DELETE /api/transactions?date=&description=&amount=&currency=}:
+ *       rimuove una transazione memorizzata.</li>
+ * </ul>
+ * Le letture non toccano il model: lavorano su un'istantanea immutabile
+ * (righe fino a oggi ordinate per data, comprese le occorrenze ricorrenti,
+ * e saldo) creata
+ * sul thread grafico e riusata finché la versione del model non cambia,
+ * così un lettore non vede mai una modifica a metà. Le scritture passano
+ * dal thread grafico come i comandi dell'interfaccia, quindi entrano nella
+ * storia Annulla/Ripeti. Le righe degli anni archiviati non sono esposte.
+ * <p>
+ * Il loopback non basta a proteggere le scritture: una pagina web aperta nel
+ * browser può inviare a {@code 127.0.0.1} una POST “semplice” (es.
+ * {@code text/plain}) senza controlli preventivi. Richiedere il tipo JSON
+ * obbliga il browser a una richiesta preliminare CORS, a cui il server non
+ * risponde, e quindi blocca le scritture da altri siti. La DELETE richiede
+ * già di per sé la richiesta preliminare.
+ * <p>
+ * Le richieste sono servite da thread virtuali quando la JVM li offre;
+ * altrimenti da un pool di thread di dimensione fissa.
+ */
+public class LedgerApiServer {
+
+    /** Porta proposta per l'API locale. */
+    public static final int DEFAULT_PORT = 8077;
+
+    private static final Metrics.Counter REQUESTS = Metrics.counter("api.requests");
+    private static final Metrics.Counter ERRORS   = Metrics.counter("api.errors");
+    private static final Metrics.Timer   REQUEST  = Metrics.timer("api.request");
+
+    /**
+     * Proprietà di sistema del server HTTP del JDK che disattiva l'algoritmo di
+     * Nagle. Il server invia intestazioni e corpo con scritture separate: senza
+     * questa proprietà ogni risposta breve attende l'ACK ritardato del client
+     * (circa 40 ms). Vale per tutta la JVM e viene letta alla creazione del
+     * primo server, quindi la impostano i punti di ingresso dell'applicazione
+     * (o {@code -Dsun.net.httpserver.nodelay=true} all'avvio), non questa classe.
+     */
+    public static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    /**
+     * Vista immutabile di un model a una certa versione. Le righe sono
+     * ordinate per data (a parità di data, in ordine di inserimento) e
+     * affiancate dai giorni epoch, così un intervallo di date si trova con
+     * due ricerche binarie.
+     */
+    private static final class Snapshot {
+        final BudgetManager owner;
+        final long version;
+        final LocalDate day;
+        final List<Transaction> rows;
+        final long[] days;
+        final BigDecimal balance;      // null se manca un tasso di cambio
+        final String balanceError;
+        final String currency;
+
+        Snapshot(BudgetManager owner) {
+            this.owner = owner;
+            this.version = owner.getModCount();
+            this.day = LocalDate.now();
+            BigDecimal b = null;
+            String error = null;
+            try {
+                b = owner.calculateTotalBalance();
+            } catch (IllegalStateException e) {
+                error = e.getMessage();
+            }
+            this.balance = b;
+            this.balanceError = error;
+            this.currency = owner.getReportingCurrency();
+            List<Transaction> all = owner.getTransactionsUpTo(day);
+            int n = all.size();
+            long[] packed = new long[n];
+            for (int i = 0; i < n; i++) {
+                // giorno epoch nei 32 bit alti, posizione nei 32 bassi: ordinamento primitivo e stabile
+                packed[i] = (all.get(i).getDate().toEpochDay() << 32) | i;
+            }
+            Arrays.parallelSort(packed);
+            Transaction[] sorted = new Transaction[n];
+            this.days = new long[n];
+            for (int i = 0; i < n; i++) {
+                sorted[i] = all.get((int) packed[i]);
+                days[i] = packed[i] >> 32;
+            }
+            this.rows = Collections.unmodifiableList(Arrays.asList(sorted));
+        }
+
+        boolean isCurrent(BudgetManager model) {
+            return owner == model && version == model.getModCount() && day.equals(LocalDate.now());
+        }
+
+        /** Righe con data in [from, to]; gli estremi null lasciano l'intervallo aperto. */
+        List<Transaction> range(LocalDate from, LocalDate to) {
+            int lo = (from == null) ? 0 : firstIndex(from.toEpochDay());
+            int hi = (to == null) ? days.length : firstIndex(to.toEpochDay() + 1);
+            return rows.subList(lo, Math.max(lo, hi));
+        }
+
+        private int firstIndex(long day) {
+            int lo = 0, hi = days.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (days[mid] < day) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Consumer<LedgerCommand> writer;
+
+    private volatile BudgetManager model;
+    private volatile Snapshot snapshot;
+    private final Object refreshLock = new Object();
+
+    /**
+     * Crea il server (non ancora avviato).
+     *
+     * @param port   porta TCP (0 = scelta dal sistema)
+     * @param model  conto esposto
+     * @param writer esecutore dei comandi di modifica, chiamato sul thread grafico
+     * @throws IOException se la porta non è disponibile
+     */
+    public LedgerApiServer(int port, BudgetManager model, Consumer<LedgerCommand> writer) throws IOException {
+        this.model = model;
+        this.writer = writer;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/balance", this::handleBalance);
+        server.createContext("/api/transactions", this::handleTransactions);
+    }
+
+    /**
+     * Thread virtuali se disponibili (Java 21+), cercati per riflessione
+     * perché il progetto compila per Java 17; altrimenti un pool fisso.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            AtomicInteger count = new AtomicInteger();
+            int threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "api-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /** Avvia il server. */
+    public void start() {
+        server.start();
+    }
+
+    /** Ferma il server senza attendere le richieste in corso. */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /** @return la porta su cui ascolta il server */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Cambia il conto esposto (es. quando l'utente seleziona un altro conto).
+     *
+     * @param model nuovo conto
+     */
+    public void setModel(BudgetManager model) {
+        this.model = model;
+    }
+
+    /**
+     * Restituisce l'istantanea del conto corrente, ricostruendola sul thread
+     * grafico solo se il model è cambiato dall'ultima volta.
+     */
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        if (s != null && s.isCurrent(model)) return s;
+        synchronized (refreshLock) {
+            s = snapshot;
+            BudgetManager m = model;
+            if (s == null || !s.isCurrent(m)) {
+                s = onEdt(() -> new Snapshot(m));
+                snapshot = s;
+            }
+            return s;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Gestori delle richieste
+    // ------------------------------------------------------------------
+
+    private void handleBalance(HttpExchange ex) throws IOException {
+        long start = Metrics.start();
+        try {
+            if (!"GET".equals(ex.getRequestMethod())) {
+                send(ex, 405, error("Metodo non consentito"));
+                return;
+            }
+            Snapshot s = current();
+            if (s.balance == null) {
+                send(ex, 409, error(s.balanceError));
+                return;
+            }
+            send(ex, 200, "{\"balance\":\"" + s.balance.toPlainString() + "\",\"currency\":\"" + s.currency
+                    + "\",\"rows\":" + s.rows.size() + ",\"version\":" + s.version + "}");
+        } catch (RuntimeException e) {
+            send(ex, 500, error(e.getMessage()));
+        } finally {
+            REQUEST.stop(start);
+        }
+    }
+
+    private void handleTransactions(HttpExchange ex) throws IOException {
+        long start = Metrics.start();
+        try {
+            Map<String, String> params = queryParams(ex);
+            switch (ex.getRequestMethod()) {
+                case "GET":    list(ex, params); break;
+                case "POST":   add(ex); break;
+                case "DELETE": remove(ex, params); break;
+                default:       send(ex, 405, error("Metodo non consentito"));
+            }
+        } catch (DateTimeParseException e) {
+            send(ex, 400, error("Data non valida: " + e.getParsedString()));
+        } catch (IllegalArgumentException e) {
+            send(ex, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            send(ex, 500, error(e.getMessage()));
+        } finally {
+            REQUEST.stop(start);
+        }
+    }
+
+    private void list(HttpExchange ex, Map<String, String> params) throws IOException {
+        TransactionQuery q = new TransactionQuery()
+                .between(date(params.get("from")), date(params.get("to")))
+                .ofType(type(params.get("type")))
+                .descriptionContains(params.get("q"))
+                .inCategory(params.get("category"));
+        int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : Integer.MAX_VALUE;
+        Predicate<Transaction> predicate = q.toPredicate();
+        List<Transaction> result = current().range(q.getFrom(), q.getTo()).stream()
+                .filter(predicate)
+                .limit(limit)
+                .collect(Collectors.toList());
+        send(ex, 200, Json.transactions(result));
+    }
+
+    private void add(HttpExchange ex) throws IOException {
+        if (!isJson(ex)) {
+            send(ex, 415, error("Serve Content-Type: application/json"));
+            return;
+        }
+        Map<String, String> body = Json.parseObject(readBody(ex));
+        Transaction t = transaction(body.get("date"), body.get("description"), body.get("amount"),
+                body.get("type"), body.get("category"), body.get("currency"));
+        onEdt(() -> {
+            writer.accept(CommandLog.add(t));
+            return null;
+        });
+        StringBuilder sb = new StringBuilder();
+        Json.appendTransaction(sb, t);
+        send(ex, 201, sb.toString());
+    }
+
+    private void remove(HttpExchange ex, Map<String, String> params) throws IOException {
+        Transaction t = transaction(params.get("date"), params.get("description"), params.get("amount"),
+                params.get("type"), null, params.get("currency"));
+        boolean removed = onEdt(() -> {
+            BudgetManager m = model;
+            // solo le righe memorizzate: le occorrenze ricorrenti non sono nella lista
+            if (m.indexOf(t) < 0) return false;
+            writer.accept(CommandLog.remove(t));
+            return true;
+        });
+        if (removed) {
+            send(ex, 200, "{\"removed\":true}");
+        } else {
+            send(ex, 404, error("Transazione non trovata tra quelle memorizzate"));
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Supporto
+    // ------------------------------------------------------------------
+
+    private static Transaction transaction(String date, String description, String amount, String type,
+                                           String category, String currency) {
+        if (date == null || description == null || amount == null) {
+            throw new IllegalArgumentException("Servono date, description e amount");
+        }
+        LocalDate d = LocalDate.parse(date);
+        BigDecimal a = new BigDecimal(amount);
+        return Income.class.equals(type(type))
+                ? new Income(d, description, a, category, currency)
+                : new Expense(d, description, a, category, currency);
+    }
+
+    private static LocalDate date(String s) {
+        return (s == null || s.isEmpty()) ? null : LocalDate.parse(s);
+    }
+
+    private static Class<? extends Transaction> type(String s) {
+        if (s == null || s.isEmpty()) return null;
+        if (s.equalsIgnoreCase("Income")) return Income.class;
+        if (s.equalsIgnoreCase("Expense")) return Expense.class;
+        throw new IllegalArgumentException("Tipo non valido: " + s);
+    }
+
+    private static Map<String, String> queryParams(HttpExchange ex) {
+        Map<String, String> params = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /** @return {@code true} se la richiesta dichiara un corpo JSON (parametri come charset ammessi) */
+    private static boolean isJson(HttpExchange ex) {
+        String type = ex.getRequestHeaders().getFirst("Content-Type");
+        if (type == null) return false;
+        int semicolon = type.indexOf(';');
+        String mime = (semicolon < 0 ? type : type.substring(0, semicolon)).trim();
+        return mime.equalsIgnoreCase("application/json");
+    }
+
+    private static String readBody(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + Json.quote(message == null ? "Errore interno" : message) + "}";
+    }
+
+    private static void send(HttpExchange ex, int status, String json) throws IOException {
+        REQUESTS.increment();
+        if (status >= 400) ERRORS.increment();
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Esegue un'operazione sul thread grafico e ne restituisce il risultato,
+     * rilanciando le eccezioni non controllate dell'operazione.
+     */
+    private static <T> T onEdt(Callable<T> task) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        Object[] result = new Object[1];
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                try {
+                    result[0] = task.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Richiesta interrotta", e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+}
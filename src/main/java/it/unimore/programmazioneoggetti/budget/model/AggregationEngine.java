@@ -0,0 +1,172 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * Motore di aggregazione e filtro sulle transazioni di un bilancio. La
+ * lista viene suddivisa in blocchi contigui elaborati in parallelo sul
+ * {@link ForkJoinPool} comune; sotto una soglia di dimensione (o su una
+ * macchina con un solo core) il calcolo resta sequenziale, per evitare il
+ * costo della suddivisione quando non porta vantaggi.
+ * <p>
+ * Le somme sono esatte: ogni blocco accumula in {@link BigDecimal} e i
+ * risultati parziali si combinano senza arrotondamenti, quindi il totale
+ * coincide (anche nella scala) con la somma sequenziale. I filtri
+ * restituiscono le transazioni nell'ordine originale.
+ * <p>
+ * La lista non deve essere modificata durante un'elaborazione.
+ */
+public final class AggregationEngine {
+
+    /** Sotto questa dimensione si elabora sequenzialmente. */
+    public static final int PARALLEL_THRESHOLD = 50_000;
+
+    /** Dimensione minima di un blocco elaborato da un singolo task. */
+    private static final int CHUNK_SIZE = 16_384;
+
+    private AggregationEngine() {
+    }
+
+    private static boolean sequential(List<Transaction> list) {
+        return list.size() < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2;
+    }
+
+    /**
+     * Filtra le transazioni mantenendone l'ordine.
+     *
+     * @param list      transazioni (lista ad accesso casuale)
+     * @param predicate condizione da soddisfare
+     * @return nuova lista con le transazioni che soddisfano {@code predicate}
+     */
+    public static List<Transaction> filter(List<Transaction> list, Predicate<? super Transaction> predicate) {
+        if (sequential(list)) {
+            return filterRange(list, predicate, 0, list.size());
+        }
+        return ForkJoinPool.commonPool().invoke(new FilterTask(list, predicate, 0, list.size()));
+    }
+
+    /**
+     * Somma esatta degli importi con segno, convertiti nella valuta di
+     * riferimento di {@code rates}. Ogni blocco raggruppa le righe in altra
+     * valuta per (valuta, giorno) sommandone gli importi; alla fine ogni
+     * gruppo viene convertito con una sola moltiplicazione esatta per il
+     * tasso del giorno. Il numero di ricerche del tasso dipende quindi dai
+     * giorni distinti, non dalle righe, e il risultato coincide con la
+     * somma delle conversioni riga per riga.
+     *
+     * @param list  transazioni (lista ad accesso casuale)
+     * @param rates tabella dei tassi di cambio
+     * @return saldo delle transazioni nella valuta di riferimento
+     * @throws IllegalStateException se manca il tasso di una valuta in un giorno
+     */
+    public static BigDecimal sumConverted(List<Transaction> list, ExchangeRates rates) {
+        String reporting = rates.getReportingCurrency();
+        Buckets buckets = sequential(list)
+                ? bucketRange(list, reporting, 0, list.size())
+                : ForkJoinPool.commonPool().invoke(new BucketTask(list, reporting, 0, list.size()));
+        BigDecimal total = buckets.base;
+        for (Map.Entry<String, Map<Long, BigDecimal>> byCurrency : buckets.foreign.entrySet()) {
+            String currency = byCurrency.getKey();
+            for (Map.Entry<Long, BigDecimal> byDay : byCurrency.getValue().entrySet()) {
+                total = total.add(byDay.getValue().multiply(rates.rate(currency, byDay.getKey())));
+            }
+        }
+        return total;
+    }
+
+    private static Buckets bucketRange(List<Transaction> list, String reporting, int from, int to) {
+        Buckets b = new Buckets();
+        for (int i = from; i < to; i++) {
+            Transaction t = list.get(i);
+            if (reporting.equals(t.getCurrency())) {
+                b.base = b.base.add(t.signedAmount());
+            } else {
+                b.foreign.computeIfAbsent(t.getCurrency(), k -> new HashMap<>())
+                        .merge(t.getDate().toEpochDay(), t.signedAmount(), BigDecimal::add);
+            }
+        }
+        return b;
+    }
+
+    private static List<Transaction> filterRange(List<Transaction> list, Predicate<? super Transaction> p,
+                                                 int from, int to) {
+        List<Transaction> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Transaction t = list.get(i);
+            if (p.test(t)) result.add(t);
+        }
+        return result;
+    }
+
+    private static final class FilterTask extends RecursiveTask<List<Transaction>> {
+        private final List<Transaction> list;
+        private final Predicate<? super Transaction> predicate;
+        private final int from;
+        private final int to;
+
+        FilterTask(List<Transaction> list, Predicate<? super Transaction> predicate, int from, int to) {
+            this.list = list;
+            this.predicate = predicate;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Transaction> compute() {
+            if (to - from <= CHUNK_SIZE) return filterRange(list, predicate, from, to);
+            int mid = (from + to) >>> 1;
+            FilterTask left = new FilterTask(list, predicate, from, mid);
+            left.fork();
+            List<Transaction> right = new FilterTask(list, predicate, mid, to).compute();
+            List<Transaction> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+
+    private static final class BucketTask extends RecursiveTask<Buckets> {
+        private final List<Transaction> list;
+        private final String reporting;
+        private final int from;
+        private final int to;
+
+        BucketTask(List<Transaction> list, String reporting, int from, int to) {
+            this.list = list;
+            this.reporting = reporting;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Buckets compute() {
+            if (to - from <= CHUNK_SIZE) return bucketRange(list, reporting, from, to);
+            int mid = (from + to) >>> 1;
+            BucketTask left = new BucketTask(list, reporting, from, mid);
+            left.fork();
+            Buckets right = new BucketTask(list, reporting, mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /** Somme parziali di un blocco: valuta di riferimento e gruppi (valuta, giorno). */
+    private static final class Buckets {
+        private BigDecimal base = BigDecimal.ZERO;
+        private final Map<String, Map<Long, BigDecimal>> foreign = new HashMap<>();
+
+        Buckets merge(Buckets o) {
+            base = base.add(o.base);
+            for (Map.Entry<String, Map<Long, BigDecimal>> e : o.foreign.entrySet()) {
+                Map<Long, BigDecimal> days = foreign.computeIfAbsent(e.getKey(), k -> new HashMap<>());
+                e.getValue().forEach((day, amount) -> days.merge(day, amount, BigDecimal::add));
+            }
+            return this;
+        }
+    }
+}
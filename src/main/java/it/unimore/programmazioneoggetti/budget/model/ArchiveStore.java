@@ -0,0 +1,46 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Archivio degli anni fiscali chiusi. Ogni anno viene scritto una sola volta
+ * in un segmento immutabile, accompagnato da un {@link YearSummary} che
+ * consente di rispondere alle query aggregate senza leggere il segmento.
+ */
+public interface ArchiveStore {
+
+    /**
+     * @return i riepiloghi degli anni archiviati, in ordine di anno
+     */
+    List<YearSummary> getSummaries();
+
+    /**
+     * Verifica se un anno è già archiviato.
+     *
+     * @param year anno da verificare
+     * @return {@code true} se esiste il segmento dell'anno
+     */
+    boolean contains(int year);
+
+    /**
+     * Legge tutte le transazioni di un anno archiviato.
+     *
+     * @param year anno da leggere
+     * @return le transazioni dell'anno
+     * @throws IOException              se la lettura fallisce
+     * @throws IllegalArgumentException se l'anno non è archiviato
+     */
+    List<Transaction> readYear(int year) throws IOException;
+
+    /**
+     * Scrive il segmento di un anno chiuso e il relativo riepilogo.
+     *
+     * @param year         anno da archiviare
+     * @param transactions transazioni dell'anno
+     * @return il riepilogo scritto
+     * @throws IOException              se la scrittura fallisce
+     * @throws IllegalArgumentException se l'anno è già archiviato
+     */
+    YearSummary writeYear(int year, List<Transaction> transactions) throws IOException;
+}
@@ -0,0 +1,359 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Limiti di spesa mensili, complessivi o per categoria, con i contatori
+ * delle uscite di ogni mese tenuti aggiornati a ogni modifica del bilancio.
+ * <p>
+ * I contatori vengono aggiornati in modo incrementale (una somma per mese e
+ * una per categoria e mese a ogni riga aggiunta o rimossa), quindi
+ * verificare un limite non richiede di rileggere lo storico. Un avviso
+ * viene generato solo quando una modifica fa passare la spesa di un mese da
+ * entro il limite a oltre il limite; le modifiche in blocco vengono valutate
+ * una sola volta alla fine, confrontando i contatori toccati prima e dopo.
+ * <p>
+ * Le occorrenze delle ricorrenze contano come le righe memorizzate, fino a
+ * oggi come nel saldo e nella tabella: quando il giorno cambia, le
+ * occorrenze dei giorni nuovi vengono aggiunte ai contatori al primo accesso.
+ * <p>
+ * Gli importi sono nella valuta di riferimento dei tassi di cambio: le
+ * uscite in altre valute senza tasso per il loro giorno non vengono contate
+ * finché non si carica una tabella che lo contiene.
+ */
+public class BudgetLimits {
+
+    // Limiti mensili: null = nessun limite complessivo; categoria -> limite
+    private BigDecimal monthlyLimit;
+    private final Map<String, BigDecimal> categoryLimits = new TreeMap<>();
+
+    // Uscite per mese (anno * 12 + mese - 1) e per categoria e mese
+    private final Map<Integer, BigDecimal> spentByMonth = new HashMap<>();
+    private final Map<String, Map<Integer, BigDecimal>> spentByCategory = new HashMap<>();
+
+    private ExchangeRates rates;
+
+    // Ricorrenze del bilancio e ultimo giorno fino a cui le loro occorrenze sono contate
+    private final List<RecurringTemplate> templates = new ArrayList<>();
+    private LocalDate templatesCountedUpTo = LocalDate.now();
+
+    BudgetLimits(ExchangeRates rates) {
+        this.rates = rates;
+    }
+
+    /**
+     * @return limite mensile complessivo, oppure null se non impostato
+     */
+    public BigDecimal getMonthlyLimit() {
+        return monthlyLimit;
+    }
+
+    /**
+     * @return limiti mensili per categoria, in ordine di categoria (sola lettura)
+     */
+    public Map<String, BigDecimal> getCategoryLimits() {
+        return Collections.unmodifiableMap(categoryLimits);
+    }
+
+    /**
+     * @return tutti i limiti impostati: categoria -> limite, con chiave null
+     *         per il limite complessivo (sola lettura)
+     */
+    public Map<String, BigDecimal> getLimits() {
+        Map<String, BigDecimal> all = new LinkedHashMap<>();
+        if (monthlyLimit != null) all.put(null, monthlyLimit);
+        all.putAll(categoryLimits);
+        return Collections.unmodifiableMap(all);
+    }
+
+    /**
+     * Sostituisce tutti i limiti, ad esempio ripristinando la sessione
+     * precedente. I contatori delle uscite non cambiano.
+     *
+     * @param limits categoria -> limite, con chiave null per il limite complessivo
+     * @throws IllegalArgumentException se un limite è nullo o negativo
+     */
+    void setLimits(Map<String, BigDecimal> limits) {
+        for (BigDecimal limit : limits.values()) {
+            if (limit == null || limit.signum() < 0) {
+                throw new IllegalArgumentException("Il limite di spesa non può essere negativo");
+            }
+        }
+        monthlyLimit = null;
+        categoryLimits.clear();
+        limits.forEach(this::setLimit);
+    }
+
+    /**
+     * Imposta o rimuove un limite mensile.
+     *
+     * @param category categoria, oppure null per il limite complessivo
+     * @param limit    limite nella valuta di riferimento, oppure null per rimuoverlo
+     * @throws IllegalArgumentException se il limite è negativo
+     */
+    void setLimit(String category, BigDecimal limit) {
+        if (limit != null && limit.signum() < 0) {
+            throw new IllegalArgumentException("Il limite di spesa non può essere negativo");
+        }
+        if (category == null) {
+            monthlyLimit = limit;
+        } else if (limit == null) {
+            categoryLimits.remove(category);
+        } else {
+            categoryLimits.put(category, limit);
+        }
+    }
+
+    /**
+     * Aggiorna i contatori per le righe rimosse e aggiunte da una modifica e
+     * valuta i limiti una sola volta alla fine.
+     *
+     * @param removed righe rimosse dal bilancio
+     * @param added   righe aggiunte al bilancio
+     * @return avvisi dei limiti superati da questa modifica (vuota se nessuno)
+     */
+    List<Alert> update(Collection<? extends Transaction> removed, Collection<? extends Transaction> added) {
+        // i giorni trascorsi non sono una modifica: le loro occorrenze si contano prima
+        countNewOccurrences();
+        // spesa prima della modifica, solo per i contatori con un limite
+        Map<Counter, BigDecimal> before = new LinkedHashMap<>();
+        for (Transaction t : removed) {
+            record(t, false, before);
+        }
+        for (Transaction t : added) {
+            record(t, true, before);
+        }
+        return alerts(before);
+    }
+
+    /**
+     * Conta le occorrenze fino a oggi di una ricorrenza aggiunta al bilancio.
+     *
+     * @param template ricorrenza aggiunta
+     * @return avvisi dei limiti superati per effetto della ricorrenza
+     */
+    List<Alert> addTemplate(RecurringTemplate template) {
+        countNewOccurrences();
+        templates.add(template);
+        Map<Counter, BigDecimal> before = new LinkedHashMap<>();
+        for (Transaction t : template.materialize(template.getStart(), templatesCountedUpTo)) {
+            record(t, true, before);
+        }
+        return alerts(before);
+    }
+
+    /**
+     * Toglie dai contatori le occorrenze di una ricorrenza rimossa dal bilancio.
+     *
+     * @param template ricorrenza rimossa
+     */
+    void removeTemplate(RecurringTemplate template) {
+        countNewOccurrences();
+        if (!templates.remove(template)) return;
+        for (Transaction t : template.materialize(template.getStart(), templatesCountedUpTo)) {
+            record(t, false, null);
+        }
+    }
+
+    /** Aggiunge ai contatori le occorrenze dei giorni passati dall'ultimo conteggio fino a oggi. */
+    private void countNewOccurrences() {
+        LocalDate today = LocalDate.now();
+        if (!today.isAfter(templatesCountedUpTo)) return;
+        for (RecurringTemplate r : templates) {
+            for (Transaction t : r.materialize(templatesCountedUpTo.plusDays(1), today)) {
+                record(t, true, null);
+            }
+        }
+        templatesCountedUpTo = today;
+    }
+
+    /** Avvisi dei contatori passati da entro il limite a oltre il limite. */
+    private List<Alert> alerts(Map<Counter, BigDecimal> before) {
+        if (before.isEmpty()) return Collections.emptyList();
+        List<Alert> alerts = new ArrayList<>();
+        before.forEach((counter, old) -> {
+            BigDecimal limit = limitOf(counter.category);
+            BigDecimal spent = spent(counter.category, counter.month);
+            if (limit != null && old.compareTo(limit) <= 0 && spent.compareTo(limit) > 0) {
+                alerts.add(new Alert(counter.category, toYearMonth(counter.month), limit, spent));
+            }
+        });
+        return alerts;
+    }
+
+    /**
+     * Ricalcola tutti i contatori da capo, ad esempio dopo un cambio dei
+     * tassi di cambio.
+     *
+     * @param transactions tutte le righe del bilancio
+     * @param rates        nuova tabella dei tassi
+     */
+    void rebuild(Collection<? extends Transaction> transactions, ExchangeRates rates) {
+        this.rates = rates;
+        reset();
+        for (Transaction t : transactions) {
+            record(t, true, null);
+        }
+    }
+
+    /**
+     * Azzera i contatori delle righe memorizzate (i limiti e le occorrenze
+     * delle ricorrenze restano).
+     */
+    void reset() {
+        spentByMonth.clear();
+        spentByCategory.clear();
+        for (RecurringTemplate r : templates) {
+            for (Transaction t : r.materialize(r.getStart(), templatesCountedUpTo)) {
+                record(t, true, null);
+            }
+        }
+    }
+
+    /**
+     * Restituisce i limiti superati in un mese.
+     *
+     * @param month mese da verificare
+     * @return un avviso per ogni limite superato, prima quello complessivo
+     */
+    public List<Alert> getAlerts(YearMonth month) {
+        countNewOccurrences();
+        int key = month.getYear() * 12 + month.getMonthValue() - 1;
+        List<Alert> alerts = new ArrayList<>();
+        if (monthlyLimit != null) {
+            BigDecimal spent = spent(null, key);
+            if (spent.compareTo(monthlyLimit) > 0) alerts.add(new Alert(null, month, monthlyLimit, spent));
+        }
+        categoryLimits.forEach((category, limit) -> {
+            BigDecimal spent = spent(category, key);
+            if (spent.compareTo(limit) > 0) alerts.add(new Alert(category, month, limit, spent));
+        });
+        return alerts;
+    }
+
+    /**
+     * @param category categoria, oppure null per il totale
+     * @param month    mese
+     * @return uscite del mese nella valuta di riferimento
+     */
+    public BigDecimal getSpent(String category, YearMonth month) {
+        countNewOccurrences();
+        return spent(category, month.getYear() * 12 + month.getMonthValue() - 1);
+    }
+
+    private void record(Transaction t, boolean added, Map<Counter, BigDecimal> before) {
+        if (!(t instanceof Expense)) return;
+        BigDecimal amount;
+        try {
+            amount = t.getCurrency().equals(rates.getReportingCurrency())
+                    ? t.getAmount()
+                    : rates.convert(t.getAmount(), t.getCurrency(), t.getDate());
+        } catch (IllegalStateException ex) {
+            // manca il tasso: la riga non è contata (vedi il commento della classe)
+            return;
+        }
+        BigDecimal delta = added ? amount : amount.negate();
+        int month = t.getDate().getYear() * 12 + t.getDate().getMonthValue() - 1;
+        String category = t.getCategory();
+
+        if (before != null) {
+            if (monthlyLimit != null) before.putIfAbsent(new Counter(null, month), spent(null, month));
+            if (categoryLimits.containsKey(category)) {
+                before.putIfAbsent(new Counter(category, month), spent(category, month));
+            }
+        }
+        spentByMonth.merge(month, delta, BigDecimal::add);
+        spentByCategory.computeIfAbsent(category, k -> new HashMap<>()).merge(month, delta, BigDecimal::add);
+    }
+
+    private BigDecimal spent(String category, int month) {
+        Map<Integer, BigDecimal> counters = (category == null) ? spentByMonth : spentByCategory.get(category);
+        if (counters == null) return BigDecimal.ZERO;
+        return counters.getOrDefault(month, BigDecimal.ZERO);
+    }
+
+    private BigDecimal limitOf(String category) {
+        return (category == null) ? monthlyLimit : categoryLimits.get(category);
+    }
+
+    private static YearMonth toYearMonth(int month) {
+        return YearMonth.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+    }
+
+    /** Contatore di un mese: complessivo (categoria null) o di una categoria. */
+    private static final class Counter {
+        final String category;
+        final int month;
+
+        Counter(String category, int month) {
+            this.category = category;
+            this.month = month;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Counter)) return false;
+            Counter c = (Counter) o;
+            return month == c.month && (category == null ? c.category == null : category.equals(c.category));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * month + (category == null ? 0 : category.hashCode());
+        }
+    }
+
+    /**
+     * Avviso di un limite di spesa superato in un mese.
+     */
+    public static final class Alert {
+        private final String category;
+        private final YearMonth month;
+        private final BigDecimal limit;
+        private final BigDecimal spent;
+
+        Alert(String category, YearMonth month, BigDecimal limit, BigDecimal spent) {
+            this.category = category;
+            this.month = month;
+            this.limit = limit;
+            this.spent = spent;
+        }
+
+        /** @return categoria del limite, oppure null per il limite complessivo */
+        public String getCategory() {
+            return category;
+        }
+
+        /** @return mese in cui il limite è superato */
+        public YearMonth getMonth() {
+            return month;
+        }
+
+        /** @return limite mensile */
+        public BigDecimal getLimit() {
+            return limit;
+        }
+
+        /** @return uscite del mese */
+        public BigDecimal getSpent() {
+            return spent;
+        }
+
+        @Override
+        public String toString() {
+            String what = (category == null) ? "Spesa totale" : "Spesa \"" + category + "\"";
+            return what + " di " + String.format("%02d/%d", month.getMonthValue(), month.getYear())
+                    + ": " + spent.toPlainString() + " oltre il limite di " + limit.toPlainString();
+        }
+    }
+}
@@ -1,25 +1,118 @@
 package it.unimore.programmazioneoggetti.budget.model;
 
+import it.unimore.programmazioneoggetti.budget.util.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Gestisce tutte le transazioni del bilancio: aggiunta, rimozione, ricerca
  * e calcolo del saldo totale. Mantiene una lista interna immutabile di
  * {@link Transaction}.
+ * <p>
+ * Gestisce inoltre le transazioni ricorrenti ({@link RecurringTemplate}):
+ * le loro occorrenze non vengono memorizzate ma create solo per gli
+ * intervalli di date richiesti, con una piccola cache delle ultime finestre.
+ * <p>
+ * Gli anni chiusi possono essere spostati in un {@link ArchiveStore}: il
+ * saldo usa i riepiloghi degli anni archiviati e le ricerche per data
+ * leggono solo i segmenti degli anni che intersecano l'intervallo richiesto.
+ * Non si possono aggiungere righe datate in un anno già archiviato.
+ * <p>
+ * Le aggiunte e le rimozioni successive all'ultimo salvataggio sono tenute in
+ * un giornale ({@link #getUnsavedChanges()}), così il salvataggio può
+ * scrivere solo le differenze invece dell'intero file.
+ * <p>
+ * Il saldo è espresso nella valuta di riferimento di una tabella di
+ * {@link ExchangeRates}: le righe in altre valute sono convertite al tasso
+ * del loro giorno.
+ * <p>
+ * Le uscite di ogni mese sono contate anche in {@link BudgetLimits}: a ogni
+ * modifica i limiti di spesa vengono verificati sui contatori aggiornati e
+ * gli avvisi dei limiti appena superati passano agli ascoltatori registrati
+ * con {@link #addLimitListener(Consumer)}.
  */
 public class BudgetManager {
 
     private final List<Transaction> transactions;
 
+    // Metriche delle operazioni principali (vedi Metrics)
+    private static final Metrics.Counter ADDED        = Metrics.counter("model.added");
+    private static final Metrics.Counter REMOVED      = Metrics.counter("model.removed");
+    private static final Metrics.Timer   BALANCE      = Metrics.timer("model.balance");
+    private static final Metrics.Timer   BY_DATE      = Metrics.timer("model.getByDate");
+    private static final Metrics.Timer   BY_DATE_RANGE = Metrics.timer("model.getByDateRange");
+    private static final Metrics.Timer   QUERY        = Metrics.timer("model.query");
+
+    // Versione del contenuto: incrementata a ogni modifica della lista. È volatile
+    // perché può essere letta da altri thread (es. l'API locale) per capire se
+    // un'istantanea è ancora valida; le modifiche avvengono solo sul thread grafico.
+    private volatile long modCount;
+
+    private final List<RecurringTemplate> templates = new ArrayList<>();
+
+    // Archivio degli anni chiusi (null = nessun archivio)
+    private ArchiveStore archive;
+
+    // Tassi di cambio per il saldo (senza tassi, tutto deve essere nella valuta predefinita)
+    private ExchangeRates rates = new ExchangeRates(Transaction.DEFAULT_CURRENCY);
+
+    // Saldo convertito degli anni archiviati, per anno: gli archivi non cambiano,
+    // quindi ogni anno si legge al più una volta per tabella dei tassi
+    private final Map<Integer, BigDecimal> archivedNets = new HashMap<>();
+
+    /** Numero massimo di finestre di occorrenze tenute in cache. */
+    private static final int MAX_CACHED_WINDOWS = 16;
+    /** Le finestre con più occorrenze di così non vengono messe in cache. */
+    private static final int MAX_CACHED_ROWS = 50_000;
+
+    // Cache LRU: [from, to] in giorni epoch -> occorrenze ricorrenti nella finestra
+    private final Map<Long, List<Transaction>> windowCache =
+            new LinkedHashMap<>(MAX_CACHED_WINDOWS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, List<Transaction>> eldest) {
+                    return size() > MAX_CACHED_WINDOWS;
+                }
+            };
+
+    /** Oltre questo numero di modifiche non salvate il giornale viene abbandonato. */
+    private static final int MAX_JOURNAL = 100_000;
+
+    // Modifiche dall'ultimo salvataggio, in ordine (null = non ricostruibili: serve un salvataggio completo)
+    private List<Change> journal;
+    // File a cui si riferisce il giornale (null = mai salvato né caricato)
+    private File savedFile;
+    // Dimensione e data di modifica di savedFile al momento di markSaved
+    private long savedLength;
+    private long savedModified;
+
+    // Indici per data, per testo e per categoria usati dalle query (vedi QueryPlanner):
+    // le aggiunte in coda li estendono, le altre modifiche chiamano planner.rewritten()
+    private final QueryPlanner planner;
+
+    // Limiti di spesa e contatori mensili delle uscite
+    private final BudgetLimits limits = new BudgetLimits(rates);
+    private final List<Consumer<List<BudgetLimits.Alert>>> limitListeners = new ArrayList<>();
+
     /**
      * Costruisce un nuovo BudgetManager con lista vuota di transazioni.
      */
     public BudgetManager() {
         this.transactions = new ArrayList<>();
+        this.planner = new QueryPlanner(transactions);
     }
 
     /**
@@ -27,11 +120,146 @@ public class BudgetManager {
      * IllegalArgumentException.
      *
      * @param t transazione da aggiungere (non null)
-     * @throws IllegalArgumentException se {@code t} è null
+     * @throws IllegalArgumentException se {@code t} è null o datata in un anno archiviato
      */
     public void addTransaction(Transaction t) {
         if (t == null) throw new IllegalArgumentException("La transazione non può essere nulla");
+        checkNotArchived(List.of(t));
         transactions.add(t);
+        journal(true, t);
+        modCount++;
+        ADDED.increment();
+        checkLimits(Collections.emptyList(), List.of(t));
+    }
+
+    /**
+     * Inserisce una transazione in una posizione della lista, ad esempio per
+     * rimettere al suo posto una riga eliminata. Se {@code index} è oltre la
+     * fine, la transazione va in coda.
+     *
+     * @param index posizione (0 = in testa)
+     * @param t     transazione da inserire (non null)
+     * @throws IllegalArgumentException se {@code t} è null o datata in un anno archiviato,
+     *                                  o se {@code index} è negativo
+     */
+    public void insertTransaction(int index, Transaction t) {
+        if (t == null) throw new IllegalArgumentException("La transazione non può essere nulla");
+        if (index < 0) throw new IllegalArgumentException("La posizione non può essere negativa");
+        checkNotArchived(List.of(t));
+        if (index >= transactions.size()) {
+            addTransaction(t);
+            return;
+        }
+        transactions.add(index, t);
+        // il file delle differenze aggiunge righe solo in coda: l'ordine va riscritto per intero
+        journal = null;
+        planner.rewritten();
+        modCount++;
+        ADDED.increment();
+        checkLimits(Collections.emptyList(), List.of(t));
+    }
+
+    /**
+     * Inserisce più transazioni nelle posizioni indicate, con una sola passata
+     * sulla lista, ad esempio per rimettere al loro posto le righe tolte da un
+     * caricamento annullato. Le posizioni sono quelle finali, in ordine
+     * crescente; quelle oltre la fine mettono le transazioni in coda.
+     *
+     * @param indices posizioni finali delle transazioni, in ordine crescente
+     * @param list    transazioni da inserire, nello stesso ordine (nessuna null)
+     * @throws IllegalArgumentException se le dimensioni non coincidono, se le
+     *                                  posizioni non sono crescenti o non negative,
+     *                                  o se una riga è null o in un anno archiviato
+     */
+    public void insertAll(int[] indices, List<Transaction> list) {
+        if (indices.length != list.size()) {
+            throw new IllegalArgumentException("Serve una posizione per ogni transazione");
+        }
+        for (int i = 0; i < indices.length; i++) {
+            if (list.get(i) == null) throw new IllegalArgumentException("La transazione non può essere nulla");
+            if (indices[i] < 0 || (i > 0 && indices[i] <= indices[i - 1])) {
+                throw new IllegalArgumentException("Le posizioni devono essere crescenti e non negative");
+            }
+        }
+        if (list.isEmpty()) return;
+        if (indices[0] >= transactions.size()) {
+            addAll(list); // tutte in coda: il giornale e gli indici restano incrementali
+            return;
+        }
+        checkNotArchived(list);
+        List<Transaction> merged = new ArrayList<>(transactions.size() + list.size());
+        int next = 0;
+        for (Transaction t : transactions) {
+            while (next < indices.length && indices[next] == merged.size()) {
+                merged.add(list.get(next++));
+            }
+            merged.add(t);
+        }
+        merged.addAll(list.subList(next, list.size()));
+        transactions.clear();
+        transactions.addAll(merged);
+        // il file delle differenze aggiunge righe solo in coda: l'ordine va riscritto per intero
+        journal = null;
+        planner.rewritten();
+        modCount++;
+        ADDED.add(list.size());
+        checkLimits(Collections.emptyList(), list);
+    }
+
+    /**
+     * Rimuove, con una sola passata sulla lista, le transazioni nelle
+     * posizioni indicate, ad esempio per annullare un caricamento senza
+     * confondere righe uguali in posizioni diverse.
+     *
+     * @param indices posizioni da rimuovere, in ordine crescente
+     * @return le transazioni rimosse, in ordine di posizione
+     * @throws IllegalArgumentException se le posizioni non sono crescenti o sono fuori dalla lista
+     */
+    public List<Transaction> removeAt(int[] indices) {
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] < 0 || indices[i] >= transactions.size() || (i > 0 && indices[i] <= indices[i - 1])) {
+                throw new IllegalArgumentException("Le posizioni devono essere crescenti e interne alla lista");
+            }
+        }
+        if (indices.length == 0) return List.of();
+        List<Transaction> removedRows = new ArrayList<>(indices.length);
+        int next = 0;
+        int write = 0;
+        for (int read = 0; read < transactions.size(); read++) {
+            Transaction t = transactions.get(read);
+            if (next < indices.length && indices[next] == read) {
+                removedRows.add(t);
+                journal(false, t);
+                next++;
+            } else {
+                transactions.set(write++, t);
+            }
+        }
+        transactions.subList(write, transactions.size()).clear();
+        limits.update(removedRows, Collections.emptyList());
+        planner.rewritten();
+        modCount++;
+        REMOVED.add(removedRows.size());
+        return removedRows;
+    }
+
+    /**
+     * Cerca una transazione memorizzata. La categoria non partecipa a
+     * {@link Transaction#equals(Object)}: tra le righe uguali si preferisce
+     * la prima con la stessa categoria di {@code t}, altrimenti la prima uguale.
+     *
+     * @param t transazione da cercare
+     * @return la posizione della transazione trovata, oppure -1
+     */
+    public int indexOf(Transaction t) {
+        int first = -1;
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction stored = transactions.get(i);
+            if (!stored.equals(t)) continue;
+            if (stored.getCategory().equals(t.getCategory())) return i;
+            if (first < 0) first = i;
+        }
+        return first;
     }
 
     /**
@@ -42,7 +270,391 @@ public class BudgetManager {
      * @return {@code true} se rimossa con successo, {@code false} altrimenti
      */
     public boolean removeTransaction(Transaction t) {
-        return transactions.remove(t);
+        int index = indexOf(t);
+        if (index < 0) return false;
+        // si registra l'elemento effettivamente rimosso (la categoria non partecipa a equals)
+        Transaction removed = transactions.remove(index);
+        journal(false, removed);
+        limits.update(List.of(removed), Collections.emptyList());
+        planner.rewritten();
+        modCount++;
+        REMOVED.increment();
+        return true;
+    }
+
+    /**
+     * Sostituisce una transazione esistente mantenendone la posizione.
+     *
+     * @param oldT transazione da sostituire
+     * @param newT nuova transazione (non null)
+     * @return {@code true} se {@code oldT} era presente ed è stata sostituita
+     * @throws IllegalArgumentException se {@code newT} è null o datata in un anno archiviato
+     */
+    public boolean replaceTransaction(Transaction oldT, Transaction newT) {
+        if (newT == null) throw new IllegalArgumentException("La transazione non può essere nulla");
+        checkNotArchived(List.of(newT));
+        int index = indexOf(oldT);
+        if (index < 0) return false;
+        Transaction removed = transactions.set(index, newT);
+        journal(false, removed);
+        journal(true, newT);
+        planner.rewritten();
+        modCount++;
+        checkLimits(List.of(removed), List.of(newT));
+        return true;
+    }
+
+    /**
+     * Aggiunge in coda tutte le transazioni indicate.
+     *
+     * @param list transazioni da aggiungere (nessuna può essere null)
+     * @throws IllegalArgumentException se la lista contiene un elemento null o
+     *                                  una riga datata in un anno archiviato
+     */
+    public void addAll(Collection<? extends Transaction> list) {
+        for (Transaction t : list) {
+            if (t == null) throw new IllegalArgumentException("La transazione non può essere nulla");
+        }
+        checkNotArchived(list);
+        transactions.addAll(list);
+        if (journal != null && journal.size() + list.size() > MAX_JOURNAL) {
+            journal = null;
+        } else {
+            for (Transaction t : list) {
+                journal(true, t);
+            }
+        }
+        modCount++;
+        ADDED.add(list.size());
+        // un'importazione in blocco produce gli avvisi in una sola valutazione finale
+        checkLimits(Collections.emptyList(), list);
+    }
+
+    /**
+     * Rimuove, con una sola passata sulla lista, un'occorrenza per ciascuna
+     * delle transazioni indicate, con la stessa categoria (come chiamate
+     * ripetute a {@link #removeTransaction(Transaction)}, ma in tempo lineare).
+     *
+     * @param list transazioni da rimuovere
+     * @return numero di transazioni effettivamente rimosse
+     */
+    public int removeAll(Collection<? extends Transaction> list) {
+        if (list.isEmpty()) return 0;
+        Map<Map.Entry<Transaction, String>, Integer> pending = new HashMap<>();
+        for (Transaction t : list) {
+            pending.merge(Map.entry(t, t.getCategory()), 1, Integer::sum);
+        }
+        List<Transaction> removedRows = new ArrayList<>();
+        transactions.removeIf(t -> {
+            Map.Entry<Transaction, String> key = Map.entry(t, t.getCategory());
+            Integer n = pending.get(key);
+            if (n == null) return false;
+            if (n == 1) pending.remove(key); else pending.put(key, n - 1);
+            journal(false, t);
+            removedRows.add(t);
+            return true;
+        });
+        int removed = removedRows.size();
+        if (removed > 0) {
+            limits.update(removedRows, Collections.emptyList());
+            planner.rewritten();
+            modCount++;
+            REMOVED.add(removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Rimuove tutte le transazioni.
+     */
+    public void clear() {
+        if (transactions.isEmpty()) return;
+        transactions.clear();
+        journal = null;
+        limits.reset();
+        planner.rewritten();
+        modCount++;
+    }
+
+    /**
+     * Verifica che nessuna riga sia datata in un anno archiviato: finirebbe
+     * fuori dal segmento dell'anno e il saldo la conterebbe insieme al suo
+     * riepilogo. Va chiamato prima di modificare la lista.
+     *
+     * @param list righe da aggiungere
+     * @throws IllegalArgumentException se una riga è in un anno archiviato
+     */
+    void checkNotArchived(Collection<? extends Transaction> list) {
+        if (archive == null) return;
+        int checked = Integer.MIN_VALUE;
+        for (Transaction t : list) {
+            int year = t.getDate().getYear();
+            if (year != checked && archive.contains(year)) {
+                throw new IllegalArgumentException("L'anno " + year + " è archiviato: non si possono aggiungere righe");
+            }
+            checked = year;
+        }
+    }
+
+    private void journal(boolean added, Transaction t) {
+        if (journal == null) return;
+        if (journal.size() >= MAX_JOURNAL) {
+            journal = null;
+        } else {
+            journal.add(new Change(added, t));
+        }
+    }
+
+    /**
+     * Segna il contenuto attuale come salvato su (o appena caricato da) un
+     * file: il giornale delle modifiche riparte vuoto e si riferisce a quel file.
+     *
+     * @param file file che contiene ora esattamente le transazioni memorizzate
+     */
+    public void markSaved(File file) {
+        journal = new ArrayList<>();
+        savedFile = file.getAbsoluteFile();
+        savedLength = savedFile.length();
+        savedModified = savedFile.lastModified();
+    }
+
+    /**
+     * Dimentica le modifiche registrate dall'ultimo {@link #markSaved(File)},
+     * ad esempio dopo un caricamento che ha scartato righe non valide del
+     * file: il prossimo salvataggio riscrive il file per intero.
+     */
+    public void discardUnsavedChanges() {
+        journal = null;
+    }
+
+    /** @return il file dell'ultimo {@link #markSaved(File)}, oppure null */
+    public File getSavedFile() {
+        return savedFile;
+    }
+
+    /**
+     * Verifica che il file dell'ultimo {@link #markSaved(File)} non sia stato
+     * modificato da allora (stessa dimensione e data di modifica), ad esempio
+     * da un altro programma o da righe accodate a un file seguito.
+     *
+     * @return {@code true} se il file è ancora quello visto da {@code markSaved}
+     */
+    public boolean isSavedFileUnchanged() {
+        return savedFile != null && savedFile.length() == savedLength
+                && savedFile.lastModified() == savedModified;
+    }
+
+    /**
+     * Ritorna le aggiunte e le rimozioni avvenute dall'ultimo
+     * {@link #markSaved(File)}, nell'ordine in cui sono avvenute. Le occorrenze
+     * ricorrenti non sono comprese, come nei file salvati.
+     *
+     * @return lista immutabile delle modifiche, oppure null se non sono
+     *         ricostruibili (mai salvato, lista svuotata o troppe modifiche)
+     */
+    public List<Change> getUnsavedChanges() {
+        return (journal == null) ? null : List.copyOf(journal);
+    }
+
+    /**
+     * Aggiunge un modello di transazione ricorrente.
+     *
+     * @param template modello da aggiungere (non null)
+     * @throws IllegalArgumentException se {@code template} è null
+     */
+    public void addRecurring(RecurringTemplate template) {
+        if (template == null) throw new IllegalArgumentException("Il modello ricorrente non può essere nullo");
+        templates.add(template);
+        windowCache.clear();
+        modCount++;
+        notifyLimits(limits.addTemplate(template));
+    }
+
+    /**
+     * Rimuove un modello di transazione ricorrente.
+     *
+     * @param template modello da rimuovere
+     * @return {@code true} se rimosso con successo, {@code false} altrimenti
+     */
+    public boolean removeRecurring(RecurringTemplate template) {
+        boolean removed = templates.remove(template);
+        if (removed) {
+            windowCache.clear();
+            limits.removeTemplate(template);
+            modCount++;
+        }
+        return removed;
+    }
+
+    /** @return copia immutabile dei modelli ricorrenti registrati */
+    public List<RecurringTemplate> getRecurringTemplates() {
+        return List.copyOf(templates);
+    }
+
+    /**
+     * Verifica se una transazione è un'occorrenza generata da un modello
+     * ricorrente (e quindi non può essere modificata o rimossa singolarmente).
+     * Una riga memorizzata non lo è mai, anche se ha gli stessi valori di
+     * un'occorrenza: le righe sono riconosciute per identità, quindi
+     * {@code t} deve essere l'oggetto ottenuto dal model (es. dalla tabella).
+     *
+     * @param t transazione da verificare
+     * @return {@code true} se {@code t} è un'occorrenza di un modello ricorrente
+     */
+    public boolean isRecurringOccurrence(Transaction t) {
+        if (templates.isEmpty()) return false;
+        for (Transaction stored : transactions) {
+            if (stored == t) return false;
+        }
+        for (RecurringTemplate r : templates) {
+            if (r.generates(t)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Restituisce le occorrenze ricorrenti in [from, to], usando la cache
+     * delle finestre già calcolate.
+     */
+    private List<Transaction> occurrences(LocalDate from, LocalDate to) {
+        if (templates.isEmpty() || to.isBefore(from)) return List.of();
+        long key = (from.toEpochDay() << 32) ^ (to.toEpochDay() & 0xFFFFFFFFL);
+        List<Transaction> cached = windowCache.get(key);
+        if (cached != null) return cached;
+        List<Transaction> list = new ArrayList<>();
+        for (RecurringTemplate r : templates) {
+            list.addAll(r.materialize(from, to));
+        }
+        List<Transaction> result = List.copyOf(list);
+        if (result.size() <= MAX_CACHED_ROWS) {
+            windowCache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Ritorna le transazioni memorizzate insieme alle occorrenze ricorrenti
+     * fino alla data indicata (inclusa). È la vista usata dalla tabella.
+     *
+     * @param upTo ultima data delle occorrenze ricorrenti da includere
+     * @return lista immutabile di transazioni
+     */
+    public List<Transaction> getTransactionsUpTo(LocalDate upTo) {
+        if (templates.isEmpty()) return getAllTransactions();
+        LocalDate first = templates.stream()
+                .map(RecurringTemplate::getStart)
+                .min(LocalDate::compareTo)
+                .orElse(upTo);
+        List<Transaction> all = new ArrayList<>(transactions);
+        all.addAll(occurrences(first, upTo));
+        return List.copyOf(all);
+    }
+
+    /**
+     * Cerca le transazioni memorizzate la cui descrizione contiene il testo
+     * indicato, senza distinguere maiuscole e minuscole.
+     *
+     * @param text testo da cercare (vuoto = tutte le transazioni)
+     * @return lista delle transazioni trovate, nell'ordine di inserimento
+     */
+    public List<Transaction> searchByDescription(String text) {
+        String key = text.trim().toLowerCase();
+        return AggregationEngine.filter(transactions, t -> t.getDescription().toLowerCase().contains(key));
+    }
+
+    /**
+     * Collega un archivio degli anni chiusi. Le righe memorizzate datate in un
+     * anno già archiviato (ad esempio lette da un file non salvato dopo
+     * {@link #closeYear(int)}) sono copie di righe dell'archivio: vengono
+     * rimosse, altrimenti il saldo conterebbe l'anno due volte.
+     *
+     * @param archive archivio da usare, oppure null per scollegarlo
+     * @return numero di righe rimosse perché già archiviate
+     */
+    public int setArchive(ArchiveStore archive) {
+        this.archive = archive;
+        archivedNets.clear();
+        modCount++;
+        if (archive == null) return 0;
+        return removeAll(AggregationEngine.filter(transactions, t -> archive.contains(t.getDate().getYear())));
+    }
+
+    /** @return l'archivio collegato, oppure null */
+    public ArchiveStore getArchive() {
+        return archive;
+    }
+
+    /**
+     * Chiude un anno fiscale: scrive le sue transazioni nell'archivio e le
+     * rimuove dalla lista in memoria.
+     *
+     * @param year anno da chiudere
+     * @return il riepilogo dell'anno archiviato
+     * @throws IllegalStateException    se non è collegato alcun archivio
+     * @throws IllegalArgumentException se l'anno è già archiviato
+     * @throws IOException              se la scrittura dell'archivio fallisce
+     */
+    public YearSummary closeYear(int year) throws IOException {
+        if (archive == null) throw new IllegalStateException("Nessun archivio collegato");
+        List<Transaction> rows = transactions.stream()
+                .filter(t -> t.getDate().getYear() == year)
+                .collect(Collectors.toList());
+        YearSummary summary = archive.writeYear(year, rows);
+        archivedNets.remove(year);
+        removeAll(rows);
+        return summary;
+    }
+
+    /**
+     * Aggiunge al risultato le transazioni archiviate comprese in [from, to],
+     * decomprimendo solo i segmenti degli anni che intersecano l'intervallo.
+     */
+    private void addArchived(LocalDate from, LocalDate to, List<Transaction> result) {
+        if (archive == null) return;
+        for (YearSummary s : archive.getSummaries()) {
+            if (s.getYear() < from.getYear() || s.getYear() > to.getYear() || s.getCount() == 0) continue;
+            try {
+                for (Transaction t : archive.readYear(s.getYear())) {
+                    if (!t.getDate().isBefore(from) && !t.getDate().isAfter(to)) result.add(t);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Aggrega per giorno le transazioni (comprese le occorrenze ricorrenti)
+     * fino alla data indicata, convertite nella valuta di riferimento come
+     * nel saldo. Gli anni archiviati non sono compresi: vedi
+     * {@link #getArchivedBalance()}.
+     *
+     * @param upTo ultima data da includere
+     * @return serie giornaliera di entrate e uscite
+     * @throws IllegalStateException se manca il tasso di cambio di una riga
+     */
+    public DailySeries getDailySeries(LocalDate upTo) {
+        // filtro parallelo sulla lista interna, senza copiarla prima
+        List<Transaction> history = AggregationEngine.filter(transactions, t -> !t.getDate().isAfter(upTo));
+        if (!templates.isEmpty()) {
+            LocalDate first = templates.stream()
+                    .map(RecurringTemplate::getStart)
+                    .min(LocalDate::compareTo)
+                    .orElse(upTo);
+            history.addAll(occurrences(first, upTo));
+        }
+        return DailySeries.of(history, rates);
+    }
+
+    /**
+     * Ritorna la versione corrente del contenuto. Il valore cambia a ogni
+     * aggiunta o rimozione, quindi due letture uguali garantiscono che la
+     * lista non sia stata modificata nel frattempo.
+     *
+     * @return contatore delle modifiche
+     */
+    public long getModCount() {
+        return modCount;
     }
 
     /**
@@ -55,40 +667,246 @@ public class BudgetManager {
         return List.copyOf(transactions);
     }
 
+    /**
+     * Imposta la tabella dei tassi di cambio usata per il saldo.
+     *
+     * @param rates tabella dei tassi (non null)
+     * @throws IllegalArgumentException se {@code rates} è null
+     */
+    public void setExchangeRates(ExchangeRates rates) {
+        if (rates == null) {
+            throw new IllegalArgumentException("La tabella dei tassi non può essere nulla");
+        }
+        this.rates = rates;
+        archivedNets.clear();
+        limits.rebuild(transactions, rates);
+        modCount++;
+    }
+
+    /** @return la tabella dei tassi di cambio in uso */
+    public ExchangeRates getExchangeRates() {
+        return rates;
+    }
+
+    /** @return il codice della valuta in cui è espresso il saldo */
+    public String getReportingCurrency() {
+        return rates.getReportingCurrency();
+    }
+
     /**
      * Calcola il saldo totale delle transazioni: somma degli importi con segno
-     * (le uscite sono negative, le entrate positive).
+     * (le uscite sono negative, le entrate positive), convertiti nella valuta
+     * di riferimento. Le transazioni ricorrenti (nella valuta predefinita)
+     * contribuiscono con le occorrenze fino alla data odierna, contate senza
+     * crearle quando non serve convertirle; gli anni archiviati con il saldo
+     * del loro riepilogo, oppure, se sono caricati tassi di cambio, con le
+     * loro righe convertite (lette una volta sola).
      *
      * @return saldo totale come BigDecimal
+     * @throws IllegalStateException se manca il tasso di cambio di una riga
      */
     public BigDecimal calculateTotalBalance() {
-        return transactions.stream()
-                .map(Transaction::signedAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        long start = Metrics.start();
+        BigDecimal total = AggregationEngine.sumConverted(transactions, rates);
+        total = total.add(getArchivedBalance());
+        LocalDate today = LocalDate.now();
+        boolean convertTemplates = !Transaction.DEFAULT_CURRENCY.equals(rates.getReportingCurrency());
+        for (RecurringTemplate r : templates) {
+            if (convertTemplates) {
+                total = total.add(AggregationEngine.sumConverted(r.materialize(r.getStart(), today), rates));
+            } else {
+                long n = r.countOccurrences(r.getStart(), today);
+                total = total.add(r.signedAmount().multiply(BigDecimal.valueOf(n)));
+            }
+        }
+        BALANCE.stop(start);
+        return total;
+    }
+
+    /**
+     * Calcola il saldo degli anni archiviati nella valuta di riferimento: la
+     * somma dei saldi dei riepiloghi, oppure, se sono caricati tassi di
+     * cambio, delle righe archiviate convertite (lette una volta sola).
+     *
+     * @return saldo degli anni archiviati, zero se non c'è un archivio
+     * @throws IllegalStateException se manca il tasso di cambio di una riga
+     * @throws UncheckedIOException  se la lettura di un anno archiviato fallisce
+     */
+    public BigDecimal getArchivedBalance() {
+        BigDecimal total = BigDecimal.ZERO;
+        if (archive == null) return total;
+        boolean singleCurrency = rates.getCurrencies().isEmpty()
+                && Transaction.DEFAULT_CURRENCY.equals(rates.getReportingCurrency());
+        for (YearSummary s : archive.getSummaries()) {
+            total = total.add(singleCurrency ? s.getNet() : archivedNet(s.getYear()));
+        }
+        return total;
+    }
+
+    /** Saldo convertito di un anno archiviato, letto dall'archivio alla prima richiesta. */
+    private BigDecimal archivedNet(int year) {
+        BigDecimal net = archivedNets.get(year);
+        if (net == null) {
+            try {
+                net = AggregationEngine.sumConverted(archive.readYear(year), rates);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            archivedNets.put(year, net);
+        }
+        return net;
     }
 
     /**
-     * Filtra e restituisce tutte le transazioni avvenute in una data specifica.
+     * Filtra e restituisce tutte le transazioni avvenute in una data specifica,
+     * comprese le eventuali occorrenze ricorrenti.
      *
      * @param date data di ricerca
      * @return lista di transazioni con {@code t.getDate().isEqual(date)}
+     * @throws UncheckedIOException se la lettura di un anno archiviato fallisce
      */
     public List<Transaction> getByDate(LocalDate date) {
-        return transactions.stream()
-                .filter(t -> t.getDate().isEqual(date))
-                .collect(Collectors.toList());
+        long start = Metrics.start();
+        List<Transaction> result = AggregationEngine.filter(transactions, t -> t.getDate().isEqual(date));
+        addArchived(date, date, result);
+        result.addAll(occurrences(date, date));
+        BY_DATE.stop(start);
+        return result;
     }
 
     /**
-     * Filtra e restituisce le transazioni comprese nell’intervallo [from, to].
+     * Filtra e restituisce le transazioni comprese nell’intervallo [from, to],
+     * comprese le occorrenze ricorrenti che cadono nell’intervallo.
      *
      * @param from data di inizio (inclusa)
      * @param to   data di fine (inclusa)
      * @return lista di transazioni che cadono nel range specificato
+     * @throws UncheckedIOException se la lettura di un anno archiviato fallisce
      */
     public List<Transaction> getByDateRange(LocalDate from, LocalDate to) {
-        return transactions.stream()
-                .filter(t -> !t.getDate().isBefore(from) && !t.getDate().isAfter(to))
-                .collect(Collectors.toList());
+        long start = Metrics.start();
+        List<Transaction> result = AggregationEngine.filter(transactions,
+                t -> !t.getDate().isBefore(from) && !t.getDate().isAfter(to));
+        addArchived(from, to, result);
+        result.addAll(occurrences(from, to));
+        BY_DATE_RANGE.stop(start);
+        return result;
+    }
+
+    /**
+     * Esegue una query componibile. Oltre alle transazioni memorizzate
+     * considera le occorrenze ricorrenti e le transazioni archiviate fino
+     * alla data finale della query (o fino a oggi), come {@link #getByDateRange}:
+     * senza data di inizio si leggono tutti gli anni archiviati.
+     *
+     * @param q query da eseguire
+     * @return transazioni che soddisfano tutti i criteri, ordinate e limitate come richiesto
+     * @throws UncheckedIOException se la lettura di un anno archiviato fallisce
+     */
+    public List<Transaction> query(TransactionQuery q) {
+        long start = Metrics.start();
+        LocalDate to = (q.getTo() != null) ? q.getTo() : LocalDate.now();
+        List<Transaction> extra = new ArrayList<>();
+        addArchived((q.getFrom() != null) ? q.getFrom() : LocalDate.MIN, to, extra);
+        LocalDate first = (q.getFrom() != null) ? q.getFrom() : templates.stream()
+                .map(RecurringTemplate::getStart)
+                .min(LocalDate::compareTo)
+                .orElse(to);
+        extra.addAll(occurrences(first, to));
+        List<Transaction> result = planner.execute(q, modCount, extra);
+        QUERY.stop(start);
+        return result;
+    }
+
+    /**
+     * Restituisce le categorie usate dalle transazioni memorizzate.
+     *
+     * @return categorie distinte (non vuote), in ordine alfabetico
+     */
+    public List<String> getCategories() {
+        return planner.categories(modCount);
+    }
+
+    /**
+     * Imposta o rimuove un limite di spesa mensile.
+     *
+     * @param category categoria, oppure null per il limite complessivo
+     * @param limit    limite nella valuta di riferimento, oppure null per rimuoverlo
+     * @throws IllegalArgumentException se il limite è negativo
+     */
+    public void setSpendingLimit(String category, BigDecimal limit) {
+        limits.setLimit(category, limit);
+    }
+
+    /**
+     * Sostituisce tutti i limiti di spesa, ad esempio con quelli di una
+     * sessione precedente o di un conto riletto dal file.
+     *
+     * @param all categoria -> limite, con chiave null per il limite complessivo
+     * @throws IllegalArgumentException se un limite è nullo o negativo
+     * @see BudgetLimits#getLimits()
+     */
+    public void setSpendingLimits(Map<String, BigDecimal> all) {
+        limits.setLimits(all);
+    }
+
+    /** @return i limiti di spesa e le uscite mensili contate */
+    public BudgetLimits getSpendingLimits() {
+        return limits;
+    }
+
+    /**
+     * Restituisce i limiti di spesa superati in un mese, leggendo i
+     * contatori senza scorrere le transazioni.
+     *
+     * @param month mese da verificare
+     * @return avvisi dei limiti superati
+     */
+    public List<BudgetLimits.Alert> getLimitAlerts(YearMonth month) {
+        return limits.getAlerts(month);
+    }
+
+    /**
+     * Registra un ascoltatore chiamato, sul thread che modifica il bilancio,
+     * quando una modifica fa superare uno o più limiti di spesa.
+     *
+     * @param listener riceve gli avvisi dei limiti appena superati
+     */
+    public void addLimitListener(Consumer<List<BudgetLimits.Alert>> listener) {
+        limitListeners.add(listener);
+    }
+
+    private void checkLimits(Collection<? extends Transaction> removed, Collection<? extends Transaction> added) {
+        notifyLimits(limits.update(removed, added));
+    }
+
+    private void notifyLimits(List<BudgetLimits.Alert> alerts) {
+        if (alerts.isEmpty()) return;
+        for (Consumer<List<BudgetLimits.Alert>> listener : limitListeners) {
+            listener.accept(alerts);
+        }
+    }
+
+    /**
+     * Modifica non ancora salvata: una transazione aggiunta o rimossa.
+     */
+    public static final class Change {
+        private final boolean added;
+        private final Transaction transaction;
+
+        Change(boolean added, Transaction transaction) {
+            this.added = added;
+            this.transaction = transaction;
+        }
+
+        /** @return {@code true} per un'aggiunta, {@code false} per una rimozione */
+        public boolean isAdded() {
+            return added;
+        }
+
+        /** @return la transazione aggiunta o rimossa */
+        public Transaction getTransaction() {
+            return transaction;
+        }
     }
 }
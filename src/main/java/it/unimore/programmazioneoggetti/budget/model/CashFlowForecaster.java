@@ -0,0 +1,177 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Previsione del saldo futuro a partire dallo storico giornaliero di entrate
+ * e uscite ({@link DailySeries}).
+ * <p>
+ * Ogni serie viene scomposta in una componente stagionale additiva (scarto
+ * medio di ciascun mese dell'anno rispetto alla media generale) e in un
+ * livello, stimato come media mobile degli ultimi giorni destagionalizzati.
+ * La previsione giornaliera è livello + stagionalità del mese; entrate e
+ * uscite sono elaborate in parallelo, ciascuna con una sola passata su
+ * array primitivi.
+ */
+public class CashFlowForecaster {
+
+    /** Finestra predefinita della media mobile, in giorni. */
+    public static final int DEFAULT_WINDOW = 90;
+
+    private final int window;
+
+    /** Costruisce un previsore con la finestra predefinita. */
+    public CashFlowForecaster() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Costruisce un previsore con la finestra di media mobile indicata.
+     *
+     * @param window numero di giorni della media mobile (almeno 1)
+     * @throws IllegalArgumentException se {@code window} è minore di 1
+     */
+    public CashFlowForecaster(int window) {
+        if (window < 1) throw new IllegalArgumentException("La finestra deve essere di almeno un giorno");
+        this.window = window;
+    }
+
+    /**
+     * Calcola la previsione del saldo per i giorni successivi all'ultimo
+     * giorno della serie, ma non prima di oggi: se lo storico si ferma nel
+     * passato, i giorni già trascorsi senza movimenti non vengono previsti.
+     *
+     * @param history        storico giornaliero
+     * @param currentBalance saldo alla fine dello storico
+     * @param horizonDays    numero di giorni da prevedere (almeno 1)
+     * @return la previsione giornaliera del saldo
+     * @throws IllegalArgumentException se {@code horizonDays} è minore di 1
+     */
+    public Forecast forecast(DailySeries history, double currentBalance, int horizonDays) {
+        if (horizonDays < 1) throw new IllegalArgumentException("L'orizzonte deve essere di almeno un giorno");
+        LocalDate today = LocalDate.now();
+        LocalDate firstDay = (history.isEmpty() || history.getLastDay().isBefore(today))
+                ? today : history.getLastDay().plusDays(1);
+        long firstHistoryDay = history.getFirstEpochDay();
+
+        CompletableFuture<double[]> incomeF = CompletableFuture.supplyAsync(() ->
+                project(history.incomeValues(), firstHistoryDay, firstDay, horizonDays));
+        CompletableFuture<double[]> expenseF = CompletableFuture.supplyAsync(() ->
+                project(history.expenseValues(), firstHistoryDay, firstDay, horizonDays));
+        double[] income  = incomeF.join();
+        double[] expense = expenseF.join();
+
+        double[] balance = new double[horizonDays];
+        double running = currentBalance;
+        for (int d = 0; d < horizonDays; d++) {
+            running += income[d] - expense[d];
+            balance[d] = running;
+        }
+        return new Forecast(firstDay, balance);
+    }
+
+    /**
+     * Prevede una singola serie. Una passata calcola le somme per mese
+     * dell'anno e la media generale; la media mobile destagionalizzata usa
+     * solo gli ultimi {@code window} giorni.
+     */
+    private double[] project(double[] values, long firstEpochDay, LocalDate firstDay, int horizon) {
+        double[] result = new double[horizon];
+        int n = values.length;
+        if (n == 0) return result;
+
+        double[] monthSum   = new double[12];
+        int[]    monthCount = new int[12];
+        double total = 0;
+        LocalDate day = LocalDate.ofEpochDay(firstEpochDay);
+        int month = day.getMonthValue() - 1;
+        int dayOfMonth = day.getDayOfMonth();
+        int monthLength = day.lengthOfMonth();
+        int[] monthOf = new int[Math.min(n, window)];
+        int tailStart = n - monthOf.length;
+        for (int i = 0; i < n; i++) {
+            double v = values[i];
+            total += v;
+            monthSum[month] += v;
+            monthCount[month]++;
+            if (i >= tailStart) monthOf[i - tailStart] = month;
+            // avanza il calendario senza creare oggetti LocalDate
+            if (++dayOfMonth > monthLength) {
+                dayOfMonth = 1;
+                day = day.plusMonths(1).withDayOfMonth(1);
+                month = day.getMonthValue() - 1;
+                monthLength = day.lengthOfMonth();
+            }
+        }
+        double mean = total / n;
+        double[] seasonal = new double[12];
+        for (int m = 0; m < 12; m++) {
+            seasonal[m] = (monthCount[m] == 0) ? 0 : monthSum[m] / monthCount[m] - mean;
+        }
+
+        double level = 0;
+        for (int i = 0; i < monthOf.length; i++) {
+            level += values[tailStart + i] - seasonal[monthOf[i]];
+        }
+        level /= monthOf.length;
+
+        LocalDate d = firstDay;
+        for (int i = 0; i < horizon; i++) {
+            result[i] = Math.max(0, level + seasonal[d.getMonthValue() - 1]);
+            d = d.plusDays(1);
+        }
+        return result;
+    }
+
+    /**
+     * Risultato di una previsione: saldo previsto per ogni giorno a partire
+     * da {@link #getFirstDay()}.
+     */
+    public static final class Forecast {
+        private final LocalDate firstDay;
+        private final double[]  dailyBalance;
+
+        Forecast(LocalDate firstDay, double[] dailyBalance) {
+            this.firstDay = firstDay;
+            this.dailyBalance = dailyBalance;
+        }
+
+        /** @return il primo giorno previsto */
+        public LocalDate getFirstDay() {
+            return firstDay;
+        }
+
+        /** @return numero di giorni previsti */
+        public int size() {
+            return dailyBalance.length;
+        }
+
+        /**
+         * @param day indice del giorno (0 = primo giorno previsto)
+         * @return saldo previsto a fine giornata
+         */
+        public double balanceAt(int day) {
+            return dailyBalance[day];
+        }
+
+        /**
+         * Saldo previsto a fine mese per ogni mese coperto dalla previsione
+         * (l'ultimo mese può essere parziale).
+         *
+         * @return mappa ordinata mese -> saldo previsto
+         */
+        public Map<YearMonth, Double> monthlyBalance() {
+            Map<YearMonth, Double> result = new LinkedHashMap<>();
+            LocalDate d = firstDay;
+            for (double b : dailyBalance) {
+                result.put(YearMonth.from(d), b);
+                d = d.plusDays(1);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storia dei comandi eseguiti su un {@link BudgetManager}, con pile di
+ * annullamento e ripristino. Inserimento, annullamento e ripristino sono
+ * operazioni O(1) sulle pile; la memoria è limitata sia nel numero di
+ * comandi sia nel numero totale di transazioni conservate: oltre i limiti
+ * vengono dimenticati i comandi più vecchi.
+ * <p>
+ * Fornisce anche i comandi standard: aggiunta, rimozione, sostituzione,
+ * aggiunta e rimozione di una ricorrenza e caricamento in blocco (salvato
+ * come differenza rispetto al contenuto precedente, non come copia completa).
+ */
+public class CommandLog {
+
+    private BudgetManager model;
+    private final int maxCommands;
+    private final long maxWeight;
+
+    private final Deque<LedgerCommand> undoStack = new ArrayDeque<>();
+    private final Deque<LedgerCommand> redoStack = new ArrayDeque<>();
+    private long undoWeight;
+    private long redoWeight;
+
+    /**
+     * Costruisce una storia vuota per il model indicato.
+     *
+     * @param model       model su cui vengono eseguiti i comandi
+     * @param maxCommands numero massimo di comandi annullabili (almeno 1)
+     * @param maxWeight   numero massimo di transazioni conservate dalla storia
+     * @throws IllegalArgumentException se i limiti non sono positivi
+     */
+    public CommandLog(BudgetManager model, int maxCommands, long maxWeight) {
+        if (model == null) throw new IllegalArgumentException("Il model non può essere nullo");
+        if (maxCommands < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException("I limiti della storia devono essere positivi");
+        }
+        this.model = model;
+        this.maxCommands = maxCommands;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Esegue un comando e lo registra come annullabile. Svuota la pila dei
+     * comandi da ripetere.
+     *
+     * @param command comando da eseguire
+     */
+    public void execute(LedgerCommand command) {
+        command.apply(model);
+        redoStack.clear();
+        redoWeight = 0;
+        undoStack.push(command);
+        undoWeight += command.weight();
+        trim();
+    }
+
+    /**
+     * Collega la storia a un altro model con lo stesso contenuto, ad esempio
+     * quando un conto scaricato dal registro viene riletto dal suo file: i
+     * comandi individuano le transazioni per uguaglianza, quindi restano validi.
+     *
+     * @param model nuovo model del conto
+     */
+    public void rebind(BudgetManager model) {
+        if (model == null) throw new IllegalArgumentException("Il model non può essere nullo");
+        this.model = model;
+    }
+
+    /** @return {@code true} se esiste un comando da annullare */
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    /** @return {@code true} se esiste un comando da ripetere */
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /**
+     * Annulla l'ultimo comando eseguito.
+     *
+     * @return il comando annullato, oppure null se la storia è vuota
+     */
+    public LedgerCommand undo() {
+        LedgerCommand c = undoStack.poll();
+        if (c == null) return null;
+        undoWeight -= c.weight();
+        c.revert(model);
+        redoStack.push(c);
+        redoWeight += c.weight();
+        return c;
+    }
+
+    /**
+     * Ripete l'ultimo comando annullato.
+     *
+     * @return il comando ripetuto, oppure null se non c'è nulla da ripetere
+     */
+    public LedgerCommand redo() {
+        LedgerCommand c = redoStack.poll();
+        if (c == null) return null;
+        redoWeight -= c.weight();
+        c.apply(model);
+        undoStack.push(c);
+        undoWeight += c.weight();
+        return c;
+    }
+
+    /**
+     * Dimentica tutti i comandi, ad esempio dopo un'operazione che non si può
+     * annullare e che rende inapplicabili i comandi precedenti.
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        undoWeight = 0;
+        redoWeight = 0;
+    }
+
+    /** Dimentica i comandi più vecchi finché la storia rientra nei limiti. */
+    private void trim() {
+        while (undoStack.size() > 1
+                && (undoStack.size() > maxCommands || undoWeight > maxWeight)) {
+            undoWeight -= undoStack.removeLast().weight();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Comandi standard
+    // ------------------------------------------------------------------
+
+    /**
+     * @param t transazione da aggiungere
+     * @return comando che aggiunge {@code t}
+     */
+    public static LedgerCommand add(Transaction t) {
+        return new AddCommand(t);
+    }
+
+    /**
+     * @param list transazioni da aggiungere in blocco
+     * @return comando che aggiunge tutte le transazioni di {@code list}
+     */
+    public static LedgerCommand addAll(List<Transaction> list) {
+        return new AddAllCommand(list);
+    }
+
+    /**
+     * @param t transazione da rimuovere
+     * @return comando che rimuove {@code t}
+     */
+    public static LedgerCommand remove(Transaction t) {
+        return new RemoveCommand(t);
+    }
+
+    /**
+     * @param oldT transazione da sostituire
+     * @param newT nuova transazione
+     * @return comando che sostituisce {@code oldT} con {@code newT}
+     */
+    public static LedgerCommand replace(Transaction oldT, Transaction newT) {
+        return new ReplaceCommand(oldT, newT);
+    }
+
+    /**
+     * @param template ricorrenza da aggiungere
+     * @return comando che aggiunge la ricorrenza {@code template}
+     */
+    public static LedgerCommand addRecurring(RecurringTemplate template) {
+        return new RecurringCommand(template, true);
+    }
+
+    /**
+     * @param template ricorrenza da rimuovere
+     * @return comando che rimuove la ricorrenza {@code template}
+     */
+    public static LedgerCommand removeRecurring(RecurringTemplate template) {
+        return new RecurringCommand(template, false);
+    }
+
+    /**
+     * Crea il comando che rimpiazza l'intero contenuto del model con le
+     * transazioni caricate. Il comando conserva solo la differenza tra il
+     * contenuto attuale e quello caricato.
+     *
+     * @param current contenuto attuale del model
+     * @param loaded  transazioni che devono sostituirlo
+     * @return comando di caricamento in blocco
+     */
+    public static LedgerCommand bulkLoad(List<Transaction> current, List<Transaction> loaded) {
+        return new BulkLoadCommand(current, loaded);
+    }
+
+    private static final class AddCommand implements LedgerCommand {
+        private final Transaction t;
+
+        AddCommand(Transaction t) {
+            if (t == null) throw new IllegalArgumentException("La transazione non può essere nulla");
+            this.t = t;
+        }
+
+        @Override public void apply(BudgetManager model)  { model.addTransaction(t); }
+        @Override public void revert(BudgetManager model) { model.removeTransaction(t); }
+        @Override public int weight()                     { return 1; }
+        @Override public String getName()                 { return "Aggiungi"; }
+    }
+
+    private static final class AddAllCommand implements LedgerCommand {
+        private final List<Transaction> list;
+
+        AddAllCommand(List<Transaction> list) {
+            this.list = List.copyOf(list);
+        }
+
+        @Override public void apply(BudgetManager model)  { model.addAll(list); }
+        @Override public void revert(BudgetManager model) { model.removeAll(list); }
+        @Override public int weight()                     { return Math.max(1, list.size()); }
+        @Override public String getName()                 { return "Unione"; }
+    }
+
+    private static final class RemoveCommand implements LedgerCommand {
+        private final Transaction t;
+        private int index = -1; // posizione al momento della rimozione
+
+        RemoveCommand(Transaction t) {
+            if (t == null) throw new IllegalArgumentException("La transazione non può essere nulla");
+            this.t = t;
+        }
+
+        @Override
+        public void apply(BudgetManager model) {
+            index = model.indexOf(t);
+            model.removeTransaction(t);
+        }
+
+        @Override
+        public void revert(BudgetManager model) {
+            // la riga torna dov'era, non in coda (se non c'era, non c'è nulla da rimettere)
+            if (index >= 0) model.insertTransaction(index, t);
+        }
+
+        @Override public int weight()                     { return 1; }
+        @Override public String getName()                 { return "Elimina"; }
+    }
+
+    private static final class ReplaceCommand implements LedgerCommand {
+        private final Transaction oldT;
+        private final Transaction newT;
+
+        ReplaceCommand(Transaction oldT, Transaction newT) {
+            if (oldT == null || newT == null) {
+                throw new IllegalArgumentException("La transazione non può essere nulla");
+            }
+            this.oldT = oldT;
+            this.newT = newT;
+        }
+
+        @Override public void apply(BudgetManager model)  { model.replaceTransaction(oldT, newT); }
+        @Override public void revert(BudgetManager model) { model.replaceTransaction(newT, oldT); }
+        @Override public int weight()                     { return 2; }
+        @Override public String getName()                 { return "Modifica"; }
+    }
+
+    private static final class RecurringCommand implements LedgerCommand {
+        private final RecurringTemplate template;
+        private final boolean add;
+
+        RecurringCommand(RecurringTemplate template, boolean add) {
+            if (template == null) throw new IllegalArgumentException("Il modello ricorrente non può essere nullo");
+            this.template = template;
+            this.add = add;
+        }
+
+        @Override
+        public void apply(BudgetManager model) {
+            if (add) model.addRecurring(template); else model.removeRecurring(template);
+        }
+
+        @Override
+        public void revert(BudgetManager model) {
+            if (add) model.removeRecurring(template); else model.addRecurring(template);
+        }
+
+        @Override public int weight()     { return 1; }
+        @Override public String getName() { return add ? "Nuova ricorrenza" : "Elimina ricorrenza"; }
+    }
+
+    /**
+     * Caricamento in blocco memorizzato come delta: le transazioni presenti
+     * solo prima del caricamento ({@code removed}) e quelle presenti solo
+     * dopo ({@code added}), ciascuna con la sua posizione. Le transazioni
+     * comuni non vengono copiate; le posizioni permettono ad annullamento e
+     * ripristino di ricostruire esattamente l'ordine delle righe, anche
+     * quando ci sono righe uguali.
+     */
+    private static final class BulkLoadCommand implements LedgerCommand {
+        private List<Transaction> loaded; // solo fino alla prima applicazione
+        private final List<Transaction> removed = new ArrayList<>();
+        private final int[] removedAt; // posizioni di removed prima del caricamento
+        private final List<Transaction> added = new ArrayList<>();
+        private final int[] addedAt;   // posizioni di added dopo il caricamento
+
+        BulkLoadCommand(List<Transaction> current, List<Transaction> loaded) {
+            this.loaded = new ArrayList<>(loaded);
+            // righe comuni: una sottosequenza comune trovata in tempo lineare, scorrendo
+            // le righe caricate e abbinando ciascuna alla prima uguale (stessa categoria)
+            // che segue l'ultima abbinata
+            Map<Map.Entry<Transaction, String>, ArrayDeque<Integer>> positions = new HashMap<>();
+            for (int i = 0; i < current.size(); i++) {
+                positions.computeIfAbsent(key(current.get(i)), k -> new ArrayDeque<>()).add(i);
+            }
+            boolean[] kept = new boolean[current.size()];
+            List<Integer> addedPositions = new ArrayList<>();
+            int last = -1;
+            for (int j = 0; j < loaded.size(); j++) {
+                ArrayDeque<Integer> candidates = positions.get(key(loaded.get(j)));
+                while (candidates != null && !candidates.isEmpty() && candidates.peekFirst() < last) {
+                    candidates.pollFirst();
+                }
+                if (candidates != null && !candidates.isEmpty()) {
+                    last = candidates.pollFirst();
+                    kept[last] = true;
+                } else {
+                    added.add(loaded.get(j));
+                    addedPositions.add(j);
+                }
+            }
+            List<Integer> removedPositions = new ArrayList<>();
+            for (int i = 0; i < current.size(); i++) {
+                if (kept[i]) continue;
+                removed.add(current.get(i));
+                removedPositions.add(i);
+            }
+            this.removedAt = removedPositions.stream().mapToInt(Integer::intValue).toArray();
+            this.addedAt = addedPositions.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        @Override
+        public void apply(BudgetManager model) {
+            if (loaded != null) {
+                // prima esecuzione: rispetta esattamente l'ordine del file caricato,
+                // poi la copia completa viene rilasciata e resta solo il delta
+                model.checkNotArchived(loaded); // prima di svuotare, non a metà
+                model.clear();
+                model.addAll(loaded);
+                loaded = null;
+                return;
+            }
+            model.checkNotArchived(added);
+            model.removeAt(removedAt);
+            model.insertAll(addedAt, added);
+        }
+
+        @Override
+        public void revert(BudgetManager model) {
+            // le righe tolte tornano dov'erano, non in coda (come per RemoveCommand)
+            model.removeAt(addedAt);
+            model.insertAll(removedAt, removed);
+        }
+
+        @Override public int weight()     { return Math.max(1, removed.size() + added.size()); }
+        @Override public String getName() { return "Caricamento"; }
+
+        /** La categoria non partecipa a equals, ma un caricamento che cambia solo le categorie va annullato. */
+        private static Map.Entry<Transaction, String> key(Transaction t) {
+            return Map.entry(t, t.getCategory());
+        }
+    }
+}
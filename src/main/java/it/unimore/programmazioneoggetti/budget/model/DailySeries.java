@@ -0,0 +1,186 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+
+/**
+ * Serie giornaliera delle entrate e delle uscite: per ogni giorno compreso
+ * tra la prima e l'ultima transazione contiene il totale delle entrate e il
+ * totale delle uscite (entrambi positivi, nella valuta di riferimento). I
+ * valori sono memorizzati in array primitivi indicizzati per giorno, adatti
+ * a elaborazioni numeriche (previsioni, grafici) senza iterare sulle
+ * singole transazioni.
+ */
+public class DailySeries {
+
+    private final long     firstEpochDay;
+    private final double[] income;
+    private final double[] expense;
+
+    private DailySeries(long firstEpochDay, double[] income, double[] expense) {
+        this.firstEpochDay = firstEpochDay;
+        this.income  = income;
+        this.expense = expense;
+    }
+
+    /**
+     * Costruisce la serie giornaliera a partire da un insieme di transazioni,
+     * con gli importi convertiti nella valuta di riferimento al tasso del
+     * giorno di ciascuna riga.
+     *
+     * @param transactions transazioni da aggregare (anche non ordinate)
+     * @param rates        tassi di cambio verso la valuta di riferimento
+     * @return la serie giornaliera, vuota se non ci sono transazioni
+     * @throws IllegalStateException se manca il tasso di cambio di una riga
+     */
+    public static DailySeries of(Collection<? extends Transaction> transactions, ExchangeRates rates) {
+        if (transactions.isEmpty()) {
+            return new DailySeries(LocalDate.now().toEpochDay(), new double[0], new double[0]);
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Transaction t : transactions) {
+            long d = t.getDate().toEpochDay();
+            if (d < min) min = d;
+            if (d > max) max = d;
+        }
+        int days = Math.toIntExact(max - min + 1);
+        double[] income  = new double[days];
+        double[] expense = new double[days];
+        String reporting = rates.getReportingCurrency();
+        for (Transaction t : transactions) {
+            long d = t.getDate().toEpochDay();
+            BigDecimal amount = t.getAmount();
+            if (!reporting.equals(t.getCurrency())) {
+                amount = amount.multiply(rates.rate(t.getCurrency(), d));
+            }
+            int i = (int) (d - min);
+            if (t instanceof Income) {
+                income[i] += amount.doubleValue();
+            } else {
+                expense[i] += amount.doubleValue();
+            }
+        }
+        return new DailySeries(min, income, expense);
+    }
+
+    /** @return numero di giorni coperti dalla serie */
+    public int size() {
+        return income.length;
+    }
+
+    /** @return {@code true} se la serie non contiene giorni */
+    public boolean isEmpty() {
+        return income.length == 0;
+    }
+
+    /** @return data del primo giorno della serie */
+    public LocalDate getFirstDay() {
+        return LocalDate.ofEpochDay(firstEpochDay);
+    }
+
+    /** @return data dell'ultimo giorno della serie (il primo se la serie è vuota) */
+    public LocalDate getLastDay() {
+        return LocalDate.ofEpochDay(firstEpochDay + Math.max(0, income.length - 1));
+    }
+
+    /** @return giorno epoch del primo giorno della serie */
+    public long getFirstEpochDay() {
+        return firstEpochDay;
+    }
+
+    /**
+     * @param day indice del giorno (0 = primo giorno)
+     * @return totale delle entrate di quel giorno
+     */
+    public double incomeAt(int day) {
+        return income[day];
+    }
+
+    /**
+     * @param day indice del giorno (0 = primo giorno)
+     * @return totale delle uscite di quel giorno (valore positivo)
+     */
+    public double expenseAt(int day) {
+        return expense[day];
+    }
+
+    /**
+     * @param day indice del giorno (0 = primo giorno)
+     * @return saldo netto del giorno (entrate meno uscite)
+     */
+    public double netAt(int day) {
+        return income[day] - expense[day];
+    }
+
+    /**
+     * Saldo progressivo a fine di ogni giorno.
+     *
+     * @param opening saldo iniziale, prima del primo giorno della serie
+     * @return array con il saldo cumulato per ogni giorno
+     */
+    public double[] cumulativeBalance(double opening) {
+        double[] result = new double[income.length];
+        double balance = opening;
+        for (int i = 0; i < result.length; i++) {
+            balance += income[i] - expense[i];
+            result[i] = balance;
+        }
+        return result;
+    }
+
+    /** @return mese del primo giorno della serie */
+    public YearMonth getFirstMonth() {
+        return YearMonth.from(getFirstDay());
+    }
+
+    /**
+     * Totali mensili delle entrate, dal mese del primo giorno a quello
+     * dell'ultimo (compresi i mesi senza movimenti).
+     *
+     * @return array indicizzato per mese (0 = {@link #getFirstMonth()})
+     */
+    public double[] monthlyIncome() {
+        return monthly(income);
+    }
+
+    /**
+     * Totali mensili delle uscite (valori positivi), con gli stessi indici
+     * di {@link #monthlyIncome()}.
+     *
+     * @return array indicizzato per mese (0 = {@link #getFirstMonth()})
+     */
+    public double[] monthlyExpense() {
+        return monthly(expense);
+    }
+
+    private double[] monthly(double[] daily) {
+        if (daily.length == 0) return new double[0];
+        YearMonth first = getFirstMonth();
+        double[] result = new double[(int) first.until(YearMonth.from(getLastDay()), ChronoUnit.MONTHS) + 1];
+        int i = 0;
+        for (int m = 0; m < result.length; m++) {
+            // ultimo giorno del mese come indice nella serie giornaliera
+            long end = Math.min(first.plusMonths(m).atEndOfMonth().toEpochDay() - firstEpochDay, daily.length - 1);
+            double sum = 0;
+            for (; i <= end; i++) {
+                sum += daily[i];
+            }
+            result[m] = sum;
+        }
+        return result;
+    }
+
+    /** @return copia della serie delle entrate */
+    public double[] incomeValues() {
+        return income.clone();
+    }
+
+    /** @return copia della serie delle uscite */
+    public double[] expenseValues() {
+        return expense.clone();
+    }
+}
@@ -0,0 +1,124 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Indice delle transazioni esistenti usato per riconoscere i duplicati
+ * durante l'unione di file importati. L'identità è quella di
+ * {@link Transaction#equals(Object)} (data, descrizione, importo).
+ * <p>
+ * Un filtro di Bloom fa da primo controllo: se risponde “assente” la riga è
+ * certamente nuova e la tabella hash non viene consultata; solo le risposte
+ * positive (duplicati veri o rari falsi positivi) passano al controllo esatto.
+ */
+public class DuplicateIndex {
+
+    /** Bit del filtro per ogni elemento: circa 1% di falsi positivi con 7 funzioni hash. */
+    private static final int BITS_PER_ELEMENT = 10;
+    private static final int HASH_FUNCTIONS   = 7;
+
+    private final long[] bloom;
+    private final long   bloomBits;
+    private final Set<Transaction> exact;
+
+    /**
+     * Costruisce l'indice sulle transazioni esistenti.
+     *
+     * @param existing transazioni già presenti nel bilancio
+     */
+    public DuplicateIndex(Collection<? extends Transaction> existing) {
+        long bits = Math.max(64, (long) existing.size() * BITS_PER_ELEMENT);
+        this.bloom = new long[Math.toIntExact((bits + 63) >>> 6)];
+        this.bloomBits = (long) bloom.length << 6;
+        this.exact = new HashSet<>(Math.max(16, (int) (existing.size() / 0.75f) + 1));
+        for (Transaction t : existing) {
+            exact.add(t);
+            int h1 = mix(t.hashCode());
+            int h2 = mix(h1 ^ 0x9E3779B9);
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bloomBits);
+                bloom[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+
+    /** Rimescola i bit dell'hash (finalizzatore di MurmurHash3). */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Controllo rapido: {@code false} significa che la transazione
+     * sicuramente non è presente.
+     */
+    private boolean mightContain(Transaction t) {
+        int h1 = mix(t.hashCode());
+        int h2 = mix(h1 ^ 0x9E3779B9);
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bloomBits);
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Verifica se una transazione è già presente tra quelle indicizzate.
+     *
+     * @param t transazione da cercare
+     * @return {@code true} se esiste una transazione uguale
+     */
+    public boolean contains(Transaction t) {
+        return mightContain(t) && exact.contains(t);
+    }
+
+    /**
+     * Separa le righe importate in nuove e duplicate rispetto alle esistenti.
+     *
+     * @param incoming transazioni da unire
+     * @return risultato con le due liste, nell'ordine di ingresso
+     */
+    public MergeResult partition(List<? extends Transaction> incoming) {
+        List<Transaction> fresh = new ArrayList<>();
+        List<Transaction> duplicates = new ArrayList<>();
+        for (Transaction t : incoming) {
+            if (contains(t)) {
+                duplicates.add(t);
+            } else {
+                fresh.add(t);
+            }
+        }
+        return new MergeResult(fresh, duplicates);
+    }
+
+    /**
+     * Esito di {@link #partition(List)}: righe nuove e righe già presenti.
+     */
+    public static final class MergeResult {
+        private final List<Transaction> fresh;
+        private final List<Transaction> duplicates;
+
+        MergeResult(List<Transaction> fresh, List<Transaction> duplicates) {
+            this.fresh = List.copyOf(fresh);
+            this.duplicates = List.copyOf(duplicates);
+        }
+
+        /** @return le righe non presenti nel bilancio */
+        public List<Transaction> getFresh() {
+            return fresh;
+        }
+
+        /** @return le righe già presenti nel bilancio */
+        public List<Transaction> getDuplicates() {
+            return duplicates;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tabella dei tassi di cambio verso una valuta di riferimento, per data.
+ * Il tasso di una valuta in un giorno è l'ultimo registrato in quel giorno
+ * o prima (es. il tasso del venerdì vale anche per il fine settimana). I
+ * tassi sono BigDecimal esatti: 1 unità della valuta = {@code tasso} unità
+ * della valuta di riferimento.
+ * <p>
+ * Le ricerche già fatte vengono memorizzate per (valuta, giorno), così le
+ * aggregazioni su molte righe non ripetono la ricerca nell'albero delle
+ * date. La tabella si costruisce una volta e poi è solo letta: le ricerche
+ * sono sicure anche da più thread.
+ */
+public class ExchangeRates {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private final String reportingCurrency;
+
+    // valuta -> (giorno epoch -> tasso), in sola lettura dopo la costruzione
+    private final Map<String, TreeMap<Long, BigDecimal>> rates = new HashMap<>();
+
+    // cache delle ricerche: valuta -> (giorno epoch -> tasso in vigore)
+    private final Map<String, Map<Long, BigDecimal>> memo = new ConcurrentHashMap<>();
+
+    /**
+     * Crea una tabella vuota.
+     *
+     * @param reportingCurrency codice della valuta di riferimento (es. "EUR")
+     * @throws IllegalArgumentException se il codice non è valido
+     */
+    public ExchangeRates(String reportingCurrency) {
+        this.reportingCurrency = Transaction.normalizeCurrency(reportingCurrency);
+    }
+
+    /** @return codice della valuta di riferimento */
+    public String getReportingCurrency() {
+        return reportingCurrency;
+    }
+
+    /**
+     * Registra il tasso di una valuta a partire da una data. Va usato solo
+     * durante la costruzione della tabella.
+     *
+     * @param currency codice della valuta
+     * @param from     data da cui vale il tasso
+     * @param rate     unità della valuta di riferimento per un'unità di {@code currency} (positivo)
+     * @throws IllegalArgumentException se un parametro non è valido
+     */
+    public void put(String currency, LocalDate from, BigDecimal rate) {
+        if (from == null) throw new IllegalArgumentException("La data non può essere nulla");
+        if (rate == null || rate.signum() <= 0) throw new IllegalArgumentException("Il tasso deve essere positivo");
+        rates.computeIfAbsent(Transaction.normalizeCurrency(currency), k -> new TreeMap<>())
+                .put(from.toEpochDay(), rate);
+        memo.clear();
+    }
+
+    /** @return le valute con almeno un tasso registrato */
+    public Set<String> getCurrencies() {
+        return rates.keySet();
+    }
+
+    /**
+     * Tasso di una valuta in una data.
+     *
+     * @param currency codice della valuta
+     * @param date     data di riferimento
+     * @return tasso in vigore (1 per la valuta di riferimento)
+     * @throws IllegalStateException se non esiste un tasso per la valuta in quella data o prima
+     */
+    public BigDecimal rate(String currency, LocalDate date) {
+        return rate(currency, date.toEpochDay());
+    }
+
+    BigDecimal rate(String currency, long epochDay) {
+        if (currency.equals(reportingCurrency)) return BigDecimal.ONE;
+        Map<Long, BigDecimal> cache = memo.computeIfAbsent(currency, k -> new ConcurrentHashMap<>());
+        BigDecimal cached = cache.get(epochDay);
+        if (cached != null) return cached;
+        TreeMap<Long, BigDecimal> byDay = rates.get(currency);
+        Map.Entry<Long, BigDecimal> e = (byDay == null) ? null : byDay.floorEntry(epochDay);
+        if (e == null) {
+            throw new IllegalStateException("Nessun tasso di cambio per " + currency + " al "
+                    + LocalDate.ofEpochDay(epochDay).format(DATE_FORMATTER));
+        }
+        cache.put(epochDay, e.getValue());
+        return e.getValue();
+    }
+
+    /**
+     * Converte un importo nella valuta di riferimento, senza arrotondamenti.
+     *
+     * @param amount   importo in {@code currency}
+     * @param currency valuta dell'importo
+     * @param date     data della conversione
+     * @return importo nella valuta di riferimento
+     * @throws IllegalStateException se manca il tasso
+     */
+    public BigDecimal convert(BigDecimal amount, String currency, LocalDate date) {
+        return amount.multiply(rate(currency, date));
+    }
+}
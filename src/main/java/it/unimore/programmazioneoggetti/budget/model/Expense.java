@@ -21,6 +21,31 @@ public class Expense extends Transaction {
         super(date, description, amount);
     }
 
+    /**
+     * Costruisce una nuova spesa con categoria.
+     *
+     * @param date        data della spesa
+     * @param description descrizione della spesa
+     * @param amount      importo (valore positivo, verrà reso negativo in {@code signedAmount()})
+     * @param category    categoria (null o vuota = nessuna categoria)
+     */
+    public Expense(LocalDate date, String description, BigDecimal amount, String category) {
+        super(date, description, amount, category);
+    }
+
+    /**
+     * Costruisce una nuova spesa con categoria e valuta.
+     *
+     * @param date        data della spesa
+     * @param description descrizione della spesa
+     * @param amount      importo (valore positivo, verrà reso negativo in {@code signedAmount()})
+     * @param category    categoria (null o vuota = nessuna categoria)
+     * @param currency    codice valuta (null o vuoto = {@link Transaction#DEFAULT_CURRENCY})
+     */
+    public Expense(LocalDate date, String description, BigDecimal amount, String category, String currency) {
+        super(date, description, amount, category, currency);
+    }
+
     /**
      * Ritorna l’importo negativo per indicare una spesa (uscita).
      *
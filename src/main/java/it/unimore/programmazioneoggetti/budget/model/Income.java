@@ -21,6 +21,31 @@ public class Income extends Transaction {
         super(date, description, amount);
     }
 
+    /**
+     * Costruisce una nuova entrata con categoria.
+     *
+     * @param date        data dell’entrata
+     * @param description descrizione dell’entrata
+     * @param amount      importo (valore positivo)
+     * @param category    categoria (null o vuota = nessuna categoria)
+     */
+    public Income(LocalDate date, String description, BigDecimal amount, String category) {
+        super(date, description, amount, category);
+    }
+
+    /**
+     * Costruisce una nuova entrata con categoria e valuta.
+     *
+     * @param date        data dell’entrata
+     * @param description descrizione dell’entrata
+     * @param amount      importo (valore positivo)
+     * @param category    categoria (null o vuota = nessuna categoria)
+     * @param currency    codice valuta (null o vuoto = {@link Transaction#DEFAULT_CURRENCY})
+     */
+    public Income(LocalDate date, String description, BigDecimal amount, String category, String currency) {
+        super(date, description, amount, category, currency);
+    }
+
     /**
      * Ritorna l’importo positivo per indicare un’entrata.
      *
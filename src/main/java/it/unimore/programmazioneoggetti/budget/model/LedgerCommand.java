@@ -0,0 +1,34 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+/**
+ * Operazione reversibile su un {@link BudgetManager}. I comandi vengono
+ * eseguiti tramite {@link CommandLog}, che ne conserva la storia per
+ * annullarli e ripeterli.
+ */
+public interface LedgerCommand {
+
+    /**
+     * Applica (o riapplica, dopo un annullamento) il comando al model.
+     *
+     * @param model model su cui operare
+     */
+    void apply(BudgetManager model);
+
+    /**
+     * Annulla gli effetti di {@link #apply(BudgetManager)}.
+     *
+     * @param model model su cui operare
+     */
+    void revert(BudgetManager model);
+
+    /**
+     * Numero di transazioni memorizzate dal comando: serve al
+     * {@link CommandLog} per limitare la memoria occupata dalla storia.
+     *
+     * @return peso del comando (almeno 1)
+     */
+    int weight();
+
+    /** @return breve descrizione del comando, es. “Aggiungi” */
+    String getName();
+}
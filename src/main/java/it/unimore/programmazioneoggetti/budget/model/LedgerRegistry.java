@@ -0,0 +1,493 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import it.unimore.programmazioneoggetti.budget.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Registro dei conti (ledger) gestiti dall'applicazione. Ogni conto ha il
+ * proprio {@link BudgetManager}, caricato dal file associato solo al primo
+ * accesso. Al massimo {@code maxResident} conti restano in memoria: quelli
+ * inutilizzati da più tempo vengono scaricati, ma solo se non hanno
+ * modifiche non salvate. Un conto modificato resta in memoria (anche oltre
+ * il limite) finché l'utente non lo salva: il registro non scrive mai sui
+ * file senza una richiesta esplicita ({@link #flush()}).
+ * <p>
+ * Il file di un conto contiene solo le righe: le ricorrenze, l'archivio
+ * degli anni chiusi e i limiti di spesa di un conto scaricato restano nel
+ * registro e vengono riapplicati quando il conto viene riletto;
+ * l'applicazione li salva nella sessione.
+ * <p>
+ * Come il resto del model, il registro va usato dal thread dell'interfaccia
+ * grafica; solo le query aggregate vengono eseguite in parallelo.
+ * <p>
+ * Tutti i conti condividono la stessa tabella di {@link ExchangeRates}, così
+ * i saldi dei diversi conti sono espressi nella stessa valuta e si possono sommare.
+ */
+public class LedgerRegistry {
+
+    private final int maxResident;
+
+    // conto -> file di origine (null = conto solo in memoria, mai scaricato)
+    private final Map<String, File> sources = new LinkedHashMap<>();
+
+    // conti caricati, in ordine di accesso (il primo è il meno usato di recente)
+    private final LinkedHashMap<String, Resident> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    // ricorrenze dei conti associati a un file che sono stati scaricati
+    private final Map<String, List<RecurringTemplate>> detachedTemplates = new HashMap<>();
+    // archivi dei conti associati a un file che sono stati scaricati
+    private final Map<String, ArchiveStore> detachedArchives = new HashMap<>();
+    // limiti di spesa dei conti associati a un file che sono stati scaricati
+    private final Map<String, Map<String, BigDecimal>> detachedLimits = new HashMap<>();
+
+    // tassi di cambio comuni a tutti i conti
+    private ExchangeRates rates = new ExchangeRates(Transaction.DEFAULT_CURRENCY);
+
+    /** Conto caricato in memoria con la versione salvata sul file. */
+    private static final class Resident {
+        final BudgetManager manager;
+        long savedVersion;
+
+        Resident(BudgetManager manager) {
+            this(manager, true);
+        }
+
+        /** @param saved {@code false} se il contenuto non coincide con il file */
+        Resident(BudgetManager manager, boolean saved) {
+            this.manager = manager;
+            this.savedVersion = saved ? manager.getModCount() : -1;
+        }
+
+        boolean isModified() {
+            return manager.getModCount() != savedVersion;
+        }
+    }
+
+    /**
+     * Costruisce un registro vuoto.
+     *
+     * @param maxResident numero massimo di conti tenuti in memoria (almeno 1)
+     * @throws IllegalArgumentException se {@code maxResident} è minore di 1
+     */
+    public LedgerRegistry(int maxResident) {
+        if (maxResident < 1) {
+            throw new IllegalArgumentException("Deve restare in memoria almeno un conto");
+        }
+        this.maxResident = maxResident;
+    }
+
+    /**
+     * Registra un conto associato a un file CSV o TXT. Il file viene letto
+     * solo al primo {@link #get(String)}.
+     *
+     * @param account nome del conto (non vuoto, non già registrato)
+     * @param file    file di origine delle transazioni
+     * @throws IllegalArgumentException se il nome è vuoto o già in uso
+     */
+    public void register(String account, File file) {
+        checkNewAccount(account);
+        if (file == null) throw new IllegalArgumentException("Il file non può essere nullo");
+        sources.put(account, file);
+    }
+
+    /**
+     * Registra un conto senza file di origine. Resta sempre in memoria.
+     *
+     * @param account nome del conto (non vuoto, non già registrato)
+     * @param manager transazioni del conto
+     * @throws IllegalArgumentException se il nome è vuoto o già in uso
+     */
+    public void registerInMemory(String account, BudgetManager manager) {
+        checkNewAccount(account);
+        if (manager == null) throw new IllegalArgumentException("Il BudgetManager non può essere nullo");
+        sources.put(account, null);
+        manager.setExchangeRates(rates);
+        resident.put(account, new Resident(manager));
+    }
+
+    private void checkNewAccount(String account) {
+        if (account == null || account.isBlank()) {
+            throw new IllegalArgumentException("Il nome del conto non può essere vuoto");
+        }
+        if (sources.containsKey(account)) {
+            throw new IllegalArgumentException("Conto già registrato: " + account);
+        }
+    }
+
+    /** @return i nomi dei conti registrati, in ordine di registrazione */
+    public List<String> getAccountNames() {
+        return List.copyOf(sources.keySet());
+    }
+
+    /**
+     * @param account nome del conto
+     * @return il file di origine del conto, oppure null se è solo in memoria
+     * @throws IllegalArgumentException se il conto non è registrato
+     */
+    public File getSource(String account) {
+        if (!sources.containsKey(account)) {
+            throw new IllegalArgumentException("Conto sconosciuto: " + account);
+        }
+        return sources.get(account);
+    }
+
+    /** @return {@code true} se il conto è attualmente caricato in memoria */
+    public boolean isResident(String account) {
+        return resident.containsKey(account);
+    }
+
+    /**
+     * Restituisce il {@link BudgetManager} di un conto, caricandolo dal file
+     * se non è già in memoria. Può causare lo scaricamento di un altro conto.
+     *
+     * @param account nome del conto
+     * @return il model del conto
+     * @throws IllegalArgumentException se il conto non è registrato
+     * @throws IOException              se il caricamento fallisce
+     */
+    public BudgetManager get(String account) throws IOException {
+        if (!sources.containsKey(account)) {
+            throw new IllegalArgumentException("Conto sconosciuto: " + account);
+        }
+        Resident r = resident.get(account);
+        if (r == null) {
+            BudgetManager manager = new BudgetManager();
+            manager.setExchangeRates(rates);
+            File file = sources.get(account);
+            for (Transaction t : load(file)) {
+                manager.addTransaction(t);
+            }
+            for (RecurringTemplate template : detachedTemplates.getOrDefault(account, List.of())) {
+                manager.addRecurring(template);
+            }
+            detachedTemplates.remove(account);
+            Map<String, BigDecimal> limits = detachedLimits.remove(account);
+            if (limits != null) manager.setSpendingLimits(limits);
+            // l'archivio dopo le righe: se il file contiene ancora righe di anni archiviati
+            // (chiusura dell'anno non salvata) vengono tolte e il conto resta da salvare per intero
+            ArchiveStore archive = detachedArchives.remove(account);
+            boolean matchesFile = archive == null || manager.setArchive(archive) == 0;
+            if (matchesFile) manager.markSaved(file);
+            r = new Resident(manager, matchesFile);
+            resident.put(account, r);
+            evictIdle(account);
+        }
+        return r.manager;
+    }
+
+    /**
+     * Imposta la tabella dei tassi di cambio per tutti i conti, compresi
+     * quelli caricati in seguito.
+     *
+     * @param rates tabella dei tassi (non null)
+     * @throws IllegalArgumentException se {@code rates} è null
+     */
+    public void setExchangeRates(ExchangeRates rates) {
+        if (rates == null) {
+            throw new IllegalArgumentException("La tabella dei tassi non può essere nulla");
+        }
+        this.rates = rates;
+        for (Resident r : resident.values()) {
+            // il cambio dei tassi non è una modifica da salvare sul file
+            boolean saved = r.savedVersion == r.manager.getModCount();
+            r.manager.setExchangeRates(rates);
+            if (saved) r.savedVersion = r.manager.getModCount();
+        }
+    }
+
+    /** @return la tabella dei tassi di cambio comune ai conti */
+    public ExchangeRates getExchangeRates() {
+        return rates;
+    }
+
+    /**
+     * Restituisce le ricorrenze di un conto senza caricarlo.
+     *
+     * @param account nome del conto
+     * @return ricorrenze del conto (sola lettura)
+     * @throws IllegalArgumentException se il conto non è registrato
+     */
+    public List<RecurringTemplate> getRecurringTemplates(String account) {
+        getSource(account);
+        Resident r = resident.get(account);
+        if (r != null) return r.manager.getRecurringTemplates();
+        return List.copyOf(detachedTemplates.getOrDefault(account, List.of()));
+    }
+
+    /**
+     * Reimposta le ricorrenze di un conto associato a un file, ad esempio
+     * ripristinando la sessione precedente. Se il conto è in memoria le sue
+     * ricorrenze vengono sostituite senza segnarlo come modificato.
+     *
+     * @param account   nome del conto
+     * @param templates ricorrenze del conto
+     * @throws IllegalArgumentException se il conto non è registrato o non ha un file
+     */
+    public void restoreRecurringTemplates(String account, List<RecurringTemplate> templates) {
+        if (getSource(account) == null) {
+            throw new IllegalArgumentException("Il conto non è associato a un file: " + account);
+        }
+        Resident r = resident.get(account);
+        if (r == null) {
+            if (templates.isEmpty()) detachedTemplates.remove(account);
+            else detachedTemplates.put(account, List.copyOf(templates));
+            return;
+        }
+        boolean saved = !r.isModified();
+        for (RecurringTemplate old : r.manager.getRecurringTemplates()) {
+            r.manager.removeRecurring(old);
+        }
+        for (RecurringTemplate template : templates) {
+            r.manager.addRecurring(template);
+        }
+        if (saved) r.savedVersion = r.manager.getModCount();
+    }
+
+    /**
+     * Restituisce l'archivio degli anni chiusi di un conto senza caricarlo.
+     *
+     * @param account nome del conto
+     * @return archivio collegato al conto, oppure null
+     * @throws IllegalArgumentException se il conto non è registrato
+     */
+    public ArchiveStore getArchive(String account) {
+        getSource(account);
+        Resident r = resident.get(account);
+        return (r != null) ? r.manager.getArchive() : detachedArchives.get(account);
+    }
+
+    /**
+     * Reimposta l'archivio di un conto associato a un file, ad esempio
+     * ripristinando la sessione precedente, senza segnarlo come modificato.
+     * Se il conto è in memoria e contiene righe di anni archiviati, queste
+     * vengono rimosse (vedi {@link BudgetManager#setArchive(ArchiveStore)}) e
+     * il conto risulta modificato.
+     *
+     * @param account nome del conto
+     * @param archive archivio del conto, oppure null
+     * @throws IllegalArgumentException se il conto non è registrato o non ha un file
+     */
+    public void restoreArchive(String account, ArchiveStore archive) {
+        if (getSource(account) == null) {
+            throw new IllegalArgumentException("Il conto non è associato a un file: " + account);
+        }
+        Resident r = resident.get(account);
+        if (r == null) {
+            if (archive == null) detachedArchives.remove(account);
+            else detachedArchives.put(account, archive);
+            return;
+        }
+        boolean saved = !r.isModified();
+        if (r.manager.setArchive(archive) == 0 && saved) r.savedVersion = r.manager.getModCount();
+    }
+
+    /**
+     * Restituisce i limiti di spesa di un conto senza caricarlo.
+     *
+     * @param account nome del conto
+     * @return categoria -> limite, con chiave null per il limite complessivo (sola lettura)
+     * @throws IllegalArgumentException se il conto non è registrato
+     */
+    public Map<String, BigDecimal> getSpendingLimits(String account) {
+        getSource(account);
+        Resident r = resident.get(account);
+        if (r != null) return r.manager.getSpendingLimits().getLimits();
+        return Collections.unmodifiableMap(detachedLimits.getOrDefault(account, Map.of()));
+    }
+
+    /**
+     * Reimposta i limiti di spesa di un conto associato a un file, ad esempio
+     * ripristinando la sessione precedente. I limiti non sono salvati sul
+     * file, quindi il conto non risulta modificato.
+     *
+     * @param account nome del conto
+     * @param limits  categoria -> limite, con chiave null per il limite complessivo
+     * @throws IllegalArgumentException se il conto non è registrato o non ha un
+     *                                  file, o se un limite è negativo
+     */
+    public void restoreSpendingLimits(String account, Map<String, BigDecimal> limits) {
+        if (getSource(account) == null) {
+            throw new IllegalArgumentException("Il conto non è associato a un file: " + account);
+        }
+        Resident r = resident.get(account);
+        if (r != null) {
+            r.manager.setSpendingLimits(limits);
+        } else if (limits.isEmpty()) {
+            detachedLimits.remove(account);
+        } else {
+            detachedLimits.put(account, new LinkedHashMap<>(limits));
+        }
+    }
+
+    /**
+     * Scarica i conti meno usati finché si rientra nel limite, senza toccare
+     * quello appena richiesto, i conti solo in memoria e quelli con modifiche
+     * non salvate.
+     */
+    private void evictIdle(String keep) {
+        int excess = resident.size() - maxResident;
+        Iterator<Map.Entry<String, Resident>> it = resident.entrySet().iterator();
+        while (excess > 0 && it.hasNext()) {
+            Map.Entry<String, Resident> e = it.next();
+            File file = sources.get(e.getKey());
+            if (e.getKey().equals(keep) || file == null || e.getValue().isModified()) continue;
+            List<RecurringTemplate> templates = e.getValue().manager.getRecurringTemplates();
+            if (!templates.isEmpty()) detachedTemplates.put(e.getKey(), templates);
+            ArchiveStore archive = e.getValue().manager.getArchive();
+            if (archive != null) detachedArchives.put(e.getKey(), archive);
+            Map<String, BigDecimal> limits = e.getValue().manager.getSpendingLimits().getLimits();
+            if (!limits.isEmpty()) detachedLimits.put(e.getKey(), new LinkedHashMap<>(limits));
+            it.remove();
+            excess--;
+        }
+    }
+
+    /**
+     * @return i conti associati a un file che hanno modifiche non salvate,
+     *         in ordine di registrazione
+     */
+    public List<String> getModifiedAccounts() {
+        List<String> modified = new ArrayList<>();
+        for (String name : sources.keySet()) {
+            Resident r = resident.get(name);
+            if (sources.get(name) != null && r != null && r.isModified()) modified.add(name);
+        }
+        return modified;
+    }
+
+    /**
+     * Segna il contenuto attuale di un conto come salvato sul suo file, dopo
+     * un salvataggio fatto fuori dal registro.
+     *
+     * @param account nome del conto
+     * @throws IllegalArgumentException se il conto non è registrato
+     */
+    public void markSaved(String account) {
+        getSource(account);
+        Resident r = resident.get(account);
+        if (r != null) r.savedVersion = r.manager.getModCount();
+    }
+
+    /**
+     * Salva su file tutti i conti caricati che hanno modifiche non salvate.
+     *
+     * @throws IOException se un salvataggio fallisce
+     */
+    public void flush() throws IOException {
+        for (Map.Entry<String, Resident> e : resident.entrySet()) {
+            File file = sources.get(e.getKey());
+            if (file != null) saveIfModified(e.getValue(), file);
+        }
+    }
+
+    /**
+     * Compatta i file di tutti i conti che hanno accanto un file delle
+     * differenze (vedi {@link FileUtil#compact(File)}), compresi quelli non
+     * caricati. Le modifiche non salvate dei conti in memoria non vengono scritte.
+     *
+     * @throws IOException se la riscrittura di un file fallisce
+     */
+    public void compact() throws IOException {
+        for (Map.Entry<String, File> e : sources.entrySet()) {
+            if (e.getValue() == null || !FileUtil.compact(e.getValue())) continue;
+            Resident r = resident.get(e.getKey());
+            // il file riscritto ha lo stesso contenuto: il giornale riparte da qui
+            if (r != null && !r.isModified()) r.manager.markSaved(e.getValue());
+        }
+    }
+
+    private static void saveIfModified(Resident r, File file) throws IOException {
+        if (!r.isModified()) return;
+        // dopo poche modifiche si scrivono solo le differenze (vedi FileUtil.saveChanges)
+        FileUtil.saveChanges(r.manager, file);
+        r.savedVersion = r.manager.getModCount();
+    }
+
+    private static List<Transaction> load(File file) throws IOException {
+        return isText(file) ? FileUtil.loadFromText(file) : FileUtil.loadFromCSV(file);
+    }
+
+    private static boolean isText(File file) {
+        return file.getName().toLowerCase().endsWith(".txt");
+    }
+
+    /**
+     * Calcola il saldo di ogni conto registrato. I conti in memoria usano il
+     * proprio model, gli altri vengono letti dal file senza essere caricati
+     * nel registro e contano, come i primi, le occorrenze ricorrenti fino a
+     * oggi e gli anni archiviati; i calcoli dei singoli conti avvengono in parallelo.
+     * I saldi sono nella valuta di riferimento dei tassi di cambio.
+     *
+     * @return mappa conto -> saldo, in ordine di registrazione
+     * @throws IOException           se la lettura di un file fallisce
+     * @throws IllegalStateException se manca il tasso di cambio di una riga
+     */
+    public Map<String, BigDecimal> balanceByAccount() throws IOException {
+        List<String> names = new ArrayList<>(sources.keySet());
+        List<BudgetManager> managers = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        List<List<RecurringTemplate>> templates = new ArrayList<>();
+        List<ArchiveStore> archives = new ArrayList<>();
+        ExchangeRates table = rates;
+        for (String name : names) {
+            Resident r = resident.get(name);
+            managers.add(r == null ? null : r.manager);
+            files.add(sources.get(name));
+            templates.add(detachedTemplates.getOrDefault(name, List.of()));
+            archives.add(detachedArchives.get(name));
+        }
+        BigDecimal[] balances = new BigDecimal[names.size()];
+        try {
+            IntStream.range(0, names.size()).parallel().forEach(i -> {
+                BudgetManager m = managers.get(i);
+                if (m == null) {
+                    // conto scaricato: un model temporaneo con le righe del file, le ricorrenze
+                    // e l'archivio staccati, così il saldo segue le stesse regole dei conti in memoria
+                    m = new BudgetManager();
+                    m.setExchangeRates(table);
+                    try {
+                        m.addAll(load(files.get(i)));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    for (RecurringTemplate template : templates.get(i)) {
+                        m.addRecurring(template);
+                    }
+                    if (archives.get(i) != null) m.setArchive(archives.get(i));
+                }
+                balances[i] = m.calculateTotalBalance();
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        Map<String, BigDecimal> result = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            result.put(names.get(i), balances[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Calcola il saldo complessivo di tutti i conti registrati.
+     *
+     * @return somma dei saldi di tutti i conti
+     * @throws IOException           se la lettura di un file fallisce
+     * @throws IllegalStateException se manca il tasso di cambio di una riga
+     */
+    public BigDecimal calculateTotalBalance() throws IOException {
+        return balanceByAccount().values().stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
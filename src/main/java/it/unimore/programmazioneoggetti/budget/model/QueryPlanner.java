@@ -0,0 +1,433 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import it.unimore.programmazioneoggetti.budget.util.Metrics;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Esecutore delle {@link TransactionQuery} sulla lista di un
+ * {@link BudgetManager}. Mantiene tre indici, aggiornati pigramente alla
+ * prima query dopo una modifica della lista:
+ * <ul>
+ *   <li>indice per data: posizioni ordinate per giorno, per individuare un
+ *       intervallo con due ricerche binarie;</li>
+ *   <li>indice testuale a trigrammi: per ogni sequenza di tre caratteri
+ *       delle descrizioni (in minuscolo) l'elenco delle righe che la
+ *       contengono; una ricerca di almeno tre caratteri parte dal trigramma
+ *       più raro;</li>
+ *   <li>bitmap sulle posizioni delle righe: una per categoria, una per le
+ *       entrate e una per ogni mese. Un filtro per categoria si combina
+ *       con tipo e intervallo di date con operazioni AND/OR sui bit, senza
+ *       esaminare le righe.</li>
+ * </ul>
+ * Ogni indice viene costruito solo quando una query lo può usare. Se dopo
+ * la costruzione la lista è solo cresciuta in coda (il caso comune: nuove
+ * righe, importazioni, inseguimento di un CSV) l'indice viene esteso con le
+ * sole righe nuove; rimozioni, sostituzioni e inserimenti in mezzo spostano
+ * le posizioni e obbligano a ricostruirlo ({@link #rewritten()}).
+ * Il pianificatore stima il numero di candidati di ciascun percorso e usa
+ * il più piccolo (o la scansione completa), verificando poi ogni candidato
+ * con il predicato completo. Con ordinamento e limite i primi k risultati
+ * si ottengono con un heap di dimensione k, senza ordinare tutto.
+ */
+class QueryPlanner {
+
+    /** Percorsi di accesso possibili: le query servite da ciascuno sono contate in {@link Metrics}. */
+    enum AccessPath {
+        DATE_INDEX("query.path.dateIndex"),
+        TEXT_INDEX("query.path.textIndex"),
+        CATEGORY_BITMAP("query.path.categoryBitmap"),
+        FULL_SCAN("query.path.fullScan");
+
+        private final Metrics.Counter executions;
+
+        AccessPath(String metric) {
+            this.executions = Metrics.counter(metric);
+        }
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    private final List<Transaction> transactions;
+
+    // versione della lista per cui ciascun indice è valido (-1 = da costruire)
+    private long dateVersion = -1;
+    private long textVersion = -1;
+    private long bitmapVersion = -1;
+
+    // modifiche che hanno spostato le posizioni delle righe (vedi rewritten());
+    // ogni indice ricorda il valore con cui è stato costruito e quante righe copre
+    private long rewrites;
+    private long dateRewrites = -1;
+    private long textRewrites = -1;
+    private long bitmapRewrites = -1;
+    private int dateRows;
+    private int textRows;
+    private int bitmapRows;
+
+    private int[]  byDate;     // posizioni ordinate per data
+    private long[] sortedDays; // giorno epoch corrispondente a byDate[i]
+    private Map<Integer, IntList> trigrams;
+
+    private Map<String, BitSet> categoryBits; // categoria -> righe
+    private BitSet incomeBits;                // righe di tipo Income
+    private TreeMap<Long, BitSet> monthBits;  // anno * 12 + mese - 1 -> righe
+
+    QueryPlanner(List<Transaction> transactions) {
+        this.transactions = transactions;
+    }
+
+    /**
+     * Segnala una modifica che non è una semplice aggiunta in coda (rimozione,
+     * sostituzione, inserimento in mezzo, svuotamento): le posizioni memorizzate
+     * negli indici non sono più valide e alla prossima query vanno ricostruiti.
+     */
+    void rewritten() {
+        rewrites++;
+    }
+
+    /**
+     * @return la prima riga ancora da indicizzare, oppure 0 se l'indice va
+     *         ricostruito da capo
+     */
+    private int firstNewRow(long indexRewrites, int indexedRows) {
+        return (indexRewrites == rewrites && indexedRows <= transactions.size()) ? indexedRows : 0;
+    }
+
+    /**
+     * Esegue la query sulle transazioni memorizzate più eventuali righe
+     * aggiuntive (occorrenze ricorrenti, anni archiviati) già limitate
+     * all'intervallo di date della query.
+     */
+    List<Transaction> execute(TransactionQuery q, long version, Collection<Transaction> extra) {
+        Predicate<Transaction> predicate = q.toPredicate();
+
+        // stima dei candidati per ciascun percorso
+        int n = transactions.size();
+        int[] dateRange = null;
+        if (q.hasDateRange()) {
+            ensureDateIndex(version);
+            dateRange = dateRange(q.getFrom(), q.getTo());
+        }
+        long dateCandidates = (dateRange != null) ? dateRange[1] - dateRange[0] : n;
+        int[] textCandidates = null;
+        if (q.getText() != null && q.getText().length() >= 3) {
+            ensureTextIndex(version);
+            textCandidates = rarestTrigram(q.getText());
+        }
+        long textCount = (textCandidates != null) ? textCandidates.length : n;
+        BitSet categoryCandidates = null;
+        if (q.getCategory() != null) {
+            ensureBitmaps(version);
+            categoryCandidates = categoryCandidates(q);
+        }
+        long categoryCount = (categoryCandidates != null) ? categoryCandidates.cardinality() : n;
+
+        Comparator<Transaction> cmp = q.comparator();
+        int limit = q.getLimit();
+        // senza ordinamento ci si può fermare ai primi “limit” risultati nell'ordine della lista
+        Sink sink = (cmp != null && limit < Integer.MAX_VALUE) ? new TopK(cmp, limit)
+                : new Collect(cmp == null ? limit : Integer.MAX_VALUE);
+
+        if (categoryCandidates != null && categoryCount <= textCount && categoryCount <= dateCandidates) {
+            AccessPath.CATEGORY_BITMAP.executions.increment();
+            for (int row = categoryCandidates.nextSetBit(0); row >= 0 && !sink.full();
+                 row = categoryCandidates.nextSetBit(row + 1)) {
+                Transaction t = transactions.get(row);
+                if (predicate.test(t)) sink.accept(t);
+            }
+        } else if (textCount < dateCandidates && textCount < n) {
+            AccessPath.TEXT_INDEX.executions.increment();
+            for (int row : textCandidates) {
+                if (sink.full()) break;
+                Transaction t = transactions.get(row);
+                if (predicate.test(t)) sink.accept(t);
+            }
+        } else if (dateRange != null && dateCandidates < n) {
+            AccessPath.DATE_INDEX.executions.increment();
+            // si percorrono le righe in ordine di posizione per rispettare l'ordine di inserimento
+            int[] rows = Arrays.copyOfRange(byDate, dateRange[0], dateRange[1]);
+            Arrays.sort(rows);
+            for (int row : rows) {
+                if (sink.full()) break;
+                Transaction t = transactions.get(row);
+                if (predicate.test(t)) sink.accept(t);
+            }
+        } else {
+            AccessPath.FULL_SCAN.executions.increment();
+            for (int i = 0; i < n && !sink.full(); i++) {
+                Transaction t = transactions.get(i);
+                if (predicate.test(t)) sink.accept(t);
+            }
+        }
+        for (Transaction t : extra) {
+            if (sink.full()) break;
+            if (predicate.test(t)) sink.accept(t);
+        }
+        return sink.result(cmp, limit);
+    }
+
+    /**
+     * @return le categorie presenti nelle transazioni, in ordine alfabetico
+     */
+    List<String> categories(long version) {
+        ensureBitmaps(version);
+        List<String> list = new ArrayList<>(categoryBits.keySet());
+        list.sort(String.CASE_INSENSITIVE_ORDER);
+        return list;
+    }
+
+    // ------------------------------------------------------------------
+    // Indici
+    // ------------------------------------------------------------------
+
+    private void ensureDateIndex(long version) {
+        if (version == dateVersion) return;
+        int n = transactions.size();
+        int from = firstNewRow(dateRewrites, dateRows);
+        long[] packed = new long[n - from];
+        for (int i = from; i < n; i++) {
+            // giorno epoch nei 32 bit alti, posizione nei 32 bassi: un solo sort primitivo
+            packed[i - from] = (transactions.get(i).getDate().toEpochDay() << 32) | i;
+        }
+        Arrays.parallelSort(packed);
+        if (from > 0) packed = mergeDates(packed);
+        byDate = new int[n];
+        sortedDays = new long[n];
+        for (int i = 0; i < n; i++) {
+            byDate[i] = (int) packed[i];
+            sortedDays[i] = packed[i] >> 32;
+        }
+        dateVersion = version;
+        dateRewrites = rewrites;
+        dateRows = n;
+    }
+
+    /** Fonde le righe nuove, già ordinate, con quelle dell'indice per data esistente. */
+    private long[] mergeDates(long[] added) {
+        int old = byDate.length;
+        long[] merged = new long[old + added.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < merged.length; k++) {
+            long a = (i < old) ? (sortedDays[i] << 32) | byDate[i] : Long.MAX_VALUE;
+            if (j < added.length && added[j] < a) {
+                merged[k] = added[j++];
+            } else {
+                merged[k] = a;
+                i++;
+            }
+        }
+        return merged;
+    }
+
+    private void ensureTextIndex(long version) {
+        if (version == textVersion) return;
+        int n = transactions.size();
+        int from = firstNewRow(textRewrites, textRows);
+        if (from == 0) trigrams = new HashMap<>();
+        for (int i = from; i < n; i++) {
+            String d = transactions.get(i).getDescription().toLowerCase();
+            for (int j = 0; j + 3 <= d.length(); j++) {
+                IntList list = trigrams.computeIfAbsent(trigram(d, j), k -> new IntList());
+                list.addOnce(i);
+            }
+        }
+        textVersion = version;
+        textRewrites = rewrites;
+        textRows = n;
+    }
+
+    private void ensureBitmaps(long version) {
+        if (version == bitmapVersion) return;
+        int n = transactions.size();
+        int from = firstNewRow(bitmapRewrites, bitmapRows);
+        if (from == 0) {
+            categoryBits = new HashMap<>();
+            incomeBits = new BitSet(n);
+            monthBits = new TreeMap<>();
+        }
+        for (int i = from; i < n; i++) {
+            Transaction t = transactions.get(i);
+            if (!t.getCategory().isEmpty()) {
+                categoryBits.computeIfAbsent(t.getCategory(), k -> new BitSet()).set(i);
+            }
+            if (t instanceof Income) incomeBits.set(i);
+            monthBits.computeIfAbsent(monthKey(t.getDate()), k -> new BitSet()).set(i);
+        }
+        bitmapVersion = version;
+        bitmapRewrites = rewrites;
+        bitmapRows = n;
+    }
+
+    private static long monthKey(LocalDate d) {
+        return d.getYear() * 12L + d.getMonthValue() - 1;
+    }
+
+    /**
+     * Righe della categoria della query, ristrette con le bitmap al tipo e
+     * ai mesi che intersecano l'intervallo di date (i mesi ai bordi vengono
+     * poi verificati dal predicato).
+     */
+    private BitSet categoryCandidates(TransactionQuery q) {
+        BitSet bits = categoryBits.get(q.getCategory());
+        if (bits == null) return new BitSet();
+        BitSet result = (BitSet) bits.clone();
+        if (Income.class.equals(q.getType())) {
+            result.and(incomeBits);
+        } else if (Expense.class.equals(q.getType())) {
+            result.andNot(incomeBits);
+        }
+        if (q.hasDateRange()) {
+            long lo = (q.getFrom() != null) ? monthKey(q.getFrom()) : Long.MIN_VALUE;
+            long hi = (q.getTo() != null) ? monthKey(q.getTo()) : Long.MAX_VALUE;
+            BitSet months = new BitSet();
+            if (lo <= hi) {
+                for (BitSet m : monthBits.subMap(lo, true, hi, true).values()) {
+                    months.or(m);
+                }
+            }
+            result.and(months);
+        }
+        return result;
+    }
+
+    private static int trigram(String s, int i) {
+        // tre caratteri a 16 bit non entrano in un int: si usa un hash a bassa collisione,
+        // le collisioni producono solo candidati in più, scartati dalla verifica finale
+        return (s.charAt(i) * 31 + s.charAt(i + 1)) * 31 + s.charAt(i + 2);
+    }
+
+    /** Posizioni [inizio, fine) in byDate delle righe con data in [from, to]. */
+    private int[] dateRange(LocalDate from, LocalDate to) {
+        long lo = (from != null) ? from.toEpochDay() : Long.MIN_VALUE;
+        long hi = (to != null) ? to.toEpochDay() : Long.MAX_VALUE;
+        if (hi < lo) return new int[]{0, 0};
+        return new int[]{lowerBound(lo), upperBound(hi)};
+    }
+
+    private int lowerBound(long day) {
+        int lo = 0, hi = sortedDays.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedDays[mid] < day) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private int upperBound(long day) {
+        int lo = 0, hi = sortedDays.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedDays[mid] <= day) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Righe del trigramma meno frequente del testo cercato. */
+    private int[] rarestTrigram(String text) {
+        IntList best = null;
+        for (int j = 0; j + 3 <= text.length(); j++) {
+            IntList rows = trigrams.get(trigram(text, j));
+            if (rows == null) return EMPTY;
+            if (best == null || rows.size() < best.size()) best = rows;
+        }
+        return best.toArray();
+    }
+
+    /** Lista di int crescenti senza duplicati consecutivi. */
+    private static final class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        void addOnce(int v) {
+            if (size > 0 && data[size - 1] == v) return;
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Raccolta dei risultati
+    // ------------------------------------------------------------------
+
+    private interface Sink {
+        void accept(Transaction t);
+
+        boolean full();
+
+        List<Transaction> result(Comparator<Transaction> cmp, int limit);
+    }
+
+    /** Raccoglie tutto (o fino a un limite) e ordina alla fine se richiesto. */
+    private static final class Collect implements Sink {
+        private final List<Transaction> list = new ArrayList<>();
+        private final int max;
+
+        Collect(int max) {
+            this.max = max;
+        }
+
+        @Override public void accept(Transaction t) { list.add(t); }
+        @Override public boolean full()             { return list.size() >= max; }
+
+        @Override
+        public List<Transaction> result(Comparator<Transaction> cmp, int limit) {
+            if (cmp != null) list.sort(cmp);
+            return list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
+        }
+    }
+
+    /** Mantiene solo i primi k risultati secondo il comparatore (heap di dimensione k). */
+    private static final class TopK implements Sink {
+        private final PriorityQueue<Transaction> heap;
+        private final Comparator<Transaction> cmp;
+        private final int k;
+
+        TopK(Comparator<Transaction> cmp, int k) {
+            this.cmp = cmp;
+            this.k = k;
+            // in cima il “peggiore” dei k migliori
+            this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), cmp.reversed());
+        }
+
+        @Override
+        public void accept(Transaction t) {
+            if (k == 0) return;
+            if (heap.size() < k) {
+                heap.add(t);
+            } else if (cmp.compare(t, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(t);
+            }
+        }
+
+        @Override public boolean full() { return false; }
+
+        @Override
+        public List<Transaction> result(Comparator<Transaction> c, int limit) {
+            List<Transaction> list = new ArrayList<>(heap);
+            list.sort(cmp);
+            return list;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import it.unimore.programmazioneoggetti.budget.util.Metrics;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Riconciliazione di un estratto conto con le transazioni del bilancio:
+ * ogni riga dell'estratto viene abbinata al più a una transazione con lo
+ * stesso importo con segno e la stessa valuta, una data entro una finestra
+ * di giorni e una descrizione simile.
+ * <p>
+ * Le transazioni del bilancio vengono prima raggruppate per importo in una
+ * tabella hash; dentro ogni gruppo sono ordinate per data, quindi i
+ * candidati di una riga si trovano con una ricerca binaria sulla finestra di
+ * date invece di confrontare la riga con tutto il bilancio. La somiglianza
+ * delle descrizioni (coefficiente di Dice sui trigrammi) serve solo a
+ * scegliere tra i pochi candidati rimasti.
+ * <p>
+ * Un candidato unico viene abbinato; tra più candidati si sceglie il
+ * migliore solo se è abbastanza simile e si distacca dal secondo, altrimenti
+ * la riga è ambigua e va decisa dall'utente. Più righe identiche del
+ * bilancio (es. due caffè uguali nello stesso giorno) contano come un solo
+ * candidato: si abbina la prima non ancora usata, e la successiva resta per
+ * la prossima riga uguale dell'estratto. Ogni transazione del bilancio
+ * viene abbinata a una sola riga.
+ */
+public class Reconciler {
+
+    /** Finestra di date predefinita: giorni di differenza ammessi tra estratto e bilancio. */
+    public static final int DEFAULT_DATE_WINDOW = 3;
+
+    /** Somiglianza minima predefinita delle descrizioni per scegliere tra più candidati. */
+    public static final double DEFAULT_MIN_SIMILARITY = 0.3;
+
+    /** Distacco minimo di punteggio tra il primo e il secondo candidato. */
+    private static final double AMBIGUITY_MARGIN = 0.15;
+
+    /** Numero massimo di candidati riportati per una riga ambigua. */
+    private static final int MAX_REPORTED_CANDIDATES = 5;
+
+    private static final Metrics.Timer RECONCILE = Metrics.timer("model.reconcile");
+
+    private final int dateWindow;
+    private final double minSimilarity;
+
+    /**
+     * Crea un riconciliatore con i parametri predefiniti.
+     */
+    public Reconciler() {
+        this(DEFAULT_DATE_WINDOW, DEFAULT_MIN_SIMILARITY);
+    }
+
+    /**
+     * Crea un riconciliatore.
+     *
+     * @param dateWindow    giorni di differenza ammessi (0 o più)
+     * @param minSimilarity somiglianza minima delle descrizioni, tra 0 e 1
+     * @throws IllegalArgumentException se un parametro è fuori intervallo
+     */
+    public Reconciler(int dateWindow, double minSimilarity) {
+        if (dateWindow < 0) throw new IllegalArgumentException("La finestra di date non può essere negativa");
+        if (minSimilarity < 0 || minSimilarity > 1) {
+            throw new IllegalArgumentException("La somiglianza minima deve essere tra 0 e 1");
+        }
+        this.dateWindow = dateWindow;
+        this.minSimilarity = minSimilarity;
+    }
+
+    /**
+     * Abbina le righe dell'estratto conto alle transazioni del bilancio.
+     *
+     * @param statement righe dell'estratto conto
+     * @param ledger    transazioni del bilancio (lista ad accesso casuale, non modificata)
+     * @return righe abbinate, ambigue e non trovate
+     */
+    public Result reconcile(List<Transaction> statement, List<Transaction> ledger) {
+        long start = Metrics.start();
+        Result result = new Result();
+        if (statement.isEmpty()) return result;
+
+        // righe dell'estratto in ordine di data, a parità nell'ordine del file
+        List<Transaction> lines = new ArrayList<>(statement);
+        lines.sort(Comparator.comparing(Transaction::getDate));
+        long from = lines.get(0).getDate().toEpochDay() - dateWindow;
+        long to = lines.get(lines.size() - 1).getDate().toEpochDay() + dateWindow;
+
+        Map<String, Map<BigDecimal, long[]>> buckets = index(ledger, from, to);
+        BitSet used = new BitSet(ledger.size());
+        List<Candidate> candidates = new ArrayList<>();
+        Set<Transaction> seen = new HashSet<>();
+
+        for (Transaction line : lines) {
+            candidates.clear();
+            seen.clear();
+            long[] rows = bucket(buckets, line);
+            if (rows != null) {
+                long day = line.getDate().toEpochDay();
+                int[] grams = null;
+                for (int k = firstAtOrAfter(rows, day - dateWindow); k < rows.length; k++) {
+                    long d = rows[k] >> 32;
+                    if (d > day + dateWindow) break;
+                    int i = (int) rows[k];
+                    if (used.get(i)) continue;
+                    Transaction t = ledger.get(i);
+                    // righe identiche: vale la prima (in ordine di data e posizione) non ancora usata
+                    if (!seen.add(t)) continue;
+                    if (grams == null) grams = trigrams(line.getDescription());
+                    double similarity = dice(grams, trigrams(t.getDescription()));
+                    double closeness = 1.0 - (double) Math.abs(d - day) / (dateWindow + 1);
+                    candidates.add(new Candidate(i, t, similarity, 0.7 * similarity + 0.3 * closeness));
+                }
+            }
+            if (candidates.isEmpty()) {
+                result.unmatched.add(line);
+                continue;
+            }
+            candidates.sort(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+            Candidate best = candidates.get(0);
+            boolean unique = candidates.size() == 1;
+            if (unique || (best.similarity >= minSimilarity
+                    && best.score - candidates.get(1).score >= AMBIGUITY_MARGIN)) {
+                used.set(best.index);
+                result.matched.add(new Match(line, best.transaction, best.similarity));
+            } else {
+                List<Transaction> options = new ArrayList<>();
+                for (int k = 0; k < Math.min(MAX_REPORTED_CANDIDATES, candidates.size()); k++) {
+                    options.add(candidates.get(k).transaction);
+                }
+                result.ambiguous.add(new Ambiguity(line, options));
+            }
+        }
+        RECONCILE.stop(start);
+        return result;
+    }
+
+    /**
+     * Raggruppa per valuta e importo con segno le transazioni con data in
+     * [from, to]; ogni gruppo contiene giorno epoch (32 bit alti) e
+     * posizione (32 bit bassi), ordinati per data.
+     */
+    private static Map<String, Map<BigDecimal, long[]>> index(List<Transaction> ledger, long from, long to) {
+        Map<String, Map<BigDecimal, LongList>> lists = new HashMap<>();
+        for (int i = 0; i < ledger.size(); i++) {
+            Transaction t = ledger.get(i);
+            long day = t.getDate().toEpochDay();
+            if (day < from || day > to) continue;
+            lists.computeIfAbsent(t.getCurrency(), k -> new HashMap<>())
+                    .computeIfAbsent(amountKey(t), k -> new LongList())
+                    .add((day << 32) | i);
+        }
+        Map<String, Map<BigDecimal, long[]>> buckets = new HashMap<>(lists.size() * 2);
+        lists.forEach((currency, byAmount) -> {
+            Map<BigDecimal, long[]> sorted = new HashMap<>(byAmount.size() * 2);
+            byAmount.forEach((amount, list) -> {
+                long[] rows = list.toArray();
+                Arrays.sort(rows);
+                sorted.put(amount, rows);
+            });
+            buckets.put(currency, sorted);
+        });
+        return buckets;
+    }
+
+    private static long[] bucket(Map<String, Map<BigDecimal, long[]>> buckets, Transaction line) {
+        Map<BigDecimal, long[]> byAmount = buckets.get(line.getCurrency());
+        return (byAmount == null) ? null : byAmount.get(amountKey(line));
+    }
+
+    /** Importo con segno senza zeri finali, così 10.5 e 10.50 cadono nello stesso gruppo. */
+    private static BigDecimal amountKey(Transaction t) {
+        return t.signedAmount().stripTrailingZeros();
+    }
+
+    /** Primo indice con giorno >= {@code day} (ricerca binaria). */
+    private static int firstAtOrAfter(long[] rows, long day) {
+        int lo = 0;
+        int hi = rows.length;
+        long key = day << 32;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rows[mid] < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Trigrammi distinti e ordinati di una descrizione normalizzata
+     * (minuscole, lettere e cifre separate da un solo spazio).
+     */
+    static int[] trigrams(String description) {
+        String s = " " + description.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim() + " ";
+        if (s.length() < 3) return new int[0];
+        int[] grams = new int[s.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (s.charAt(i) * 31 + s.charAt(i + 1)) * 31 + s.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int n = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (n == 0 || grams[n - 1] != grams[i]) grams[n++] = grams[i];
+        }
+        return Arrays.copyOf(grams, n);
+    }
+
+    /** Coefficiente di Dice tra due insiemi ordinati di trigrammi (1 = uguali). */
+    static double dice(int[] a, int[] b) {
+        if (a.length == 0 && b.length == 0) return 1;
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return 2.0 * common / (a.length + b.length);
+    }
+
+    private static final class Candidate {
+        final int index;
+        final Transaction transaction;
+        final double similarity;
+        final double score;
+
+        Candidate(int index, Transaction transaction, double similarity, double score) {
+            this.index = index;
+            this.transaction = transaction;
+            this.similarity = similarity;
+            this.score = score;
+        }
+    }
+
+    /** Lista di long che cresce senza boxing. */
+    private static final class LongList {
+        private long[] values = new long[2];
+        private int size;
+
+        void add(long v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Riga dell'estratto abbinata a una transazione del bilancio.
+     */
+    public static final class Match {
+        private final Transaction statementLine;
+        private final Transaction transaction;
+        private final double similarity;
+
+        Match(Transaction statementLine, Transaction transaction, double similarity) {
+            this.statementLine = statementLine;
+            this.transaction = transaction;
+            this.similarity = similarity;
+        }
+
+        /** @return la riga dell'estratto conto */
+        public Transaction getStatementLine() {
+            return statementLine;
+        }
+
+        /** @return la transazione del bilancio abbinata */
+        public Transaction getTransaction() {
+            return transaction;
+        }
+
+        /** @return somiglianza delle descrizioni, tra 0 e 1 */
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+
+    /**
+     * Riga dell'estratto con più candidati che non si distinguono abbastanza.
+     */
+    public static final class Ambiguity {
+        private final Transaction statementLine;
+        private final List<Transaction> candidates;
+
+        Ambiguity(Transaction statementLine, List<Transaction> candidates) {
+            this.statementLine = statementLine;
+            this.candidates = Collections.unmodifiableList(candidates);
+        }
+
+        /** @return la riga dell'estratto conto */
+        public Transaction getStatementLine() {
+            return statementLine;
+        }
+
+        /** @return i candidati migliori, dal più probabile */
+        public List<Transaction> getCandidates() {
+            return candidates;
+        }
+    }
+
+    /**
+     * Esito di una riconciliazione.
+     */
+    public static final class Result {
+        private final List<Match> matched = new ArrayList<>();
+        private final List<Ambiguity> ambiguous = new ArrayList<>();
+        private final List<Transaction> unmatched = new ArrayList<>();
+
+        /** @return righe abbinate, in ordine di data */
+        public List<Match> getMatched() {
+            return Collections.unmodifiableList(matched);
+        }
+
+        /** @return righe con più candidati, in ordine di data */
+        public List<Ambiguity> getAmbiguous() {
+            return Collections.unmodifiableList(ambiguous);
+        }
+
+        /** @return righe senza alcun candidato nel bilancio, in ordine di data */
+        public List<Transaction> getUnmatched() {
+            return Collections.unmodifiableList(unmatched);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Modello di transazione ricorrente (es. affitto, stipendio): una voce che
+ * si ripete a intervallo fisso a partire da una data di inizio, fino a una
+ * data di fine opzionale. Le singole occorrenze non vengono memorizzate:
+ * sono create su richiesta come {@link Income} o {@link Expense} solo per
+ * gli intervalli di date effettivamente interrogati.
+ */
+public class RecurringTemplate {
+
+    private final String     description;
+    private final BigDecimal amount;
+    private final boolean    income;
+    private final Period     interval;
+    private final LocalDate  start;
+    private final LocalDate  end;
+
+    // durata media approssimata dell'intervallo, per stimare l'indice della prima occorrenza
+    private final double approxDays;
+
+    /**
+     * Costruisce un nuovo modello ricorrente.
+     *
+     * @param description descrizione (non nulla, non vuota)
+     * @param amount      importo (positivo)
+     * @param income      {@code true} per un'entrata, {@code false} per una spesa
+     * @param interval    intervallo tra due occorrenze (positivo, es. {@code Period.ofMonths(1)})
+     * @param start       data della prima occorrenza (non null)
+     * @param end         ultima data possibile (inclusa), oppure null se senza fine
+     * @throws IllegalArgumentException se uno dei parametri non è valido
+     */
+    public RecurringTemplate(String description, BigDecimal amount, boolean income,
+                             Period interval, LocalDate start, LocalDate end) {
+        if (description == null || description.isBlank()) {
+            throw new IllegalArgumentException("La descrizione non può essere nulla o vuota");
+        }
+        if (amount == null || amount.compareTo(BigDecimal.ZERO) < 0) {
+            throw new IllegalArgumentException("L'ammontare non può essere nullo o negativo");
+        }
+        if (interval == null || interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException("L'intervallo deve essere positivo");
+        }
+        if (start == null) {
+            throw new IllegalArgumentException("La data di inizio non può essere nulla");
+        }
+        if (end != null && end.isBefore(start)) {
+            throw new IllegalArgumentException("La data di fine precede quella di inizio");
+        }
+        this.description = description;
+        this.amount      = amount;
+        this.income      = income;
+        this.interval    = interval;
+        this.start       = start;
+        this.end         = end;
+        this.approxDays  = interval.getYears() * 365.2425 + interval.getMonths() * 30.436875 + interval.getDays();
+    }
+
+    /** @return la descrizione delle occorrenze */
+    public String getDescription() {
+        return description;
+    }
+
+    /** @return l'importo di ogni occorrenza (valore positivo) */
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    /** @return {@code true} se le occorrenze sono entrate */
+    public boolean isIncome() {
+        return income;
+    }
+
+    /** @return l'intervallo tra due occorrenze */
+    public Period getInterval() {
+        return interval;
+    }
+
+    /** @return la data della prima occorrenza */
+    public LocalDate getStart() {
+        return start;
+    }
+
+    /** @return l'ultima data possibile, oppure null se senza fine */
+    public LocalDate getEnd() {
+        return end;
+    }
+
+    /**
+     * Importo con segno di una singola occorrenza.
+     *
+     * @return importo positivo per le entrate, negativo per le spese
+     */
+    public BigDecimal signedAmount() {
+        return income ? amount : amount.negate();
+    }
+
+    /**
+     * Data della k-esima occorrenza, calcolata sempre a partire dall'inizio
+     * (così il 31 del mese non “scivola” al 28 dopo febbraio).
+     */
+    private LocalDate occurrence(long k) {
+        return start.plus(interval.multipliedBy(Math.toIntExact(k)));
+    }
+
+    /**
+     * Indice della prima occorrenza con data non precedente a {@code from}.
+     */
+    private long firstIndexOnOrAfter(LocalDate from) {
+        if (!from.isAfter(start)) return 0;
+        long k = Math.max(0, (long) (ChronoUnit.DAYS.between(start, from) / approxDays) - 1);
+        while (k > 0 && !occurrence(k).isBefore(from)) k--;
+        while (occurrence(k).isBefore(from)) k++;
+        return k;
+    }
+
+    /** Ultima data da considerare: il minimo tra {@code to} e la data di fine. */
+    private LocalDate clip(LocalDate to) {
+        return (end != null && end.isBefore(to)) ? end : to;
+    }
+
+    /**
+     * Conta le occorrenze comprese in [from, to] senza crearle.
+     *
+     * @param from data di inizio (inclusa)
+     * @param to   data di fine (inclusa)
+     * @return numero di occorrenze nell'intervallo
+     */
+    public long countOccurrences(LocalDate from, LocalDate to) {
+        LocalDate last = clip(to);
+        if (last.isBefore(from) || last.isBefore(start)) return 0;
+        long count = 0;
+        for (long k = firstIndexOnOrAfter(from); !occurrence(k).isAfter(last); k++) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Crea le occorrenze comprese in [from, to] come {@link Income} o {@link Expense}.
+     *
+     * @param from data di inizio (inclusa)
+     * @param to   data di fine (inclusa)
+     * @return lista delle occorrenze in ordine di data
+     */
+    public List<Transaction> materialize(LocalDate from, LocalDate to) {
+        List<Transaction> list = new ArrayList<>();
+        LocalDate last = clip(to);
+        if (last.isBefore(from) || last.isBefore(start)) return list;
+        for (long k = firstIndexOnOrAfter(from); ; k++) {
+            LocalDate d = occurrence(k);
+            if (d.isAfter(last)) break;
+            list.add(income ? new Income(d, description, amount) : new Expense(d, description, amount));
+        }
+        return list;
+    }
+
+    /**
+     * Verifica se una transazione coincide con una delle occorrenze di questo
+     * modello, comprese valuta predefinita e categoria vuota.
+     *
+     * @param t transazione da verificare
+     * @return {@code true} se {@code t} è un'occorrenza generata da questo modello
+     */
+    public boolean generates(Transaction t) {
+        if (t == null || (t instanceof Income) != income) return false;
+        if (!description.equals(t.getDescription()) || !amount.equals(t.getAmount())) return false;
+        if (!Transaction.DEFAULT_CURRENCY.equals(t.getCurrency()) || !t.getCategory().isEmpty()) return false;
+        LocalDate d = t.getDate();
+        return countOccurrences(d, d) == 1;
+    }
+
+    @Override
+    public String toString() {
+        return description + " (" + signedAmount() + " ogni " + interval + " dal " + start
+                + (end != null ? " al " + end : "") + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RecurringTemplate)) return false;
+        RecurringTemplate that = (RecurringTemplate) o;
+        return income == that.income &&
+                Objects.equals(description, that.description) &&
+                Objects.equals(amount, that.amount) &&
+                Objects.equals(interval, that.interval) &&
+                Objects.equals(start, that.start) &&
+                Objects.equals(end, that.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(description, amount, income, interval, start, end);
+    }
+}
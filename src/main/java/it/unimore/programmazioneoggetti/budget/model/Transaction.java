@@ -2,19 +2,35 @@ package it.unimore.programmazioneoggetti.budget.model;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Locale;
 import java.util.Objects;
 
 /**
  * Classe astratta che rappresenta una voce generica di bilancio.
- * Ogni transazione ha data, descrizione e importo (positivo).
+ * Ogni transazione ha data, descrizione, importo (positivo) e una categoria
+ * facoltativa (es. “Spesa”, “Bollette”, “Affitto”; stringa vuota se assente).
+ * La categoria è un'etichetta e non partecipa a {@link #equals(Object)};
+ * non può contenere virgole, tabulazioni o a capo, che separano i campi nei
+ * file CSV e TXT.
+ * L'importo è espresso nella valuta indicata dal codice ISO 4217 della
+ * transazione ({@link #DEFAULT_CURRENCY} se non specificata); la valuta fa
+ * parte dell'identità della transazione.
  * Le sottoclassi {@link Income} e {@link Expense} definiscono
  * come calcolare {@link #signedAmount()} (segno positivo o negativo).
  */
 public abstract class Transaction {
 
+    /** Valuta usata quando una transazione non ne indica una. */
+    public static final String DEFAULT_CURRENCY = "EUR";
+
+    /** Caratteri non ammessi in una categoria: separano i campi nei file CSV e TXT. */
+    public static final String CATEGORY_SEPARATORS = ",\t\r\n";
+
     private final LocalDate date;
     private final String    description;
     private final BigDecimal amount;
+    private final String    category;
+    private final String    currency;
 
     /**
      * Costruisce una nuova transazione.
@@ -25,6 +41,33 @@ public abstract class Transaction {
      * @throws IllegalArgumentException se uno dei parametri non è valido
      */
     public Transaction(LocalDate date, String description, BigDecimal amount) {
+        this(date, description, amount, "");
+    }
+
+    /**
+     * Costruisce una nuova transazione con categoria.
+     *
+     * @param date        data della transazione (non null)
+     * @param description descrizione (non nulla, non vuota)
+     * @param amount      importo (BigDecimal, positivo)
+     * @param category    categoria (null o vuota = nessuna categoria)
+     * @throws IllegalArgumentException se uno dei parametri non è valido
+     */
+    public Transaction(LocalDate date, String description, BigDecimal amount, String category) {
+        this(date, description, amount, category, DEFAULT_CURRENCY);
+    }
+
+    /**
+     * Costruisce una nuova transazione con categoria e valuta.
+     *
+     * @param date        data della transazione (non null)
+     * @param description descrizione (non nulla, non vuota)
+     * @param amount      importo (BigDecimal, positivo) espresso in {@code currency}
+     * @param category    categoria (null o vuota = nessuna categoria; senza {@link #CATEGORY_SEPARATORS})
+     * @param currency    codice ISO 4217 di tre lettere (null o vuoto = {@link #DEFAULT_CURRENCY})
+     * @throws IllegalArgumentException se uno dei parametri non è valido
+     */
+    public Transaction(LocalDate date, String description, BigDecimal amount, String category, String currency) {
         if (date == null) {
             throw new IllegalArgumentException("La data non può essere nulla");
         }
@@ -34,9 +77,39 @@ public abstract class Transaction {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) < 0) {
             throw new IllegalArgumentException("L'ammontare non può essere nullo o negativo");
         }
+        if (category != null && !isValidCategory(category)) {
+            throw new IllegalArgumentException("La categoria non può contenere virgole, tabulazioni o a capo");
+        }
         this.date        = date;
         this.description = description;
         this.amount      = amount;
+        // poche categorie distinte ripetute su molte righe: si condivide una sola istanza
+        this.category    = (category == null) ? "" : category.trim().intern();
+        this.currency    = normalizeCurrency(currency);
+    }
+
+    /**
+     * @param category categoria da verificare
+     * @return {@code true} se la categoria non contiene {@link #CATEGORY_SEPARATORS}
+     */
+    public static boolean isValidCategory(String category) {
+        return category.chars().noneMatch(ch -> CATEGORY_SEPARATORS.indexOf(ch) >= 0);
+    }
+
+    /**
+     * Normalizza un codice valuta: maiuscolo, senza spazi, tre lettere.
+     *
+     * @param currency codice da normalizzare (null o vuoto = {@link #DEFAULT_CURRENCY})
+     * @return codice normalizzato (istanza condivisa)
+     * @throws IllegalArgumentException se il codice non è di tre lettere
+     */
+    public static String normalizeCurrency(String currency) {
+        if (currency == null || currency.isBlank()) return DEFAULT_CURRENCY;
+        String c = currency.trim().toUpperCase(Locale.ROOT);
+        if (c.length() != 3 || !c.chars().allMatch(ch -> ch >= 'A' && ch <= 'Z')) {
+            throw new IllegalArgumentException("Codice valuta non valido: " + currency);
+        }
+        return c.intern();
     }
 
     /** @return la data della transazione */
@@ -54,6 +127,16 @@ public abstract class Transaction {
         return amount;
     }
 
+    /** @return la categoria, oppure la stringa vuota se assente */
+    public String getCategory() {
+        return category;
+    }
+
+    /** @return il codice della valuta dell'importo (es. "EUR") */
+    public String getCurrency() {
+        return currency;
+    }
+
     /**
      * Definisce il valore “con segno” della transazione:
      * sottoclassi implementano logiche diverse (entrate positive, uscite negative).
@@ -68,6 +151,7 @@ public abstract class Transaction {
                 "date=" + date +
                 ", description='" + description + '\'' +
                 ", amount=" + amount +
+                ", currency=" + currency +
                 '}';
     }
 
@@ -78,11 +162,12 @@ public abstract class Transaction {
         Transaction that = (Transaction) o;
         return Objects.equals(date, that.date) &&
                 Objects.equals(description, that.description) &&
-                Objects.equals(amount, that.amount);
+                Objects.equals(amount, that.amount) &&
+                Objects.equals(currency, that.currency);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(date, description, amount);
+        return Objects.hash(date, description, amount, currency);
     }
 }
@@ -0,0 +1,208 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+/**
+ * Interrogazione componibile sulle transazioni di un {@link BudgetManager}.
+ * I criteri si combinano in AND e si impostano con metodi concatenabili:
+ * <pre>
+ * new TransactionQuery()
+ *         .between(from, to)
+ *         .ofType(Expense.class)
+ *         .inCategory("Casa")
+ *         .descriptionContains("affitto")
+ *         .sortBy(TransactionQuery.SortKey.AMOUNT, false)
+ *         .limit(10);
+ * </pre>
+ * L'esecuzione ({@link BudgetManager#query(TransactionQuery)}) sceglie il
+ * percorso di accesso più selettivo tra indice per data, indice testuale,
+ * bitmap per categoria e scansione completa.
+ */
+public class TransactionQuery {
+
+    /** Chiavi di ordinamento dei risultati. */
+    public enum SortKey {
+        DATE(Comparator.comparing(Transaction::getDate)),
+        DESCRIPTION(Comparator.comparing(Transaction::getDescription, String.CASE_INSENSITIVE_ORDER)),
+        AMOUNT(Comparator.comparing(Transaction::signedAmount));
+
+        private final Comparator<Transaction> comparator;
+
+        SortKey(Comparator<Transaction> comparator) {
+            this.comparator = comparator;
+        }
+
+        Comparator<Transaction> comparator() {
+            return comparator;
+        }
+    }
+
+    private LocalDate from;
+    private LocalDate to;
+    private Class<? extends Transaction> type;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+    private String text;
+    private String category;
+    private SortKey sortKey;
+    private boolean ascending = true;
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     * Limita alle transazioni comprese in [from, to]; ciascun estremo può
+     * essere null per lasciare l'intervallo aperto.
+     *
+     * @param from data di inizio (inclusa) o null
+     * @param to   data di fine (inclusa) o null
+     * @return questa query
+     */
+    public TransactionQuery between(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * Limita a un tipo di transazione.
+     *
+     * @param type {@code Income.class}, {@code Expense.class} oppure null per entrambi
+     * @return questa query
+     */
+    public TransactionQuery ofType(Class<? extends Transaction> type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * Limita l'importo (valore positivo, senza segno) a [min, max]; ciascun
+     * estremo può essere null.
+     *
+     * @param min importo minimo (incluso) o null
+     * @param max importo massimo (incluso) o null
+     * @return questa query
+     */
+    public TransactionQuery amountBetween(BigDecimal min, BigDecimal max) {
+        this.minAmount = min;
+        this.maxAmount = max;
+        return this;
+    }
+
+    /**
+     * Limita alle transazioni la cui descrizione contiene il testo indicato,
+     * senza distinguere maiuscole e minuscole.
+     *
+     * @param text testo da cercare (null o vuoto = nessun filtro)
+     * @return questa query
+     */
+    public TransactionQuery descriptionContains(String text) {
+        this.text = (text == null || text.isBlank()) ? null : text.trim().toLowerCase();
+        return this;
+    }
+
+    /**
+     * Limita alle transazioni di una categoria.
+     *
+     * @param category categoria (null o vuota = nessun filtro)
+     * @return questa query
+     */
+    public TransactionQuery inCategory(String category) {
+        this.category = (category == null || category.isBlank()) ? null : category.trim();
+        return this;
+    }
+
+    /**
+     * Ordina i risultati.
+     *
+     * @param key       chiave di ordinamento (null = ordine di inserimento)
+     * @param ascending {@code true} per ordine crescente
+     * @return questa query
+     */
+    public TransactionQuery sortBy(SortKey key, boolean ascending) {
+        this.sortKey = key;
+        this.ascending = ascending;
+        return this;
+    }
+
+    /**
+     * Limita il numero di risultati.
+     *
+     * @param limit numero massimo di risultati (non negativo)
+     * @return questa query
+     * @throws IllegalArgumentException se {@code limit} è negativo
+     */
+    public TransactionQuery limit(int limit) {
+        if (limit < 0) throw new IllegalArgumentException("Il limite non può essere negativo");
+        this.limit = limit;
+        return this;
+    }
+
+    /** @return data di inizio o null */
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    /** @return data di fine o null */
+    public LocalDate getTo() {
+        return to;
+    }
+
+    /** @return testo cercato (minuscolo) o null */
+    public String getText() {
+        return text;
+    }
+
+    /** @return categoria cercata o null */
+    public String getCategory() {
+        return category;
+    }
+
+    /** @return tipo cercato o null */
+    public Class<? extends Transaction> getType() {
+        return type;
+    }
+
+    /** @return numero massimo di risultati */
+    public int getLimit() {
+        return limit;
+    }
+
+    /** @return chiave di ordinamento o null */
+    public SortKey getSortKey() {
+        return sortKey;
+    }
+
+    /** @return {@code true} se la query ha un criterio sulle date */
+    public boolean hasDateRange() {
+        return from != null || to != null;
+    }
+
+    /**
+     * Comparatore dei risultati, o null se la query non è ordinata.
+     */
+    Comparator<Transaction> comparator() {
+        if (sortKey == null) return null;
+        return ascending ? sortKey.comparator() : sortKey.comparator().reversed();
+    }
+
+    /**
+     * Condizione completa della query, usata per verificare i candidati
+     * restituiti dal percorso di accesso scelto.
+     *
+     * @return predicato equivalente a tutti i criteri
+     */
+    public Predicate<Transaction> toPredicate() {
+        return t -> {
+            LocalDate d = t.getDate();
+            if (from != null && d.isBefore(from)) return false;
+            if (to != null && d.isAfter(to)) return false;
+            if (type != null && !type.isInstance(t)) return false;
+            if (category != null && !category.equals(t.getCategory())) return false;
+            if (minAmount != null && t.getAmount().compareTo(minAmount) < 0) return false;
+            if (maxAmount != null && t.getAmount().compareTo(maxAmount) > 0) return false;
+            return text == null || t.getDescription().toLowerCase().contains(text);
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package it.unimore.programmazioneoggetti.budget.model;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+/**
+ * Riepilogo di un anno archiviato: numero di transazioni e totali di
+ * entrate e uscite. Permette di calcolare saldi senza leggere le righe
+ * dell'anno.
+ */
+public final class YearSummary {
+
+    private final int        year;
+    private final int        count;
+    private final BigDecimal totalIncome;
+    private final BigDecimal totalExpense;
+
+    /**
+     * Costruisce un riepilogo.
+     *
+     * @param year         anno di riferimento
+     * @param count        numero di transazioni
+     * @param totalIncome  somma delle entrate
+     * @param totalExpense somma delle uscite (valore positivo)
+     */
+    public YearSummary(int year, int count, BigDecimal totalIncome, BigDecimal totalExpense) {
+        this.year = year;
+        this.count = count;
+        this.totalIncome = totalIncome;
+        this.totalExpense = totalExpense;
+    }
+
+    /**
+     * Calcola il riepilogo di un insieme di transazioni dello stesso anno.
+     *
+     * @param year         anno di riferimento
+     * @param transactions transazioni dell'anno
+     * @return il riepilogo
+     */
+    public static YearSummary of(int year, Collection<? extends Transaction> transactions) {
+        BigDecimal income = BigDecimal.ZERO;
+        BigDecimal expense = BigDecimal.ZERO;
+        for (Transaction t : transactions) {
+            if (t instanceof Income) {
+                income = income.add(t.getAmount());
+            } else {
+                expense = expense.add(t.getAmount());
+            }
+        }
+        return new YearSummary(year, transactions.size(), income, expense);
+    }
+
+    /** @return l'anno di riferimento */
+    public int getYear() {
+        return year;
+    }
+
+    /** @return il numero di transazioni dell'anno */
+    public int getCount() {
+        return count;
+    }
+
+    /** @return la somma delle entrate */
+    public BigDecimal getTotalIncome() {
+        return totalIncome;
+    }
+
+    /** @return la somma delle uscite (valore positivo) */
+    public BigDecimal getTotalExpense() {
+        return totalExpense;
+    }
+
+    /** @return il saldo dell'anno (entrate meno uscite) */
+    public BigDecimal getNet() {
+        return totalIncome.subtract(totalExpense);
+    }
+
+    @Override
+    public String toString() {
+        return year + ": " + count + " transazioni, saldo " + getNet();
+    }
+}
@@ -0,0 +1,196 @@
+package it.unimore.programmazioneoggetti.budget.util;
+
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Segue un file CSV a cui un processo esterno aggiunge righe (modalità
+ * “tail”). Ricorda la posizione già letta e, a ogni modifica segnalata dal
+ * {@link WatchService}, legge e converte solo i byte aggiunti. Se il file
+ * viene troncato o sostituito (rotazione), riparte dall'inizio del nuovo file.
+ * <p>
+ * Le righe lette vengono passate al {@code sink} dal thread del follower:
+ * chi aggiorna l'interfaccia grafica deve rimandare il lavoro sull'EDT.
+ * Un errore di lettura ferma il follower e viene passato, dallo stesso
+ * thread, al destinatario degli errori.
+ */
+public class CsvFollower implements Closeable {
+
+    /** Intervallo massimo tra due controlli, anche senza notifiche dal file system. */
+    private static final long POLL_MILLIS = 1000;
+    private static final int  READ_BUFFER = 64 * 1024;
+
+    private final Path file;
+    private final Consumer<List<Transaction>> sink;
+    private final Consumer<IOException> onError;
+    private final WatchService watcher;
+    private final Thread thread;
+
+    // stato di lettura (usato solo dal thread del follower)
+    private long   offset;
+    private Object fileKey;
+    private byte[] partial = new byte[0];
+    private int    skippedLines;
+
+    private volatile boolean running;
+
+    /**
+     * Prepara il follower di un file CSV.
+     *
+     * @param file        file da seguire
+     * @param startOffset posizione da cui iniziare a leggere (0 = dall'inizio, saltando l'intestazione)
+     * @param sink        destinatario delle transazioni lette
+     * @param onError     destinatario dell'errore che ferma il follower
+     * @throws IOException se non è possibile registrare il watcher
+     */
+    public CsvFollower(File file, long startOffset, Consumer<List<Transaction>> sink,
+                       Consumer<IOException> onError) throws IOException {
+        this.file = file.toPath().toAbsolutePath();
+        this.sink = Objects.requireNonNull(sink);
+        this.onError = Objects.requireNonNull(onError);
+        this.offset = Math.max(0, startOffset);
+        this.fileKey = currentFileKey();
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "csv-follower-" + this.file.getFileName());
+        this.thread.setDaemon(true);
+    }
+
+    /** Avvia il thread che segue il file. */
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /** @return numero di righe scartate perché non valide */
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+
+    /** @return il file seguito */
+    public File getFile() {
+        return file.toFile();
+    }
+
+    /** Interrompe il follower e rilascia il watcher. */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watcher.close();
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            readAppended();
+            while (running) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    // gli eventi possono riguardare altri file della cartella: si controlla comunque il nostro
+                    key.pollEvents();
+                    key.reset();
+                }
+                readAppended();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // chiusura richiesta
+        } catch (IOException ex) {
+            if (running) {
+                running = false;
+                onError.accept(ex);
+            }
+        }
+    }
+
+    private Object currentFileKey() throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            return attrs.fileKey();
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Legge i byte aggiunti dall'ultima lettura e invia al sink le righe complete.
+     */
+    private void readAppended() throws IOException {
+        Object key = currentFileKey();
+        if (key == null && !Files.exists(file)) return; // file rimosso: si attende il nuovo
+        long size = Files.size(file);
+        if (!Objects.equals(key, fileKey) || size < offset) {
+            // file sostituito o troncato: si riparte dall'inizio
+            fileKey = key;
+            offset = 0;
+            partial = new byte[0];
+        }
+        if (size == offset) return;
+
+        List<Transaction> rows = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ch.position(offset);
+            ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER);
+            while (ch.read(buf) > 0) {
+                buf.flip();
+                consume(buf, rows);
+                buf.clear();
+            }
+            offset = ch.position();
+        }
+        if (!rows.isEmpty()) sink.accept(rows);
+    }
+
+    /** Divide il buffer in righe, conservando l'ultima riga incompleta. */
+    private void consume(ByteBuffer buf, List<Transaction> rows) {
+        byte[] data = new byte[partial.length + buf.remaining()];
+        System.arraycopy(partial, 0, data, 0, partial.length);
+        buf.get(data, partial.length, data.length - partial.length);
+        int lineStart = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                int end = (i > lineStart && data[i - 1] == '\r') ? i - 1 : i;
+                parseLine(new String(data, lineStart, end - lineStart, StandardCharsets.UTF_8), rows);
+                lineStart = i + 1;
+            }
+        }
+        partial = new byte[data.length - lineStart];
+        System.arraycopy(data, lineStart, partial, 0, partial.length);
+    }
+
+    private void parseLine(String line, List<Transaction> rows) {
+        if (line.isBlank() || line.startsWith("Data,")) return; // riga vuota o intestazione
+        try {
+            Transaction t = FileUtil.parseCsvLine(line);
+            if (t != null) {
+                rows.add(t);
+            } else {
+                skippedLines++;
+            }
+        } catch (RuntimeException ex) {
+            skippedLines++;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package it.unimore.programmazioneoggetti.budget.util;
+
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Importazione tollerante di un file CSV nel formato di
+ * {@link FileUtil#saveAsCSV}. A differenza di {@link FileUtil#loadFromCSV},
+ * una riga non valida non interrompe il caricamento: viene registrata con
+ * numero di riga e motivo, e l'utente può decidere se accettare le sole
+ * righe valide.
+ * <p>
+ * Il file viene letto in sequenza e le righe sono convalidate a blocchi
+ * in parallelo sul {@link ForkJoinPool} comune; al più
+ * {@code 2 × parallelismo} blocchi restano in attesa, così la memoria non
+ * cresce con la dimensione del file. Degli errori si conservano solo i
+ * primi {@code maxErrors} (il conteggio totale resta esatto).
+ */
+public class CsvImporter {
+
+    /** Numero predefinito di errori conservati per il resoconto. */
+    public static final int DEFAULT_MAX_ERRORS = 1000;
+
+    /** Righe convalidate da un singolo task. */
+    private static final int BATCH_SIZE = 8192;
+
+    /** Lunghezza massima del testo della riga riportato in un errore. */
+    private static final int MAX_TEXT_LENGTH = 120;
+
+    private static final Metrics.Timer   IMPORT_CSV        = Metrics.timer("file.importCsv");
+    private static final Metrics.Counter IMPORT_CSV_ERRORS = Metrics.counter("file.importCsv.errors");
+
+    /** Riga scartata durante l'importazione. */
+    public static final class LineError {
+        private final long lineNumber;
+        private final String reason;
+        private final String text;
+
+        LineError(long lineNumber, String reason, String text) {
+            this.lineNumber = lineNumber;
+            this.reason = reason;
+            this.text = text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) + "…" : text;
+        }
+
+        /** @return numero della riga nel file (1 = intestazione) */
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        /** @return motivo dello scarto */
+        public String getReason() {
+            return reason;
+        }
+
+        /** @return testo della riga, eventualmente troncato */
+        public String getText() {
+            return text;
+        }
+    }
+
+    /** Esito di un'importazione. */
+    public static final class Result {
+        private final List<Transaction> valid;
+        private final List<LineError> errors;
+        private final long errorCount;
+
+        Result(List<Transaction> valid, List<LineError> errors, long errorCount) {
+            this.valid = valid;
+            this.errors = errors;
+            this.errorCount = errorCount;
+        }
+
+        /** @return le righe valide, nell'ordine del file */
+        public List<Transaction> getValid() {
+            return valid;
+        }
+
+        /** @return i primi errori trovati, in ordine di riga */
+        public List<LineError> getErrors() {
+            return errors;
+        }
+
+        /** @return numero totale di righe scartate */
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        /** @return {@code true} se alcuni errori non sono stati conservati */
+        public boolean isTruncated() {
+            return errorCount > errors.size();
+        }
+    }
+
+    private final int maxErrors;
+
+    /** Importatore che conserva fino a {@value #DEFAULT_MAX_ERRORS} errori. */
+    public CsvImporter() {
+        this(DEFAULT_MAX_ERRORS);
+    }
+
+    /**
+     * @param maxErrors numero massimo di errori conservati (non negativo)
+     * @throws IllegalArgumentException se {@code maxErrors} è negativo
+     */
+    public CsvImporter(int maxErrors) {
+        if (maxErrors < 0) throw new IllegalArgumentException("Il limite degli errori non può essere negativo");
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Importa un file CSV. La prima riga (intestazione) viene saltata; le
+     * righe vuote vengono ignorate.
+     *
+     * @param file file CSV di origine
+     * @return righe valide ed errori trovati
+     * @throws IOException se la lettura del file fallisce
+     */
+    public Result importFile(File file) throws IOException {
+        long start = Metrics.start();
+        LedgerEvents.Load event = new LedgerEvents.Load();
+        event.begin();
+
+        int maxPending = Math.max(2, 2 * ForkJoinPool.getCommonPoolParallelism());
+        Deque<ForkJoinTask<Batch>> pending = new ArrayDeque<>();
+        List<Transaction> valid = new ArrayList<>();
+        List<LineError> errors = new ArrayList<>();
+        long errorCount = 0;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            reader.readLine(); // intestazione
+            long lineNumber = 1;
+            List<String> lines = new ArrayList<>(BATCH_SIZE);
+            long firstLine = 2;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                lines.add(line);
+                if (lines.size() == BATCH_SIZE) {
+                    pending.add(submit(lines, firstLine));
+                    lines = new ArrayList<>(BATCH_SIZE);
+                    firstLine = lineNumber + 1;
+                    while (pending.size() >= maxPending) {
+                        errorCount += drain(pending.poll().join(), valid, errors);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) pending.add(submit(lines, firstLine));
+            while (!pending.isEmpty()) {
+                errorCount += drain(pending.poll().join(), valid, errors);
+            }
+        }
+
+        // righe aggiunte e rimosse dai salvataggi differenziali successivi
+        List<Transaction> rows = FileUtil.applyDelta(file, valid);
+
+        IMPORT_CSV.stop(start);
+        IMPORT_CSV_ERRORS.add(errorCount);
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = file.getAbsolutePath();
+            event.format = "CSV";
+            event.fileSize = file.length();
+            event.rowCount = rows.size();
+            event.commit();
+        }
+        return new Result(rows, Collections.unmodifiableList(errors), errorCount);
+    }
+
+    private ForkJoinTask<Batch> submit(List<String> lines, long firstLine) {
+        return ForkJoinPool.commonPool().submit(() -> validate(lines, firstLine));
+    }
+
+    /** Accoda il risultato di un blocco, rispettando il limite degli errori. */
+    private long drain(Batch batch, List<Transaction> valid, List<LineError> errors) {
+        valid.addAll(batch.rows);
+        for (LineError err : batch.errors) {
+            if (errors.size() >= maxErrors) break;
+            errors.add(err);
+        }
+        return batch.errorCount;
+    }
+
+    /** Convalida un blocco di righe consecutive. */
+    private Batch validate(List<String> lines, long firstLine) {
+        Batch batch = new Batch(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) continue;
+            String reason;
+            try {
+                Transaction t = FileUtil.parseCsvLine(line);
+                if (t != null) {
+                    batch.rows.add(t);
+                    continue;
+                }
+                reason = "Campi insufficienti (attesi 4)";
+            } catch (DateTimeParseException ex) {
+                reason = "Data non valida: " + ex.getParsedString();
+            } catch (NumberFormatException ex) {
+                reason = "Importo non valido";
+            } catch (IllegalArgumentException ex) {
+                reason = ex.getMessage();
+            }
+            batch.errorCount++;
+            if (batch.errors.size() < maxErrors) {
+                batch.errors.add(new LineError(firstLine + i, reason, line));
+            }
+        }
+        return batch;
+    }
+
+    /** Esito della convalida di un blocco. */
+    private static final class Batch {
+        final List<Transaction> rows;
+        final List<LineError> errors = new ArrayList<>();
+        long errorCount;
+
+        Batch(int size) {
+            rows = new ArrayList<>(size);
+        }
+    }
+}
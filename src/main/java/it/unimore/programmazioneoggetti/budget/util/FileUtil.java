@@ -1,76 +1,191 @@
 package it.unimore.programmazioneoggetti.budget.util;
 
+import it.unimore.programmazioneoggetti.budget.model.BudgetManager;
+import it.unimore.programmazioneoggetti.budget.model.ExchangeRates;
 import it.unimore.programmazioneoggetti.budget.model.Transaction;
 import it.unimore.programmazioneoggetti.budget.model.Income;
 import it.unimore.programmazioneoggetti.budget.model.Expense;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Classe di utilità per il salvataggio e il caricamento delle transazioni.
  * Supporta formati CSV e testo (tab-delimited).
+ * <p>
+ * Un file può avere accanto un file delle differenze ({@code <file>.delta})
+ * scritto da {@link #saveChanges(BudgetManager, File)}: contiene le righe
+ * aggiunte e rimosse dall'ultimo salvataggio completo, nel formato del file
+ * principale (CSV o tab-delimited), e viene applicato
+ * automaticamente dai metodi di caricamento. Un salvataggio completo o una
+ * compattazione ({@link #compact(File)}) lo elimina.
  */
 public class FileUtil {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
+    // Metriche di caricamento e salvataggio (vedi Metrics)
+    private static final Metrics.Timer   SAVE_CSV         = Metrics.timer("file.saveCsv");
+    private static final Metrics.Counter SAVE_CSV_ROWS    = Metrics.counter("file.saveCsv.rows");
+    private static final Metrics.Counter SAVE_CSV_BYTES   = Metrics.counter("file.saveCsv.bytes");
+    private static final Metrics.Timer   LOAD_CSV         = Metrics.timer("file.loadCsv");
+    private static final Metrics.Counter LOAD_CSV_ROWS    = Metrics.counter("file.loadCsv.rows");
+    private static final Metrics.Counter LOAD_CSV_BYTES   = Metrics.counter("file.loadCsv.bytes");
+    private static final Metrics.Counter LOAD_CSV_SKIPPED = Metrics.counter("file.loadCsv.skipped");
+    private static final Metrics.Timer   SAVE_TXT         = Metrics.timer("file.saveTxt");
+    private static final Metrics.Counter SAVE_TXT_ROWS    = Metrics.counter("file.saveTxt.rows");
+    private static final Metrics.Counter SAVE_TXT_BYTES   = Metrics.counter("file.saveTxt.bytes");
+    private static final Metrics.Timer   LOAD_TXT         = Metrics.timer("file.loadTxt");
+    private static final Metrics.Counter LOAD_TXT_ROWS    = Metrics.counter("file.loadTxt.rows");
+    private static final Metrics.Counter LOAD_TXT_BYTES   = Metrics.counter("file.loadTxt.bytes");
+    private static final Metrics.Counter LOAD_TXT_SKIPPED = Metrics.counter("file.loadTxt.skipped");
+    private static final Metrics.Timer   SAVE_DELTA       = Metrics.timer("file.saveDelta");
+    private static final Metrics.Counter SAVE_DELTA_ROWS  = Metrics.counter("file.saveDelta.rows");
+    private static final Metrics.Counter COMPACTIONS      = Metrics.counter("file.saveDelta.compactions");
+
+    /** Estensione del file delle differenze, aggiunta al nome del file principale. */
+    public static final String DELTA_SUFFIX = ".delta";
+
+    // Intestazione del file delle differenze, seguita da dimensione e data di modifica del file principale
+    private static final String DELTA_HEADER = "#delta";
+
+    // Codifica del file delle differenze, uguale in lettura e scrittura su ogni piattaforma
+    private static final Charset DELTA_CHARSET = StandardCharsets.UTF_8;
+
+    /** Sotto questa dimensione il file delle differenze non viene mai compattato. */
+    private static final long DELTA_MIN_COMPACT_BYTES = 64 * 1024;
+
+    /** Il file delle differenze viene compattato quando supera questa frazione del file principale. */
+    private static final int DELTA_MAX_FRACTION = 4;
+
+    // Stima della lunghezza di una riga delle differenze, per decidere prima di scrivere
+    private static final int DELTA_LINE_ESTIMATE = 64;
+
     /**
      * Esporta la lista di transazioni in formato CSV.
-     * Ogni riga contiene: data, descrizione (con eventuali virgolette scappate), importo, tipo.
+     * Ogni riga contiene: data, descrizione (con eventuali virgolette scappate), importo, tipo
+     * categoria (vuota se assente) e valuta. I lettori che conoscono solo i primi quattro
+     * campi ignorano gli ultimi due.
      *
      * @param transactions lista di {@link Transaction} da salvare
      * @param file         file di destinazione (estensione .csv consigliata)
      * @throws IOException se si verifica un errore di I/O
      */
     public static void saveAsCSV(List<Transaction> transactions, File file) throws IOException {
+        long start = Metrics.start();
+        LedgerEvents.Save event = new LedgerEvents.Save();
+        event.begin();
         try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            writer.println("Data,Descrizione,Ammontare,Tipo");
+            writer.println("Data,Descrizione,Ammontare,Tipo,Categoria,Valuta");
             for (Transaction t : transactions) {
-                String tipo = (t instanceof Income) ? "Income" : "Expense";
-                String descEscaped = t.getDescription().replace("\"", "\\\"");
-                writer.printf("%s,%s,%s,%s%n",
-                        t.getDate().format(DATE_FORMATTER),
-                        descEscaped,
-                        t.getAmount().toString(),
-                        tipo);
+                writer.println(formatCsvLine(t));
             }
         }
+        deleteDelta(file);
+        SAVE_CSV.stop(start);
+        SAVE_CSV_ROWS.add(transactions.size());
+        SAVE_CSV_BYTES.add(file.length());
+        commit(event, file, "CSV", transactions.size());
     }
 
     /**
-     * Carica le transazioni da un file CSV precedentemente salvato con {@code saveAsCSV}.
+     * Converte una transazione in una riga CSV nel formato di {@code saveAsCSV}.
+     */
+    private static String formatCsvLine(Transaction t) {
+        String tipo = (t instanceof Income) ? "Income" : "Expense";
+        String descEscaped = t.getDescription().replace("\"", "\\\"");
+        return t.getDate().format(DATE_FORMATTER) + ',' + descEscaped + ',' + t.getAmount().toString() + ','
+                + tipo + ',' + t.getCategory() + ',' + t.getCurrency();
+    }
+
+    /**
+     * Carica le transazioni da un file CSV precedentemente salvato con {@code saveAsCSV},
+     * applicando l'eventuale file delle differenze.
      *
      * @param file file CSV di origine
      * @return lista di {@link Transaction} lette dal file
      * @throws IOException se si verifica un errore di I/O
      */
     public static List<Transaction> loadFromCSV(File file) throws IOException {
+        long start = Metrics.start();
+        LedgerEvents.Load event = new LedgerEvents.Load();
+        event.begin();
         List<Transaction> list = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
             // salta l’intestazione
             String line = reader.readLine();
             while ((line = reader.readLine()) != null) {
-                String[] tokens = line.split(",");
-                if (tokens.length < 4) continue;
-                LocalDate date = LocalDate.parse(tokens[0], DATE_FORMATTER);
-                String desc = tokens[1].replace("\\\"", "\"");
-                BigDecimal amount = new BigDecimal(tokens[2]);
-                String tipo = tokens[3];
-                if ("Income".equals(tipo)) {
-                    list.add(new Income(date, desc, amount));
+                Transaction t = parseCsvLine(line);
+                if (t != null) {
+                    list.add(t);
                 } else {
-                    list.add(new Expense(date, desc, amount));
+                    LOAD_CSV_SKIPPED.increment();
                 }
             }
         }
+        list = applyDelta(file, list);
+        LOAD_CSV.stop(start);
+        LOAD_CSV_ROWS.add(list.size());
+        LOAD_CSV_BYTES.add(file.length());
+        commit(event, file, "CSV", list.size());
         return list;
     }
 
+    /**
+     * Completa e registra un evento JFR di caricamento o salvataggio.
+     */
+    private static void commit(LedgerEvents.FileEvent event, File file, String format, int rows) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = file.getAbsolutePath();
+            event.format = format;
+            event.fileSize = file.length();
+            event.rowCount = rows;
+            event.commit();
+        }
+    }
+
+    /**
+     * Converte una riga CSV (nel formato scritto da {@code saveAsCSV}) in una transazione.
+     *
+     * Il quinto campo (categoria) e il sesto (valuta) sono facoltativi, per leggere
+     * anche i file salvati prima della loro introduzione.
+     *
+     * @param line riga CSV senza terminatore
+     * @return la transazione letta, oppure null se la riga ha meno di quattro campi
+     * @throws java.time.format.DateTimeParseException se la data non è valida
+     * @throws NumberFormatException                  se l'importo non è valido
+     * @throws IllegalArgumentException               se i campi non formano una transazione valida
+     */
+    public static Transaction parseCsvLine(String line) {
+        String[] tokens = line.split(",");
+        if (tokens.length < 4) return null;
+        LocalDate date = LocalDate.parse(tokens[0], DATE_FORMATTER);
+        String desc = tokens[1].replace("\\\"", "\"");
+        BigDecimal amount = new BigDecimal(tokens[2]);
+        String tipo = tokens[3];
+        String category = (tokens.length > 4) ? tokens[4] : "";
+        String currency = (tokens.length > 5) ? tokens[5] : "";
+        if ("Income".equals(tipo)) {
+            return new Income(date, desc, amount, category, currency);
+        } else {
+            return new Expense(date, desc, amount, category, currency);
+        }
+    }
+
     /**
      * Esporta la lista di transazioni in formato testo (campi separati da tab).
      *
@@ -79,41 +194,408 @@ public class FileUtil {
      * @throws IOException se si verifica un errore di I/O
      */
     public static void saveAsText(List<Transaction> transactions, File file) throws IOException {
+        long start = Metrics.start();
+        LedgerEvents.Save event = new LedgerEvents.Save();
+        event.begin();
         try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
             for (Transaction t : transactions) {
-                String tipo = (t instanceof Income) ? "Income" : "Expense";
-                writer.printf("%s\t%s\t%s\t%s%n",
-                        t.getDate().format(DATE_FORMATTER),
-                        t.getDescription(),
-                        t.getAmount().toString(),
-                        tipo);
+                writer.println(formatTextLine(t));
             }
         }
+        deleteDelta(file);
+        SAVE_TXT.stop(start);
+        SAVE_TXT_ROWS.add(transactions.size());
+        SAVE_TXT_BYTES.add(file.length());
+        commit(event, file, "TXT", transactions.size());
     }
 
     /**
      * Carica le transazioni da un file di testo tab-delimited.
-     * Ogni riga deve contenere quattro campi: data, descrizione, importo, tipo.
+     * Ogni riga deve contenere quattro campi: data, descrizione, importo, tipo;
+     * il quinto (categoria) e il sesto (valuta) sono facoltativi. L'eventuale file
+     * delle differenze viene applicato.
      *
      * @param file file di origine (testo tab-delimited)
      * @return lista di {@link Transaction} lette dal file
      * @throws IOException se si verifica un errore di I/O
      */
     public static List<Transaction> loadFromText(File file) throws IOException {
+        long start = Metrics.start();
+        LedgerEvents.Load event = new LedgerEvents.Load();
+        event.begin();
         List<Transaction> list = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] tokens = line.split("\t");
-                if (tokens.length < 4) continue;
-                LocalDate date = LocalDate.parse(tokens[0], DATE_FORMATTER);
-                String desc = tokens[1];
-                BigDecimal amount = new BigDecimal(tokens[2]);
-                String tipo = tokens[3];
-                if ("Income".equals(tipo)) {
-                    list.add(new Income(date, desc, amount));
+                Transaction t = parseTextLine(line);
+                if (t != null) {
+                    list.add(t);
                 } else {
-                    list.add(new Expense(date, desc, amount));
+                    LOAD_TXT_SKIPPED.increment();
+                }
+            }
+        }
+        list = applyDelta(file, list);
+        LOAD_TXT.stop(start);
+        LOAD_TXT_ROWS.add(list.size());
+        LOAD_TXT_BYTES.add(file.length());
+        commit(event, file, "TXT", list.size());
+        return list;
+    }
+
+    /**
+     * Converte una transazione in una riga tab-delimited nel formato di {@code saveAsText}.
+     */
+    private static String formatTextLine(Transaction t) {
+        String tipo = (t instanceof Income) ? "Income" : "Expense";
+        return t.getDate().format(DATE_FORMATTER) + '\t' + t.getDescription() + '\t' + t.getAmount().toString()
+                + '\t' + tipo + '\t' + t.getCategory() + '\t' + t.getCurrency();
+    }
+
+    /**
+     * Converte una riga tab-delimited (nel formato scritto da {@code saveAsText})
+     * in una transazione.
+     *
+     * @param line riga senza terminatore
+     * @return la transazione letta, oppure null se la riga ha meno di quattro campi
+     * @throws java.time.format.DateTimeParseException se la data non è valida
+     * @throws NumberFormatException                  se l'importo non è valido
+     * @throws IllegalArgumentException               se i campi non formano una transazione valida
+     */
+    private static Transaction parseTextLine(String line) {
+        String[] tokens = line.split("\t");
+        if (tokens.length < 4) return null;
+        LocalDate date = LocalDate.parse(tokens[0], DATE_FORMATTER);
+        String desc = tokens[1];
+        BigDecimal amount = new BigDecimal(tokens[2]);
+        String tipo = tokens[3];
+        String category = (tokens.length > 4) ? tokens[4] : "";
+        String currency = (tokens.length > 5) ? tokens[5] : "";
+        if ("Income".equals(tipo)) {
+            return new Income(date, desc, amount, category, currency);
+        } else {
+            return new Expense(date, desc, amount, category, currency);
+        }
+    }
+
+    /**
+     * Salva un model sul file indicato scrivendo, quando possibile, solo le
+     * modifiche dall'ultimo salvataggio. Se il model è stato caricato da
+     * (o salvato l'ultima volta su) questo stesso file, le righe aggiunte e
+     * rimosse vengono accodate al file delle differenze; altrimenti, se il
+     * file principale è cambiato da allora, o se le
+     * differenze sono diventate troppe rispetto al file principale, il file
+     * viene riscritto per intero (CSV o testo secondo l'estensione) e le
+     * differenze eliminate.
+     * <p>
+     * Entrambi i file vengono scritti in un file temporaneo e poi rinominati
+     * atomicamente: un'interruzione lascia il salvataggio precedente intatto.
+     *
+     * @param model model da salvare
+     * @param file  file di destinazione
+     * @return {@code true} se sono state scritte solo le differenze
+     * @throws IOException se si verifica un errore di I/O
+     */
+    public static boolean saveChanges(BudgetManager model, File file) throws IOException {
+        File target = file.getAbsoluteFile();
+        // le differenze valgono solo sul file principale visto dall'ultimo markSaved:
+        // se è stato modificato da fuori (o gli sono state accodate righe) si riscrive tutto
+        List<BudgetManager.Change> changes = target.equals(model.getSavedFile()) && model.isSavedFileUnchanged()
+                ? model.getUnsavedChanges() : null;
+        File delta = deltaFile(target);
+        if (changes != null && target.isFile()) {
+            long current = isDeltaOf(delta, target) ? delta.length() : 0;
+            long projected = current + (long) changes.size() * DELTA_LINE_ESTIMATE;
+            if (projected <= Math.max(DELTA_MIN_COMPACT_BYTES, target.length() / DELTA_MAX_FRACTION)) {
+                if (!changes.isEmpty()) writeDelta(target, delta, current > 0, changes);
+                model.markSaved(target);
+                return true;
+            }
+            COMPACTIONS.increment();
+        }
+        saveAll(model, target);
+        return false;
+    }
+
+    /**
+     * Riscrive per intero il file indicato con le transazioni del model (CSV o
+     * testo secondo l'estensione) ed elimina l'eventuale file delle
+     * differenze, così il file resta leggibile da altri programmi. Il file
+     * viene scritto in un file temporaneo e poi rinominato atomicamente.
+     *
+     * @param model model da salvare
+     * @param file  file di destinazione
+     * @throws IOException se si verifica un errore di I/O
+     */
+    public static void saveAll(BudgetManager model, File file) throws IOException {
+        File target = file.getAbsoluteFile();
+        writeAll(model.getAllTransactions(), target);
+        model.markSaved(target);
+    }
+
+    /**
+     * Compatta un file: se ha accanto un file delle differenze valido, lo
+     * riscrive per intero con le differenze applicate ed elimina il file
+     * delle differenze, così torna leggibile da altri programmi. Va usato
+     * quando il file non deve più essere salvato a breve, ad esempio alla
+     * chiusura dell'applicazione.
+     *
+     * @param file file principale (CSV o testo secondo l'estensione)
+     * @return {@code true} se il file è stato riscritto
+     * @throws IOException se si verifica un errore di I/O
+     */
+    public static boolean compact(File file) throws IOException {
+        File target = file.getAbsoluteFile();
+        if (!target.isFile() || !isDeltaOf(deltaFile(target), target)) return false;
+        List<Transaction> rows = isText(target) ? loadFromText(target) : loadFromCSV(target);
+        writeAll(rows, target);
+        COMPACTIONS.increment();
+        return true;
+    }
+
+    /**
+     * Riscrive il file in un file temporaneo rinominato atomicamente ed elimina
+     * il file delle differenze, che non corrisponde più al file principale.
+     */
+    private static void writeAll(List<Transaction> rows, File target) throws IOException {
+        Path tmp = Files.createTempFile(target.getParentFile().toPath(), target.getName() + "-", ".tmp");
+        try {
+            if (isText(target)) {
+                saveAsText(rows, tmp.toFile());
+            } else {
+                saveAsCSV(rows, tmp.toFile());
+            }
+            GzipArchiveStore.moveAtomically(tmp, target.toPath());
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        deleteDelta(target);
+    }
+
+    /**
+     * @param file file principale
+     * @return il file delle differenze associato
+     */
+    public static File deltaFile(File file) {
+        return new File(file.getPath() + DELTA_SUFFIX);
+    }
+
+    private static boolean isText(File file) {
+        return file.getName().toLowerCase().endsWith(".txt");
+    }
+
+    private static void deleteDelta(File file) throws IOException {
+        Files.deleteIfExists(deltaFile(file).toPath());
+    }
+
+    private static String deltaHeader(File base) {
+        return DELTA_HEADER + ' ' + base.length() + ' ' + base.lastModified();
+    }
+
+    /**
+     * Il file delle differenze vale solo per il file principale su cui è stato
+     * scritto: dimensione e data di modifica devono coincidere con l'intestazione.
+     */
+    private static boolean isDeltaOf(File delta, File base) throws IOException {
+        if (!delta.isFile()) return false;
+        try (BufferedReader reader = Files.newBufferedReader(delta.toPath(), DELTA_CHARSET)) {
+            return deltaHeader(base).equals(reader.readLine());
+        }
+    }
+
+    /**
+     * Riscrive il file delle differenze (righe esistenti più le nuove) in un
+     * file temporaneo e lo rinomina atomicamente.
+     */
+    private static void writeDelta(File base, File delta, boolean keepExisting,
+                                   List<BudgetManager.Change> changes) throws IOException {
+        long start = Metrics.start();
+        Path tmp = Files.createTempFile(base.getParentFile().toPath(), delta.getName() + "-", ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, DELTA_CHARSET)) {
+                if (keepExisting) {
+                    try (BufferedReader reader = Files.newBufferedReader(delta.toPath(), DELTA_CHARSET)) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            writer.write(line);
+                            writer.newLine();
+                        }
+                    }
+                } else {
+                    writer.write(deltaHeader(base));
+                    writer.newLine();
+                }
+                // le righe sono nel formato del file principale: nei file di testo le
+                // descrizioni possono contenere virgole
+                boolean text = isText(base);
+                for (BudgetManager.Change c : changes) {
+                    writer.write(c.isAdded() ? '+' : '-');
+                    writer.write(text ? formatTextLine(c.getTransaction()) : formatCsvLine(c.getTransaction()));
+                    writer.newLine();
+                }
+            }
+            GzipArchiveStore.moveAtomically(tmp, delta.toPath());
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        SAVE_DELTA.stop(start);
+        SAVE_DELTA_ROWS.add(changes.size());
+    }
+
+    /**
+     * Applica alle righe lette da un file l'eventuale file delle differenze:
+     * le righe rimosse vengono tolte (la prima uguale, stessa categoria
+     * compresa) e quelle aggiunte accodate. Un file delle differenze che non
+     * corrisponde al file principale viene ignorato.
+     *
+     * @param file file principale
+     * @param rows righe lette dal file principale
+     * @return le righe aggiornate (la stessa lista se non ci sono differenze)
+     * @throws IOException se il file delle differenze non è leggibile o non è valido
+     */
+    public static List<Transaction> applyDelta(File file, List<Transaction> rows) throws IOException {
+        File delta = deltaFile(file);
+        if (!isDeltaOf(delta, file)) return rows;
+        List<Transaction> added = new ArrayList<>();
+        // posizioni in added delle righe aggiunte uguali, per annullarle in tempo costante
+        Map<Transaction, ArrayDeque<Integer>> addedAt = new HashMap<>();
+        Map<Transaction, List<String>> removed = new HashMap<>();
+        boolean text = isText(file);
+        try (BufferedReader reader = Files.newBufferedReader(delta.toPath(), DELTA_CHARSET)) {
+            reader.readLine(); // intestazione
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                Transaction t;
+                try {
+                    String body = line.substring(Math.min(1, line.length()));
+                    t = body.isEmpty() ? null : (text ? parseTextLine(body) : parseCsvLine(body));
+                } catch (DateTimeParseException | IllegalArgumentException ex) {
+                    t = null;
+                }
+                if (t == null || (line.charAt(0) != '+' && line.charAt(0) != '-')) {
+                    throw new IOException("Riga " + lineNumber + " non valida in " + delta.getName());
+                }
+                if (line.charAt(0) == '+') {
+                    addedAt.computeIfAbsent(t, k -> new ArrayDeque<>()).push(added.size());
+                    added.add(t);
+                } else if (!removeLast(added, addedAt.get(t), t)) {
+                    // rimozione di una riga del file principale
+                    removed.computeIfAbsent(t, k -> new ArrayList<>()).add(t.getCategory());
+                }
+            }
+        }
+        List<Transaction> result = new ArrayList<>(rows.size() + added.size());
+        for (Transaction t : rows) {
+            List<String> categories = removed.isEmpty() ? null : removed.get(t);
+            if (categories != null && categories.remove(t.getCategory())) {
+                if (categories.isEmpty()) removed.remove(t);
+                continue;
+            }
+            result.add(t);
+        }
+        for (Transaction t : added) {
+            if (t != null) result.add(t);
+        }
+        return result;
+    }
+
+    /**
+     * Annulla l'ultima riga aggiunta uguale a {@code t} (stessa categoria
+     * compresa), lasciando null al suo posto.
+     */
+    private static boolean removeLast(List<Transaction> added, ArrayDeque<Integer> positions, Transaction t) {
+        if (positions == null) return false;
+        for (Iterator<Integer> it = positions.iterator(); it.hasNext(); ) {
+            int i = it.next(); // dalla più recente
+            if (added.get(i).getCategory().equals(t.getCategory())) {
+                added.set(i, null);
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Carica una tabella di tassi di cambio da un file CSV locale.
+     * La prima riga indica la valuta di riferimento (es. {@code EUR}); ogni riga
+     * successiva contiene data, valuta e tasso, ad esempio
+     * {@code 02/01/2024,USD,0.9123}: da quella data 1 USD vale 0,9123 EUR.
+     * Le righe vuote o che iniziano con {@code #} sono ignorate.
+     *
+     * @param file file dei tassi
+     * @return la tabella dei tassi
+     * @throws IOException se si verifica un errore di I/O o una riga non è valida
+     */
+    public static ExchangeRates loadExchangeRates(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            if (line == null) throw new IOException("File dei tassi vuoto");
+            ExchangeRates rates;
+            try {
+                rates = new ExchangeRates(line.trim());
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Riga 1: " + ex.getMessage(), ex);
+            }
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] tokens = line.split(",");
+                if (tokens.length < 3) {
+                    throw new IOException("Riga " + lineNumber + ": attesi data, valuta e tasso");
+                }
+                try {
+                    rates.put(tokens[1], LocalDate.parse(tokens[0].trim(), DATE_FORMATTER),
+                            new BigDecimal(tokens[2].trim()));
+                } catch (DateTimeParseException | IllegalArgumentException ex) {
+                    throw new IOException("Riga " + lineNumber + ": " + ex.getMessage(), ex);
+                }
+            }
+            return rates;
+        }
+    }
+
+    /**
+     * Carica un estratto conto bancario da un file CSV, da riconciliare con
+     * le transazioni del bilancio. La prima riga (intestazione) viene saltata;
+     * ogni riga successiva è nel formato {@code data,descrizione,importo[,valuta]}
+     * con l'importo con segno (negativo per le uscite), oppure nel formato
+     * scritto da {@code saveAsCSV}. Le righe vuote sono ignorate.
+     *
+     * @param file file dell'estratto conto
+     * @return le righe dell'estratto come transazioni, nell'ordine del file
+     * @throws IOException se si verifica un errore di I/O o una riga non è valida
+     */
+    public static List<Transaction> loadStatement(File file) throws IOException {
+        List<Transaction> list = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                String[] tokens = line.split(",");
+                try {
+                    if (tokens.length >= 4 && ("Income".equals(tokens[3]) || "Expense".equals(tokens[3]))) {
+                        list.add(parseCsvLine(line));
+                        continue;
+                    }
+                    if (tokens.length < 3) {
+                        throw new IOException("Riga " + lineNumber + ": attesi data, descrizione e importo");
+                    }
+                    LocalDate date = LocalDate.parse(tokens[0].trim(), DATE_FORMATTER);
+                    String desc = tokens[1].trim();
+                    BigDecimal amount = new BigDecimal(tokens[2].trim());
+                    String currency = (tokens.length > 3) ? tokens[3] : "";
+                    list.add(amount.signum() < 0
+                            ? new Expense(date, desc, amount.negate(), "", currency)
+                            : new Income(date, desc, amount, "", currency));
+                } catch (DateTimeParseException | IllegalArgumentException ex) {
+                    throw new IOException("Riga " + lineNumber + ": " + ex.getMessage(), ex);
                 }
             }
         }
@@ -0,0 +1,175 @@
+package it.unimore.programmazioneoggetti.budget.util;
+
+import it.unimore.programmazioneoggetti.budget.model.ArchiveStore;
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+import it.unimore.programmazioneoggetti.budget.model.YearSummary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.math.BigDecimal;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link ArchiveStore} su file system: per ogni anno chiuso una cartella
+ * contiene un segmento compresso GZIP con le righe in formato binario
+ * ({@link TransactionCodec}) e un piccolo file di riepilogo. I file vengono
+ * scritti su un file temporaneo e poi rinominati, così un'interruzione non
+ * lascia mai segmenti incompleti; il riepilogo, scritto per ultimo, segna
+ * l'anno come archiviato.
+ */
+public class GzipArchiveStore implements ArchiveStore {
+
+    private static final int   SEGMENT_MAGIC = 0x42475347; // "BGSG"
+    private static final int   SUMMARY_MAGIC = 0x42475355; // "BGSU"
+    private static final short FORMAT_VERSION = 1;
+
+    private static final String SEGMENT_SUFFIX = ".seg.gz";
+    private static final String SUMMARY_SUFFIX = ".summary";
+
+    private final Path directory;
+    private final TreeMap<Integer, YearSummary> summaries = new TreeMap<>();
+
+    // ultimo segmento decompresso, rilasciabile dal GC in caso di memoria scarsa
+    private int lastYear;
+    private SoftReference<List<Transaction>> lastSegment = new SoftReference<>(null);
+
+    /**
+     * Apre (creandola se necessario) la cartella dell'archivio e ne legge i riepiloghi.
+     *
+     * @param directory cartella dell'archivio
+     * @throws IOException se la cartella non è accessibile o un riepilogo è corrotto
+     */
+    public GzipArchiveStore(File directory) throws IOException {
+        this.directory = directory.toPath();
+        Files.createDirectories(this.directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + SUMMARY_SUFFIX)) {
+            for (Path p : files) {
+                YearSummary s = readSummary(p);
+                summaries.put(s.getYear(), s);
+            }
+        }
+    }
+
+    /** @return la cartella dell'archivio */
+    public File getDirectory() {
+        return directory.toFile();
+    }
+
+    @Override
+    public synchronized List<YearSummary> getSummaries() {
+        return List.copyOf(summaries.values());
+    }
+
+    @Override
+    public synchronized boolean contains(int year) {
+        return summaries.containsKey(year);
+    }
+
+    @Override
+    public synchronized List<Transaction> readYear(int year) throws IOException {
+        YearSummary summary = summaries.get(year);
+        if (summary == null) throw new IllegalArgumentException("Anno non archiviato: " + year);
+        List<Transaction> cached = lastSegment.get();
+        if (cached != null && lastYear == year) return cached;
+
+        List<Transaction> rows = new ArrayList<>(summary.getCount());
+        try (InputStream raw = Files.newInputStream(segmentPath(year));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(raw)))) {
+            if (in.readInt() != SEGMENT_MAGIC || in.readShort() != FORMAT_VERSION || in.readInt() != year) {
+                throw new IOException("Segmento di archivio non valido: " + segmentPath(year));
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                rows.add(TransactionCodec.read(in));
+            }
+        }
+        List<Transaction> result = List.copyOf(rows);
+        lastYear = year;
+        lastSegment = new SoftReference<>(result);
+        return result;
+    }
+
+    @Override
+    public synchronized YearSummary writeYear(int year, List<Transaction> transactions) throws IOException {
+        if (summaries.containsKey(year)) {
+            throw new IllegalArgumentException("Anno già archiviato: " + year);
+        }
+        YearSummary summary = YearSummary.of(year, transactions);
+
+        Path segTmp = Files.createTempFile(directory, year + "-", SEGMENT_SUFFIX + ".tmp");
+        try (OutputStream raw = Files.newOutputStream(segTmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(raw)))) {
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeInt(year);
+            out.writeInt(transactions.size());
+            for (Transaction t : transactions) {
+                TransactionCodec.write(out, t);
+            }
+        }
+        moveAtomically(segTmp, segmentPath(year));
+
+        Path sumTmp = Files.createTempFile(directory, year + "-", SUMMARY_SUFFIX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sumTmp)))) {
+            out.writeInt(SUMMARY_MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeInt(year);
+            out.writeInt(summary.getCount());
+            out.writeUTF(summary.getTotalIncome().toString());
+            out.writeUTF(summary.getTotalExpense().toString());
+        }
+        moveAtomically(sumTmp, directory.resolve(year + SUMMARY_SUFFIX));
+
+        summaries.put(year, summary);
+        return summary;
+    }
+
+    private Path segmentPath(int year) {
+        return directory.resolve(year + SEGMENT_SUFFIX);
+    }
+
+    private static YearSummary readSummary(Path p) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+            if (in.readInt() != SUMMARY_MAGIC || in.readShort() != FORMAT_VERSION) {
+                throw new IOException("Riepilogo di archivio non valido: " + p);
+            }
+            int year = in.readInt();
+            int count = in.readInt();
+            BigDecimal income = new BigDecimal(in.readUTF());
+            BigDecimal expense = new BigDecimal(in.readUTF());
+            return new YearSummary(year, count, income, expense);
+        }
+    }
+
+    /**
+     * Rinomina il file temporaneo sulla destinazione, in modo atomico se il
+     * file system lo consente.
+     *
+     * @param source file temporaneo già completo
+     * @param target destinazione finale
+     * @throws IOException se lo spostamento fallisce
+     */
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
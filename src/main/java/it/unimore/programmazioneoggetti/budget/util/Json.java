@@ -0,0 +1,175 @@
+package it.unimore.programmazioneoggetti.budget.util;
+
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scrittura e lettura minimale di JSON per l'API locale, senza librerie
+ * esterne. Gli importi sono scritti come stringhe per non perdere
+ * precisione nei client che usano numeri in virgola mobile; le date sono
+ * in formato ISO (aaaa-MM-gg).
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Racchiude una stringa tra virgolette, con i caratteri speciali scappati.
+     *
+     * @param s testo da scrivere
+     * @return stringa JSON
+     */
+    public static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        appendQuoted(sb, s);
+        return sb.toString();
+    }
+
+    private static void appendQuoted(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Scrive una transazione come oggetto JSON.
+     *
+     * @param sb destinazione
+     * @param t  transazione
+     */
+    public static void appendTransaction(StringBuilder sb, Transaction t) {
+        sb.append("{\"date\":\"").append(t.getDate()).append("\",\"description\":");
+        appendQuoted(sb, t.getDescription());
+        sb.append(",\"amount\":\"").append(t.getAmount().toPlainString())
+                .append("\",\"type\":\"").append(t.getClass().getSimpleName())
+                .append("\",\"category\":");
+        appendQuoted(sb, t.getCategory());
+        sb.append(",\"currency\":\"").append(t.getCurrency()).append("\"}");
+    }
+
+    /**
+     * Scrive una lista di transazioni come array JSON.
+     *
+     * @param list transazioni
+     * @return array JSON
+     */
+    public static String transactions(List<Transaction> list) {
+        StringBuilder sb = new StringBuilder(list.size() * 80 + 2);
+        sb.append('[');
+        for (int i = 0; i < list.size(); i++) {
+            if (i > 0) sb.append(',');
+            appendTransaction(sb, list.get(i));
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Legge un oggetto JSON piatto: i valori possono essere stringhe,
+     * numeri, booleani o null, e vengono restituiti come testo.
+     *
+     * @param json testo JSON
+     * @return campi dell'oggetto, nell'ordine in cui compaiono
+     * @throws IllegalArgumentException se il testo non è un oggetto JSON piatto valido
+     */
+    public static Map<String, String> parseObject(String json) {
+        Parser p = new Parser(json);
+        Map<String, String> fields = new LinkedHashMap<>();
+        p.expect('{');
+        if (!p.consume('}')) {
+            do {
+                String key = p.string();
+                p.expect(':');
+                fields.put(key, p.value());
+            } while (p.consume(','));
+            p.expect('}');
+        }
+        p.skipSpaces();
+        if (p.pos != json.length()) throw new IllegalArgumentException("Contenuto dopo la fine dell'oggetto JSON");
+        return fields;
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int pos;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        boolean consume(char c) {
+            skipSpaces();
+            if (pos < s.length() && s.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) throw new IllegalArgumentException("Atteso '" + c + "' alla posizione " + pos);
+        }
+
+        String value() {
+            skipSpaces();
+            if (pos < s.length() && s.charAt(pos) == '"') return string();
+            int start = pos;
+            while (pos < s.length() && ",}] \t\r\n".indexOf(s.charAt(pos)) < 0) pos++;
+            if (start == pos) throw new IllegalArgumentException("Valore mancante alla posizione " + pos);
+            String literal = s.substring(start, pos);
+            return literal.equals("null") ? null : literal;
+        }
+
+        String string() {
+            skipSpaces();
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (pos >= s.length()) throw new IllegalArgumentException("Stringa JSON non terminata");
+                char c = s.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= s.length()) throw new IllegalArgumentException("Stringa JSON non terminata");
+                char e = s.charAt(pos++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > s.length()) throw new IllegalArgumentException("Escape \\u incompleto");
+                        sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: sb.append(e); // \" \\ \/
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package it.unimore.programmazioneoggetti.budget.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Eventi Java Flight Recorder delle operazioni sul bilancio. Ogni evento
+ * registra durata, numero di righe coinvolte e, per le operazioni su file,
+ * percorso e dimensione del file. Quando non è attiva una registrazione
+ * JFR il costo di un evento è trascurabile.
+ * <p>
+ * Uso tipico:
+ * <pre>
+ * LedgerEvents.Load event = new LedgerEvents.Load();
+ * event.begin();
+ * ... operazione ...
+ * event.rowCount = righe;
+ * event.commit();
+ * </pre>
+ */
+public final class LedgerEvents {
+
+    private LedgerEvents() {
+    }
+
+    /** Campi comuni a tutti gli eventi del bilancio. */
+    @Category("Gestione Bilancio")
+    @StackTrace(false)
+    public abstract static class LedgerEvent extends Event {
+        @Label("Righe")
+        @Description("Numero di transazioni coinvolte dall'operazione")
+        public long rowCount;
+    }
+
+    /** Operazioni su file: aggiunge percorso, formato e dimensione. */
+    public abstract static class FileEvent extends LedgerEvent {
+        @Label("File")
+        public String path;
+
+        @Label("Formato")
+        public String format;
+
+        @Label("Dimensione file")
+        @DataAmount
+        public long fileSize;
+    }
+
+    /** Caricamento di un file. */
+    @Name("it.unimore.budget.Load")
+    @Label("Caricamento file")
+    public static final class Load extends FileEvent {
+    }
+
+    /** Salvataggio o esportazione su file. */
+    @Name("it.unimore.budget.Save")
+    @Label("Salvataggio file")
+    public static final class Save extends FileEvent {
+    }
+
+    /** Ricerca per descrizione. */
+    @Name("it.unimore.budget.Search")
+    @Label("Ricerca")
+    public static final class Search extends LedgerEvent {
+        @Label("Testo cercato")
+        public String query;
+    }
+
+    /** Filtro per intervallo di date. */
+    @Name("it.unimore.budget.Filter")
+    @Label("Filtro per data")
+    public static final class Filter extends LedgerEvent {
+        @Label("Da")
+        public String from;
+
+        @Label("A")
+        public String to;
+    }
+
+    /** Modifica del bilancio (aggiunta, modifica, eliminazione, annulla/ripeti). */
+    @Name("it.unimore.budget.Edit")
+    @Label("Modifica")
+    public static final class Edit extends LedgerEvent {
+        @Label("Operazione")
+        public String operation;
+    }
+
+    /** Calcolo del saldo totale. */
+    @Name("it.unimore.budget.Balance")
+    @Label("Calcolo saldo")
+    public static final class Balance extends LedgerEvent {
+        @Label("Saldo")
+        public String balance;
+    }
+}
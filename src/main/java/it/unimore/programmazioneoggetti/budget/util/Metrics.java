@@ -0,0 +1,296 @@
+package it.unimore.programmazioneoggetti.budget.util;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Strumentazione leggera dei punti critici dell'applicazione: contatori,
+ * timer e istogrammi identificati per nome.
+ * <p>
+ * La raccolta è disattivata per default e si abilita con la proprietà di
+ * sistema {@code -Dbudget.metrics=true}, dal dialogo di diagnostica o via
+ * JMX. Da disattivata ogni chiamata si riduce alla lettura di un campo
+ * {@code volatile}: {@link #start()} non legge nemmeno l'orologio.
+ * <p>
+ * Per convenzione, i contatori {@code <timer>.rows} e {@code <timer>.bytes}
+ * associati a un timer vengono usati dal report per calcolare righe/s e byte/s.
+ */
+public final class Metrics {
+
+    private static volatile boolean enabled = Boolean.getBoolean("budget.metrics");
+
+    private static final Map<String, Counter>   COUNTERS   = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final Map<String, Timer>     TIMERS     = new ConcurrentHashMap<>();
+
+    /** Nome JMX con cui viene registrato l'MBean delle metriche. */
+    public static final String OBJECT_NAME = "it.unimore.programmazioneoggetti.budget:type=Metrics";
+
+    private Metrics() {
+    }
+
+    /** @return {@code true} se la raccolta delle metriche è attiva */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Attiva o disattiva la raccolta delle metriche.
+     *
+     * @param on {@code true} per attivarla
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * @param name nome del contatore
+     * @return il contatore con quel nome, creato se necessario
+     */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * @param name nome dell'istogramma
+     * @return l'istogramma con quel nome, creato se necessario
+     */
+    public static Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * @param name nome del timer
+     * @return il timer con quel nome, creato se necessario
+     */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, n -> new Timer());
+    }
+
+    /**
+     * Istante di inizio di una misura, da passare a {@link Timer#stop(long)}.
+     *
+     * @return {@code System.nanoTime()}, oppure 0 se le metriche sono disattivate
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /** Azzera tutte le metriche raccolte. */
+    public static void reset() {
+        COUNTERS.values().forEach(Counter::reset);
+        HISTOGRAMS.values().forEach(Histogram::reset);
+        TIMERS.values().forEach(t -> t.histogram.reset());
+    }
+
+    /** @return valori correnti dei contatori, ordinati per nome */
+    public static Map<String, Long> counterValues() {
+        Map<String, Long> result = new TreeMap<>();
+        COUNTERS.forEach((k, v) -> result.put(k, v.get()));
+        return result;
+    }
+
+    /** @return riepilogo testuale dei timer e degli istogrammi, ordinato per nome */
+    public static Map<String, String> summaries() {
+        Map<String, String> result = new TreeMap<>();
+        TIMERS.forEach((k, v) -> result.put(k, v.summary(k)));
+        HISTOGRAMS.forEach((k, v) -> result.put(k, v.summary()));
+        return result;
+    }
+
+    /**
+     * Report leggibile di tutte le metriche, usato dal dialogo di diagnostica.
+     *
+     * @return testo su più righe
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Metriche ").append(enabled ? "attive" : "disattivate").append('\n');
+        sb.append("\n-- Timer e istogrammi --\n");
+        summaries().forEach((k, v) -> sb.append(k).append(": ").append(v).append('\n'));
+        sb.append("\n-- Contatori --\n");
+        counterValues().forEach((k, v) -> sb.append(k).append(": ").append(v).append('\n'));
+        return sb.toString();
+    }
+
+    /**
+     * Registra l'MBean delle metriche nel server JMX della piattaforma.
+     * Le registrazioni successive alla prima vengono ignorate.
+     */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new MetricsMBeanImpl(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ex) {
+            // già registrato
+        } catch (JMException ex) {
+            throw new IllegalStateException("Impossibile registrare l'MBean delle metriche", ex);
+        }
+    }
+
+    /** Contatore monotono, sicuro per l'uso concorrente. */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        private Counter() {
+        }
+
+        /** Incrementa di uno, se le metriche sono attive. */
+        public void increment() {
+            if (enabled) value.increment();
+        }
+
+        /**
+         * Incrementa della quantità indicata, se le metriche sono attive.
+         *
+         * @param n quantità da aggiungere
+         */
+        public void add(long n) {
+            if (enabled) value.add(n);
+        }
+
+        /** @return il valore corrente */
+        public long get() {
+            return value.sum();
+        }
+
+        void reset() {
+            value.reset();
+        }
+    }
+
+    /**
+     * Istogramma di valori non negativi con bucket in potenze di due:
+     * percentili approssimati, memoria costante.
+     */
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Registra un valore, se le metriche sono attive.
+         *
+         * @param value valore da registrare (i negativi contano come 0)
+         */
+        public void record(long value) {
+            if (!enabled) return;
+            long v = Math.max(0, value);
+            buckets[64 - Long.numberOfLeadingZeros(v) - (v == 0 ? 0 : 1)].increment();
+            count.increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        /** @return numero di valori registrati */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /** @return somma dei valori registrati */
+        public long getSum() {
+            return sum.sum();
+        }
+
+        /** @return valore massimo registrato */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Percentile approssimato per eccesso (limite superiore del bucket).
+         *
+         * @param p percentile tra 0 e 1
+         * @return stima del percentile
+         */
+        public long percentile(double p) {
+            long total = count.sum();
+            if (total == 0) return 0;
+            long target = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= target) return Math.min(getMax(), i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+            }
+            return getMax();
+        }
+
+        String summary() {
+            long n = getCount();
+            return "n=" + n + ", media=" + (n == 0 ? 0 : getSum() / n)
+                    + ", p50=" + percentile(0.5) + ", p99=" + percentile(0.99) + ", max=" + getMax();
+        }
+
+        void reset() {
+            for (LongAdder b : buckets) b.reset();
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+    }
+
+    /** Timer basato su un istogramma delle durate in nanosecondi. */
+    public static final class Timer {
+        private final Histogram histogram = new Histogram();
+
+        private Timer() {
+        }
+
+        /**
+         * Registra la durata trascorsa da {@code start}.
+         *
+         * @param start valore restituito da {@link Metrics#start()}
+         */
+        public void stop(long start) {
+            if (enabled && start != 0L) histogram.record(System.nanoTime() - start);
+        }
+
+        /** @return numero di misure */
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        /** @return durata totale misurata, in nanosecondi */
+        public long getTotalNanos() {
+            return histogram.getSum();
+        }
+
+        String summary(String name) {
+            long n = getCount();
+            double totalMs = getTotalNanos() / 1e6;
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("n=%d, media=%.3f ms, p50=%.3f ms, p99=%.3f ms, max=%.3f ms",
+                    n, n == 0 ? 0.0 : totalMs / n, histogram.percentile(0.5) / 1e6,
+                    histogram.percentile(0.99) / 1e6, histogram.getMax() / 1e6));
+            double seconds = getTotalNanos() / 1e9;
+            Counter rows = COUNTERS.get(name + ".rows");
+            Counter bytes = COUNTERS.get(name + ".bytes");
+            if (seconds > 0 && rows != null) sb.append(String.format(", %.0f righe/s", rows.get() / seconds));
+            if (seconds > 0 && bytes != null) sb.append(String.format(", %.0f byte/s", bytes.get() / seconds));
+            return sb.toString();
+        }
+    }
+
+    /** Implementazione dell'MBean esposto via JMX. */
+    private static final class MetricsMBeanImpl implements MetricsMXBean {
+        @Override public boolean isEnabled()                  { return Metrics.isEnabled(); }
+        @Override public void setEnabled(boolean on)          { Metrics.setEnabled(on); }
+        @Override public Map<String, Long> getCounters()      { return counterValues(); }
+        @Override public Map<String, String> getTimers()      { return summaries(); }
+        @Override public void reset()                         { Metrics.reset(); }
+    }
+}
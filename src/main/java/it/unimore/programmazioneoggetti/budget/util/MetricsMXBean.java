@@ -0,0 +1,29 @@
+package it.unimore.programmazioneoggetti.budget.util;
+
+import java.util.Map;
+
+/**
+ * Interfaccia JMX delle metriche raccolte da {@link Metrics}, consultabile
+ * con JConsole o VisualVM.
+ */
+public interface MetricsMXBean {
+
+    /** @return {@code true} se la raccolta delle metriche è attiva */
+    boolean isEnabled();
+
+    /**
+     * Attiva o disattiva la raccolta delle metriche.
+     *
+     * @param on {@code true} per attivarla
+     */
+    void setEnabled(boolean on);
+
+    /** @return valori correnti dei contatori */
+    Map<String, Long> getCounters();
+
+    /** @return riepilogo di timer e istogrammi */
+    Map<String, String> getTimers();
+
+    /** Azzera tutte le metriche. */
+    void reset();
+}
@@ -0,0 +1,309 @@
+package it.unimore.programmazioneoggetti.budget.util;
+
+import it.unimore.programmazioneoggetti.budget.model.RecurringTemplate;
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+
+import java.awt.Rectangle;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Istantanea della sessione di lavoro, scritta alla chiusura e riletta
+ * all'avvio successivo: conti registrati, conto corrente e stato della
+ * finestra (posizione, ordinamento della tabella, campi di ricerca).
+ * <p>
+ * Le righe dei conti associati a un file sono già salvate dal registro e
+ * vengono memorizzate solo come percorso; i conti solo in memoria includono
+ * le righe, codificate con {@link TransactionCodec}. Le ricorrenze e i
+ * limiti di spesa, che i file dei conti non contengono, sono memorizzati per
+ * tutti i conti. Il formato è binario e non compresso per essere letto il più
+ * velocemente possibile; la scrittura passa da un file temporaneo rinominato
+ * in modo atomico, così un'interruzione non lascia un'istantanea a metà.
+ */
+public final class SessionSnapshot {
+
+    private static final int   MAGIC = 0x42475353; // "BGSS"
+    private static final short FORMAT_VERSION = 2; // 2: limiti di spesa dei conti
+
+    /** Proprietà di sistema che indica un file di sessione diverso da quello predefinito. */
+    public static final String FILE_PROPERTY = "budget.session";
+
+    /** Conto salvato nell'istantanea. */
+    public static final class Account {
+        private final String name;
+        private final File source;
+        private final List<Transaction> rows;
+        private final List<RecurringTemplate> templates;
+        private final File archiveDirectory;
+        private final Map<String, BigDecimal> limits;
+
+        /**
+         * @param name             nome del conto
+         * @param source           file di origine, oppure null per un conto solo in memoria
+         * @param rows             righe del conto (ignorate se {@code source} non è null)
+         * @param templates        ricorrenze del conto
+         * @param archiveDirectory cartella dell'archivio collegato, oppure null
+         * @param limits           limiti di spesa (chiave null = limite complessivo)
+         */
+        public Account(String name, File source, List<Transaction> rows,
+                       List<RecurringTemplate> templates, File archiveDirectory,
+                       Map<String, BigDecimal> limits) {
+            this.name = name;
+            this.source = source;
+            this.rows = (source == null) ? rows : List.of();
+            this.templates = templates;
+            this.archiveDirectory = archiveDirectory;
+            this.limits = limits;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** @return file di origine, oppure null per un conto solo in memoria */
+        public File getSource() {
+            return source;
+        }
+
+        public List<Transaction> getRows() {
+            return rows;
+        }
+
+        public List<RecurringTemplate> getTemplates() {
+            return templates;
+        }
+
+        /** @return cartella dell'archivio collegato, oppure null */
+        public File getArchiveDirectory() {
+            return archiveDirectory;
+        }
+
+        /** @return limiti di spesa: categoria -> limite, con chiave null per il limite complessivo */
+        public Map<String, BigDecimal> getLimits() {
+            return limits;
+        }
+    }
+
+    private final String currentAccount;
+    private final List<Account> accounts;
+    private final Rectangle bounds;
+    private final int sortColumn;
+    private final boolean ascending;
+    private final String searchText;
+    private final String fromText;
+    private final String toText;
+
+    /**
+     * @param currentAccount conto visualizzato
+     * @param accounts       conti registrati
+     * @param bounds         posizione e dimensioni della finestra
+     * @param sortColumn     colonna di ordinamento della tabella (-1 = nessuna)
+     * @param ascending      verso dell'ordinamento
+     * @param searchText     contenuto del campo di ricerca
+     * @param fromText       contenuto del campo “Da”
+     * @param toText         contenuto del campo “A”
+     */
+    public SessionSnapshot(String currentAccount, List<Account> accounts, Rectangle bounds,
+                           int sortColumn, boolean ascending,
+                           String searchText, String fromText, String toText) {
+        this.currentAccount = currentAccount;
+        this.accounts = accounts;
+        this.bounds = bounds;
+        this.sortColumn = sortColumn;
+        this.ascending = ascending;
+        this.searchText = searchText;
+        this.fromText = fromText;
+        this.toText = toText;
+    }
+
+    public String getCurrentAccount() {
+        return currentAccount;
+    }
+
+    public List<Account> getAccounts() {
+        return accounts;
+    }
+
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public String getSearchText() {
+        return searchText;
+    }
+
+    public String getFromText() {
+        return fromText;
+    }
+
+    public String getToText() {
+        return toText;
+    }
+
+    /**
+     * @return il file di sessione: quello indicato dalla proprietà
+     *         {@value #FILE_PROPERTY}, altrimenti {@code ~/.gestione-bilancio/session.bin}
+     */
+    public static File defaultFile() {
+        String path = System.getProperty(FILE_PROPERTY);
+        if (path != null && !path.isBlank()) return new File(path);
+        return new File(new File(System.getProperty("user.home"), ".gestione-bilancio"), "session.bin");
+    }
+
+    /**
+     * Scrive l'istantanea sul file indicato, creando la cartella se serve.
+     *
+     * @param file destinazione
+     * @throws IOException se la scrittura fallisce
+     */
+    public void write(File file) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), "session", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeShort(FORMAT_VERSION);
+                out.writeUTF(currentAccount);
+                out.writeInt(bounds.x);
+                out.writeInt(bounds.y);
+                out.writeInt(bounds.width);
+                out.writeInt(bounds.height);
+                out.writeInt(sortColumn);
+                out.writeBoolean(ascending);
+                out.writeUTF(searchText);
+                out.writeUTF(fromText);
+                out.writeUTF(toText);
+
+                out.writeInt(accounts.size());
+                for (Account a : accounts) {
+                    out.writeUTF(a.name);
+                    writeFile(out, a.source);
+                    writeFile(out, a.archiveDirectory);
+                    out.writeInt(a.rows.size());
+                    for (Transaction t : a.rows) {
+                        TransactionCodec.write(out, t);
+                    }
+                    out.writeInt(a.templates.size());
+                    for (RecurringTemplate r : a.templates) {
+                        writeTemplate(out, r);
+                    }
+                    out.writeInt(a.limits.size());
+                    for (Map.Entry<String, BigDecimal> e : a.limits.entrySet()) {
+                        out.writeBoolean(e.getKey() != null);
+                        if (e.getKey() != null) out.writeUTF(e.getKey());
+                        out.writeUTF(e.getValue().toPlainString());
+                    }
+                }
+            }
+            GzipArchiveStore.moveAtomically(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Legge un'istantanea.
+     *
+     * @param file file di sessione
+     * @return l'istantanea letta
+     * @throws IOException se il file non esiste, è danneggiato o di una versione sconosciuta
+     */
+    public static SessionSnapshot read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16))) {
+            short version = (in.readInt() == MAGIC) ? in.readShort() : -1;
+            if (version < 1 || version > FORMAT_VERSION) {
+                throw new IOException("Formato di sessione non riconosciuto: " + file);
+            }
+            String current = in.readUTF();
+            Rectangle bounds = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            int sortColumn = in.readInt();
+            boolean ascending = in.readBoolean();
+            String search = in.readUTF();
+            String from = in.readUTF();
+            String to = in.readUTF();
+
+            int count = in.readInt();
+            List<Account> accounts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                File source = readFile(in);
+                File archive = readFile(in);
+                int rowCount = in.readInt();
+                List<Transaction> rows = new ArrayList<>(rowCount);
+                for (int j = 0; j < rowCount; j++) {
+                    rows.add(TransactionCodec.read(in));
+                }
+                int templateCount = in.readInt();
+                List<RecurringTemplate> templates = new ArrayList<>(templateCount);
+                for (int j = 0; j < templateCount; j++) {
+                    templates.add(readTemplate(in));
+                }
+                // le sessioni della versione 1 non hanno limiti di spesa
+                int limitCount = (version >= 2) ? in.readInt() : 0;
+                Map<String, BigDecimal> limits = new LinkedHashMap<>();
+                for (int j = 0; j < limitCount; j++) {
+                    String category = in.readBoolean() ? in.readUTF() : null;
+                    limits.put(category, new BigDecimal(in.readUTF()));
+                }
+                accounts.add(new Account(name, source, rows, templates, archive, limits));
+            }
+            return new SessionSnapshot(current, accounts, bounds, sortColumn, ascending, search, from, to);
+        } catch (IllegalArgumentException | DateTimeException ex) {
+            throw new IOException("Sessione danneggiata: " + file, ex);
+        }
+    }
+
+    private static void writeFile(DataOutputStream out, File f) throws IOException {
+        out.writeBoolean(f != null);
+        if (f != null) out.writeUTF(f.getAbsolutePath());
+    }
+
+    private static File readFile(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new File(in.readUTF()) : null;
+    }
+
+    private static void writeTemplate(DataOutputStream out, RecurringTemplate r) throws IOException {
+        out.writeUTF(r.getDescription());
+        out.writeUTF(r.getAmount().toPlainString());
+        out.writeBoolean(r.isIncome());
+        out.writeUTF(r.getInterval().toString());
+        out.writeLong(r.getStart().toEpochDay());
+        out.writeBoolean(r.getEnd() != null);
+        if (r.getEnd() != null) out.writeLong(r.getEnd().toEpochDay());
+    }
+
+    private static RecurringTemplate readTemplate(DataInputStream in) throws IOException {
+        String description = in.readUTF();
+        BigDecimal amount = new BigDecimal(in.readUTF());
+        boolean income = in.readBoolean();
+        Period interval = Period.parse(in.readUTF());
+        LocalDate start = LocalDate.ofEpochDay(in.readLong());
+        LocalDate end = in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+        return new RecurringTemplate(description, amount, income, interval, start, end);
+    }
+}
@@ -0,0 +1,89 @@
+package it.unimore.programmazioneoggetti.budget.util;
+
+import it.unimore.programmazioneoggetti.budget.model.Expense;
+import it.unimore.programmazioneoggetti.budget.model.Income;
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+
+/**
+ * Codifica binaria compatta di una {@link Transaction}, usata dai formati
+ * interni dell'applicazione (archivi, snapshot). Ogni riga contiene: tipo
+ * (1 byte), giorno epoch (int), descrizione (UTF modificato) e importo
+ * come scala (int) più valore non scalato (lunghezza + byte). Se la
+ * transazione ha una categoria, il byte del tipo ha il bit
+ * {@code HAS_CATEGORY} acceso e la categoria (UTF) segue l'importo: i
+ * dati scritti prima dell'introduzione delle categorie restano leggibili.
+ * Allo stesso modo, una valuta diversa da {@link Transaction#DEFAULT_CURRENCY}
+ * accende il bit {@code HAS_CURRENCY} e il codice (UTF) segue la categoria.
+ */
+public final class TransactionCodec {
+
+    private static final byte INCOME  = 0;
+    private static final byte EXPENSE = 1;
+    private static final byte TYPE_MASK    = 0x0F;
+    private static final byte HAS_CATEGORY = 0x10;
+    private static final byte HAS_CURRENCY = 0x20;
+
+    private TransactionCodec() {
+    }
+
+    /**
+     * Scrive una transazione.
+     *
+     * @param out destinazione
+     * @param t   transazione da scrivere
+     * @throws IOException se la scrittura fallisce
+     */
+    public static void write(DataOutput out, Transaction t) throws IOException {
+        boolean hasCategory = !t.getCategory().isEmpty();
+        boolean hasCurrency = !Transaction.DEFAULT_CURRENCY.equals(t.getCurrency());
+        out.writeByte((t instanceof Income ? INCOME : EXPENSE)
+                | (hasCategory ? HAS_CATEGORY : 0) | (hasCurrency ? HAS_CURRENCY : 0));
+        out.writeInt(Math.toIntExact(t.getDate().toEpochDay()));
+        out.writeUTF(t.getDescription());
+        BigDecimal amount = t.getAmount();
+        out.writeInt(amount.scale());
+        byte[] unscaled = amount.unscaledValue().toByteArray();
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+        if (hasCategory) out.writeUTF(t.getCategory());
+        if (hasCurrency) out.writeUTF(t.getCurrency());
+    }
+
+    /**
+     * Legge una transazione scritta da {@link #write(DataOutput, Transaction)}.
+     *
+     * @param in sorgente
+     * @return la transazione letta
+     * @throws IOException se la lettura fallisce o i dati non sono validi
+     */
+    public static Transaction read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        LocalDate date = LocalDate.ofEpochDay(in.readInt());
+        String desc = in.readUTF();
+        int scale = in.readInt();
+        byte[] unscaled = new byte[in.readUnsignedShort()];
+        in.readFully(unscaled);
+        BigDecimal amount = new BigDecimal(new BigInteger(unscaled), scale);
+        String category = ((type & HAS_CATEGORY) != 0) ? in.readUTF() : "";
+        String currency = ((type & HAS_CURRENCY) != 0) ? in.readUTF() : Transaction.DEFAULT_CURRENCY;
+        try {
+            switch (type & TYPE_MASK) {
+                case INCOME:
+                    return new Income(date, desc, amount, category, currency);
+                case EXPENSE:
+                    return new Expense(date, desc, amount, category, currency);
+                default:
+                    throw new IOException("Tipo di transazione sconosciuto: " + type);
+            }
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Transazione non valida: " + ex.getMessage(), ex);
+        }
+    }
+}
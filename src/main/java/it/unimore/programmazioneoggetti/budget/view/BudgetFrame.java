@@ -1,12 +1,22 @@
 package it.unimore.programmazioneoggetti.budget.view;
 
+import it.unimore.programmazioneoggetti.budget.model.BudgetLimits;
+import it.unimore.programmazioneoggetti.budget.model.CashFlowForecaster.Forecast;
+import it.unimore.programmazioneoggetti.budget.model.DailySeries;
+import it.unimore.programmazioneoggetti.budget.model.Reconciler;
 import it.unimore.programmazioneoggetti.budget.model.Transaction;
+import it.unimore.programmazioneoggetti.budget.util.CsvImporter;
+import it.unimore.programmazioneoggetti.budget.util.Metrics;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.List;
 
 /**
@@ -16,15 +26,24 @@ import java.util.List;
  */
 public class BudgetFrame extends JFrame {
 
+    /** Costo di ogni repaint della tabella (vedi Metrics). */
+    private static final Metrics.Timer TABLE_PAINT = Metrics.timer("view.tablePaint");
+
     // TableModel personalizzato
     private final TransactionTableModel tableModel;
     private final JTable             table;
 
+    // Schede centrali: tabella e grafici
+    private final JTabbedPane tabs;
+    private final ChartPanel  chartPanel;
+
     // Campi del form (inserimento/modifica)
     private final JTextField      dateField;        // formato: dd/MM/yyyy
     private final JTextField      descriptionField;
     private final JTextField      amountField;      // formato: "1234.56"
+    private final JTextField      currencyField;    // codice ISO 4217, es. "EUR"
     private final JComboBox<String> typeCombo;     // "Income" o "Expense"
+    private final JComboBox<String> categoryCombo; // modificabile: categorie note o nuove
 
     // Pulsanti di azione principali
     private final JButton addButton;
@@ -33,6 +52,7 @@ public class BudgetFrame extends JFrame {
 
     // Label per saldo totale
     private final JLabel balanceLabel;
+    private final JLabel limitAlertLabel;
 
     // Campo di ricerca (descrizione)
     private final JTextField searchField;
@@ -41,6 +61,7 @@ public class BudgetFrame extends JFrame {
     // Nuovi campi per filtro “Da/A data”
     private final JTextField fromDateField;
     private final JTextField toDateField;
+    private final JComboBox<String> categoryFilterCombo; // "" = tutte le categorie
     private final JButton    filterDateButton;
 
     // Voci di Menu per Salva/Carica/Esporta
@@ -48,6 +69,34 @@ public class BudgetFrame extends JFrame {
     private final JMenuItem loadCsvItem;
     private final JMenuItem loadTxtItem;
     private final JMenuItem exportTxtItem;
+    private final JMenuItem mergeCsvItem;
+    private final JMenuItem followCsvItem;
+    private final JMenuItem stopFollowItem;
+
+    // Voci di menu per Annulla/Ripeti
+    private final JMenuItem undoItem;
+    private final JMenuItem redoItem;
+
+    // Voci di menu per le transazioni ricorrenti
+    private final JMenuItem addRecurringItem;
+    private final JMenuItem removeRecurringItem;
+
+    // Menu “Strumenti”
+    private final JMenuItem forecastItem;
+    private final JMenuItem loadRatesItem;
+    private final JMenuItem reconcileItem;
+    private final JMenuItem spendingLimitsItem;
+    private final JMenuItem attachArchiveItem;
+    private final JMenuItem closeYearItem;
+    private final JMenuItem startRecordingItem;
+    private final JMenuItem dumpRecordingItem;
+    private final JMenuItem startApiItem;
+    private final JMenuItem stopApiItem;
+
+    // Menu “Conti” e selettore del conto corrente
+    private final JMenuItem addAccountItem;
+    private final JMenuItem totalBalanceItem;
+    private final JComboBox<String> accountCombo;
 
     public BudgetFrame() {
         super("Gestione Bilancio - Programmazione a Oggetti (UNIMORE)");
@@ -66,7 +115,75 @@ public class BudgetFrame extends JFrame {
         fileMenu.add(loadTxtItem);
         fileMenu.add(exportTxtItem);
 
+        mergeCsvItem = new JMenuItem("Unisci CSV...");
+        fileMenu.add(mergeCsvItem);
+
+        followCsvItem  = new JMenuItem("Segui CSV...");
+        stopFollowItem = new JMenuItem("Interrompi inseguimento");
+        stopFollowItem.setEnabled(false);
+        fileMenu.addSeparator();
+        fileMenu.add(followCsvItem);
+        fileMenu.add(stopFollowItem);
+
         menuBar.add(fileMenu);
+
+        JMenu editMenu = new JMenu("Modifica");
+        undoItem = new JMenuItem("Annulla");
+        redoItem = new JMenuItem("Ripeti");
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut));
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut));
+        undoItem.setEnabled(false);
+        redoItem.setEnabled(false);
+        editMenu.add(undoItem);
+        editMenu.add(redoItem);
+        menuBar.add(editMenu);
+
+        JMenu recurringMenu = new JMenu("Ricorrenze");
+        addRecurringItem    = new JMenuItem("Nuova ricorrenza dal form...");
+        removeRecurringItem = new JMenuItem("Elimina ricorrenza...");
+        recurringMenu.add(addRecurringItem);
+        recurringMenu.add(removeRecurringItem);
+        menuBar.add(recurringMenu);
+
+        JMenu accountMenu = new JMenu("Conti");
+        addAccountItem   = new JMenuItem("Aggiungi conto...");
+        totalBalanceItem = new JMenuItem("Saldo complessivo");
+        accountMenu.add(addAccountItem);
+        accountMenu.add(totalBalanceItem);
+        menuBar.add(accountMenu);
+
+        JMenu toolsMenu = new JMenu("Strumenti");
+        forecastItem = new JMenuItem("Previsione saldo...");
+        toolsMenu.add(forecastItem);
+        loadRatesItem = new JMenuItem("Carica tassi di cambio...");
+        toolsMenu.add(loadRatesItem);
+        reconcileItem = new JMenuItem("Riconcilia estratto conto...");
+        toolsMenu.add(reconcileItem);
+        spendingLimitsItem = new JMenuItem("Limiti di spesa...");
+        toolsMenu.add(spendingLimitsItem);
+        attachArchiveItem = new JMenuItem("Collega archivio...");
+        closeYearItem     = new JMenuItem("Archivia anno chiuso...");
+        toolsMenu.addSeparator();
+        toolsMenu.add(attachArchiveItem);
+        toolsMenu.add(closeYearItem);
+        JMenuItem diagnosticsItem = new JMenuItem("Diagnostica...");
+        diagnosticsItem.addActionListener(e -> new DiagnosticsDialog(this).setVisible(true));
+        startRecordingItem = new JMenuItem("Avvia registrazione JFR");
+        dumpRecordingItem  = new JMenuItem("Salva registrazione JFR...");
+        dumpRecordingItem.setEnabled(false);
+        toolsMenu.addSeparator();
+        toolsMenu.add(diagnosticsItem);
+        toolsMenu.add(startRecordingItem);
+        toolsMenu.add(dumpRecordingItem);
+        startApiItem = new JMenuItem("Avvia API locale...");
+        stopApiItem  = new JMenuItem("Ferma API locale");
+        stopApiItem.setEnabled(false);
+        toolsMenu.addSeparator();
+        toolsMenu.add(startApiItem);
+        toolsMenu.add(stopApiItem);
+        menuBar.add(toolsMenu);
+
         setJMenuBar(menuBar);
         // -----------------------------------------
 
@@ -79,9 +196,32 @@ public class BudgetFrame extends JFrame {
         // 1) CREAZIONE DELLA TABELLA
         // -------------------------------
         tableModel = new TransactionTableModel();
-        table      = new JTable(tableModel);
+        table      = new JTable(tableModel) {
+            @Override
+            protected void paintComponent(Graphics g) {
+                long start = Metrics.start();
+                super.paintComponent(g);
+                TABLE_PAINT.stop(start);
+            }
+        };
+        // Click sull'intestazione: ordina per quella colonna (di nuovo per invertire il verso)
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    tableModel.toggleSort(table.convertColumnIndexToModel(column));
+                }
+            }
+        });
         JScrollPane scrollPane = new JScrollPane(table);
-        add(scrollPane, BorderLayout.CENTER);
+
+        // Schede: tabella dei movimenti e grafici (aggiornati solo quando visibili)
+        chartPanel = new ChartPanel();
+        tabs = new JTabbedPane();
+        tabs.addTab("Movimenti", scrollPane);
+        tabs.addTab("Grafici", chartPanel);
+        add(tabs, BorderLayout.CENTER);
 
         // -------------------------------
         // 2) CREAZIONE DEL FORM IN ALTO
@@ -115,6 +255,11 @@ public class BudgetFrame extends JFrame {
         gbc.gridx = 1;
         amountField = new JTextField(10);
         formPanel.add(amountField, gbc);
+        // Valuta dell'importo alla destra del campo
+        gbc.gridx = 2;
+        currencyField = new JTextField(Transaction.DEFAULT_CURRENCY, 4);
+        currencyField.setToolTipText("Valuta (codice di tre lettere, es. EUR, USD)");
+        formPanel.add(currencyField, gbc);
 
         // RIGA 3: Tipo
         gbc.gridx = 0;
@@ -124,9 +269,18 @@ public class BudgetFrame extends JFrame {
         typeCombo = new JComboBox<>(new String[]{"Income", "Expense"});
         formPanel.add(typeCombo, gbc);
 
-        // RIGA 4: Cerca (descrizione)
+        // RIGA 4: Categoria
         gbc.gridx = 0;
         gbc.gridy = 4;
+        formPanel.add(new JLabel("Categoria:"), gbc);
+        gbc.gridx = 1;
+        categoryCombo = new JComboBox<>();
+        categoryCombo.setEditable(true);
+        formPanel.add(categoryCombo, gbc);
+
+        // RIGA 5: Cerca (descrizione)
+        gbc.gridx = 0;
+        gbc.gridy = 5;
         formPanel.add(new JLabel("Cerca (descrizione):"), gbc);
         gbc.gridx = 1;
         searchField = new JTextField(15);
@@ -135,17 +289,17 @@ public class BudgetFrame extends JFrame {
         searchButton = new JButton("Cerca");
         formPanel.add(searchButton, gbc);
 
-        // RIGA 5: “Da data”
+        // RIGA 6: “Da data”
         gbc.gridx = 0;
-        gbc.gridy = 5;
+        gbc.gridy = 6;
         formPanel.add(new JLabel("Da data (gg/MM/aaaa):"), gbc);
         gbc.gridx = 1;
         fromDateField = new JTextField(10);
         formPanel.add(fromDateField, gbc);
 
-        // RIGA 6: “A data”
+        // RIGA 7: “A data”
         gbc.gridx = 0;
-        gbc.gridy = 6;
+        gbc.gridy = 7;
         formPanel.add(new JLabel("A data (gg/MM/aaaa):"), gbc);
         gbc.gridx = 1;
         toDateField = new JTextField(10);
@@ -156,6 +310,14 @@ public class BudgetFrame extends JFrame {
         filterDateButton = new JButton("Filtra");
         formPanel.add(filterDateButton, gbc);
 
+        // RIGA 8: filtro per categoria (usato da “Cerca” e “Filtra”)
+        gbc.gridx = 0;
+        gbc.gridy = 8;
+        formPanel.add(new JLabel("Filtra categoria:"), gbc);
+        gbc.gridx = 1;
+        categoryFilterCombo = new JComboBox<>(new String[]{""});
+        formPanel.add(categoryFilterCombo, gbc);
+
         add(formPanel, BorderLayout.NORTH);
 
         // -------------------------------
@@ -170,15 +332,51 @@ public class BudgetFrame extends JFrame {
         buttonPanel.add(editButton);
         buttonPanel.add(deleteButton);
 
+        // Selettore del conto corrente
+        accountCombo = new JComboBox<>();
+        buttonPanel.add(Box.createHorizontalStrut(20));
+        buttonPanel.add(new JLabel("Conto:"));
+        buttonPanel.add(accountCombo);
+
         // Etichetta per saldo totale
         balanceLabel = new JLabel("Saldo: 0.00");
         balanceLabel.setFont(balanceLabel.getFont().deriveFont(Font.BOLD, 14f));
         buttonPanel.add(Box.createHorizontalStrut(20));
         buttonPanel.add(balanceLabel);
 
+        // Avvisi dei limiti di spesa superati (nascosta se non ce ne sono)
+        limitAlertLabel = new JLabel();
+        limitAlertLabel.setForeground(new Color(0xc0, 0x39, 0x2b));
+        limitAlertLabel.setFont(limitAlertLabel.getFont().deriveFont(Font.BOLD));
+        limitAlertLabel.setVisible(false);
+        buttonPanel.add(Box.createHorizontalStrut(20));
+        buttonPanel.add(limitAlertLabel);
+
         add(buttonPanel, BorderLayout.SOUTH);
     }
 
+    /** @return {@code true} se è visibile la scheda dei grafici */
+    public boolean isChartsTabSelected() {
+        return tabs.getSelectedComponent() == chartPanel;
+    }
+
+    /**
+     * Registra il listener chiamato quando cambia la scheda visibile.
+     */
+    public void addTabChangeListener(ChangeListener listener) {
+        tabs.addChangeListener(listener);
+    }
+
+    /**
+     * Aggiorna i grafici con una nuova serie giornaliera.
+     *
+     * @param series  entrate e uscite aggregate per giorno
+     * @param opening saldo precedente al primo giorno della serie
+     */
+    public void setChartData(DailySeries series, double opening) {
+        chartPanel.setSeries(series, opening);
+    }
+
     /**
      * Inizializza i campi del form con valori di default (es. data odierna).
      *
@@ -192,6 +390,8 @@ public class BudgetFrame extends JFrame {
         descriptionField.setText(description);
         amountField.setText(amount);
         typeCombo.setSelectedItem(type);
+        categoryCombo.setSelectedItem("");
+        currencyField.setText(Transaction.DEFAULT_CURRENCY);
     }
 
     /**
@@ -213,6 +413,52 @@ public class BudgetFrame extends JFrame {
         return (String) typeCombo.getSelectedItem();
     }
 
+    /** @return la categoria scritta o scelta nel form (vuota se assente) */
+    public String getCategoryFieldText() {
+        Object item = categoryCombo.getEditor().getItem();
+        return (item == null) ? "" : item.toString().trim();
+    }
+
+    public void setCategoryFieldText(String category) {
+        categoryCombo.setSelectedItem(category);
+    }
+
+    /** @return il codice valuta scritto nel form (vuoto = valuta predefinita) */
+    public String getCurrencyFieldText() {
+        return currencyField.getText().trim();
+    }
+
+    public void setCurrencyFieldText(String currency) {
+        currencyField.setText(currency);
+    }
+
+    /** @return la categoria scelta nel filtro (vuota = tutte) */
+    public String getCategoryFilter() {
+        Object item = categoryFilterCombo.getSelectedItem();
+        return (item == null) ? "" : item.toString();
+    }
+
+    /**
+     * Aggiorna l'elenco delle categorie proposte nel form e nel filtro,
+     * mantenendo le scelte correnti.
+     *
+     * @param categories categorie note, in ordine di visualizzazione
+     */
+    public void setCategories(List<String> categories) {
+        Object typed = categoryCombo.getEditor().getItem();
+        Object filter = categoryFilterCombo.getSelectedItem();
+        categoryCombo.removeAllItems();
+        categoryFilterCombo.removeAllItems();
+        categoryCombo.addItem("");
+        categoryFilterCombo.addItem("");
+        for (String c : categories) {
+            categoryCombo.addItem(c);
+            categoryFilterCombo.addItem(c);
+        }
+        categoryCombo.setSelectedItem(typed);
+        categoryFilterCombo.setSelectedItem(filter);
+    }
+
     /**
      * Pulisce completamente il form (campi vuoti).
      */
@@ -221,6 +467,8 @@ public class BudgetFrame extends JFrame {
         descriptionField.setText("");
         amountField.setText("");
         typeCombo.setSelectedIndex(0);
+        categoryCombo.setSelectedItem("");
+        currencyField.setText(Transaction.DEFAULT_CURRENCY);
     }
 
     /**
@@ -232,6 +480,15 @@ public class BudgetFrame extends JFrame {
         tableModel.setTransactions(transactions);
     }
 
+    /**
+     * Aggiunge in coda alla JTable nuove transazioni, senza ricaricare le altre.
+     *
+     * @param transactions lista di {@link Transaction} da aggiungere
+     */
+    public void appendToTable(List<Transaction> transactions) {
+        tableModel.appendTransactions(transactions);
+    }
+
     /**
      * Ritorna l'indice di riga selezionato nella tabella.
      */
@@ -258,6 +515,29 @@ public class BudgetFrame extends JFrame {
         balanceLabel.setText(text);
     }
 
+    /**
+     * Mostra gli avvisi dei limiti di spesa superati accanto al saldo: il
+     * primo nel testo, tutti nel suggerimento. Con una lista vuota
+     * l'etichetta viene nascosta.
+     *
+     * @param alerts avvisi da mostrare
+     */
+    public void showLimitAlerts(List<BudgetLimits.Alert> alerts) {
+        if (alerts.isEmpty()) {
+            limitAlertLabel.setVisible(false);
+            return;
+        }
+        String text = "\u26a0 " + alerts.get(0);
+        if (alerts.size() > 1) text += " (+" + (alerts.size() - 1) + ")";
+        StringBuilder tip = new StringBuilder("<html>");
+        for (BudgetLimits.Alert a : alerts) {
+            tip.append(a).append("<br>");
+        }
+        limitAlertLabel.setText(text);
+        limitAlertLabel.setToolTipText(tip.append("</html>").toString());
+        limitAlertLabel.setVisible(true);
+    }
+
     // Metodi per registrare gli ActionListener (controller)
 
     public void addAddButtonListener(java.awt.event.ActionListener listener) {
@@ -292,6 +572,35 @@ public class BudgetFrame extends JFrame {
         return toDateField.getText();
     }
 
+    /**
+     * Ripristina i campi di ricerca e di filtro per data (es. da una sessione salvata).
+     */
+    public void setSearchFields(String search, String from, String to) {
+        searchField.setText(search);
+        fromDateField.setText(from);
+        toDateField.setText(to);
+    }
+
+    /** @return colonna di ordinamento della tabella, oppure -1 se non ordinata */
+    public int getSortColumn() {
+        return tableModel.getSortColumn();
+    }
+
+    /** @return {@code true} se l'ordinamento della tabella è crescente */
+    public boolean isSortAscending() {
+        return tableModel.isAscending();
+    }
+
+    /**
+     * Ordina la tabella in base alla colonna e al verso indicati.
+     *
+     * @param column    indice di colonna (valori fuori intervallo vengono ignorati)
+     * @param ascending {@code true} per ordine crescente
+     */
+    public void sortTable(int column, boolean ascending) {
+        tableModel.sortBy(column, ascending);
+    }
+
     /**
      * Registra l'ActionListener della voce di menu “Salva CSV”.
      */
@@ -319,4 +628,290 @@ public class BudgetFrame extends JFrame {
     public void addExportTxtMenuListener(ActionListener listener) {
         exportTxtItem.addActionListener(listener);
     }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Unisci CSV...”.
+     */
+    public void addMergeCsvMenuListener(ActionListener listener) {
+        mergeCsvItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Segui CSV...”.
+     */
+    public void addFollowCsvMenuListener(ActionListener listener) {
+        followCsvItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Interrompi inseguimento”.
+     */
+    public void addStopFollowMenuListener(ActionListener listener) {
+        stopFollowItem.addActionListener(listener);
+    }
+
+    /**
+     * Aggiorna lo stato delle voci di menu dell'inseguimento CSV.
+     *
+     * @param following {@code true} se un file è attualmente seguito
+     */
+    public void setFollowing(boolean following) {
+        followCsvItem.setEnabled(!following);
+        stopFollowItem.setEnabled(following);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Annulla”.
+     */
+    public void addUndoMenuListener(ActionListener listener) {
+        undoItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Ripeti”.
+     */
+    public void addRedoMenuListener(ActionListener listener) {
+        redoItem.addActionListener(listener);
+    }
+
+    /**
+     * Abilita o disabilita le voci “Annulla” e “Ripeti”.
+     *
+     * @param canUndo {@code true} se esiste un'operazione da annullare
+     * @param canRedo {@code true} se esiste un'operazione da ripetere
+     */
+    public void setUndoRedoEnabled(boolean canUndo, boolean canRedo) {
+        undoItem.setEnabled(canUndo);
+        redoItem.setEnabled(canRedo);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Nuova ricorrenza dal form...”.
+     */
+    public void addAddRecurringMenuListener(ActionListener listener) {
+        addRecurringItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Elimina ricorrenza...”.
+     */
+    public void addRemoveRecurringMenuListener(ActionListener listener) {
+        removeRecurringItem.addActionListener(listener);
+    }
+
+    /**
+     * Chiede all'utente la periodicità e l'eventuale data di fine di una
+     * nuova ricorrenza.
+     *
+     * @param intervals etichette delle periodicità selezionabili
+     * @return array {periodicità scelta, data di fine (eventualmente vuota)},
+     *         oppure null se l'utente annulla
+     */
+    public String[] showRecurrenceDialog(String[] intervals) {
+        JComboBox<String> intervalCombo = new JComboBox<>(intervals);
+        JTextField endField = new JTextField(10);
+        JPanel panel = new JPanel(new GridLayout(2, 2, 5, 5));
+        panel.add(new JLabel("Periodicità:"));
+        panel.add(intervalCombo);
+        panel.add(new JLabel("Fine (gg/MM/aaaa, opzionale):"));
+        panel.add(endField);
+        int response = JOptionPane.showConfirmDialog(this, panel, "Nuova ricorrenza",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (response != JOptionPane.OK_OPTION) return null;
+        return new String[]{(String) intervalCombo.getSelectedItem(), endField.getText().trim()};
+    }
+
+    /**
+     * Chiede all'utente un limite di spesa mensile da impostare o rimuovere.
+     *
+     * @param categories categorie selezionabili (la voce vuota è il limite complessivo)
+     * @param current    descrizione dei limiti attuali
+     * @return array {categoria (vuota = complessivo), limite (vuoto = rimuovi)},
+     *         oppure null se l'utente annulla
+     */
+    public String[] showSpendingLimitDialog(List<String> categories, String current) {
+        JComboBox<String> categoryBox = new JComboBox<>();
+        categoryBox.addItem("");
+        for (String c : categories) {
+            categoryBox.addItem(c);
+        }
+        categoryBox.setEditable(true);
+        JTextField limitField = new JTextField(10);
+        JPanel fields = new JPanel(new GridLayout(2, 2, 5, 5));
+        fields.add(new JLabel("Categoria (vuota = totale):"));
+        fields.add(categoryBox);
+        fields.add(new JLabel("Limite mensile (vuoto = nessuno):"));
+        fields.add(limitField);
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.add(new JLabel(current), BorderLayout.NORTH);
+        panel.add(fields, BorderLayout.CENTER);
+        int response = JOptionPane.showConfirmDialog(this, panel, "Limiti di spesa",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (response != JOptionPane.OK_OPTION) return null;
+        Object category = categoryBox.getSelectedItem();
+        return new String[]{(category == null) ? "" : category.toString().trim(), limitField.getText().trim()};
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Limiti di spesa...”.
+     */
+    public void addSpendingLimitsMenuListener(ActionListener listener) {
+        spendingLimitsItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Previsione saldo...”.
+     */
+    public void addForecastMenuListener(ActionListener listener) {
+        forecastItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Collega archivio...”.
+     */
+    public void addAttachArchiveMenuListener(ActionListener listener) {
+        attachArchiveItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Archivia anno chiuso...”.
+     */
+    public void addCloseYearMenuListener(ActionListener listener) {
+        closeYearItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Avvia registrazione JFR”.
+     */
+    public void addStartRecordingMenuListener(ActionListener listener) {
+        startRecordingItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Salva registrazione JFR...”.
+     */
+    public void addDumpRecordingMenuListener(ActionListener listener) {
+        dumpRecordingItem.addActionListener(listener);
+    }
+
+    /**
+     * Aggiorna lo stato delle voci di menu della registrazione JFR.
+     *
+     * @param recording {@code true} se una registrazione è in corso
+     */
+    public void setRecording(boolean recording) {
+        startRecordingItem.setEnabled(!recording);
+        dumpRecordingItem.setEnabled(recording);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Avvia API locale...”.
+     */
+    public void addStartApiMenuListener(ActionListener listener) {
+        startApiItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Ferma API locale”.
+     */
+    public void addStopApiMenuListener(ActionListener listener) {
+        stopApiItem.addActionListener(listener);
+    }
+
+    /**
+     * Aggiorna lo stato delle voci di menu dell'API locale.
+     *
+     * @param running {@code true} se il server è attivo
+     * @param port    porta del server (ignorata se non attivo)
+     */
+    public void setApiRunning(boolean running, int port) {
+        startApiItem.setEnabled(!running);
+        stopApiItem.setEnabled(running);
+        stopApiItem.setText(running ? "Ferma API locale (porta " + port + ")" : "Ferma API locale");
+    }
+
+    /**
+     * Mostra in una finestra non modale il pannello con la previsione del saldo.
+     *
+     * @param forecast previsione da mostrare
+     */
+    public void showForecast(Forecast forecast) {
+        JDialog dialog = new JDialog(this, "Previsione saldo", false);
+        dialog.setContentPane(new ForecastPanel(forecast));
+        dialog.setSize(400, 450);
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    /**
+     * Mostra il resoconto di un'importazione CSV con righe scartate.
+     *
+     * @param fileName nome del file importato
+     * @param result   esito dell'importazione
+     * @return {@code true} se l'utente sceglie di importare le righe valide
+     */
+    public boolean showImportReport(String fileName, CsvImporter.Result result) {
+        return new ImportReportDialog(this, fileName, result).showDialog();
+    }
+
+    /**
+     * Mostra in una finestra non modale l'esito della riconciliazione di un estratto conto.
+     *
+     * @param fileName nome del file dell'estratto conto
+     * @param result   esito della riconciliazione
+     */
+    public void showReconciliation(String fileName, Reconciler.Result result) {
+        new ReconciliationDialog(this, fileName, result).setVisible(true);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Aggiungi conto...”.
+     */
+    public void addAddAccountMenuListener(ActionListener listener) {
+        addAccountItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Saldo complessivo”.
+     */
+    public void addTotalBalanceMenuListener(ActionListener listener) {
+        totalBalanceItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Carica tassi di cambio...”.
+     */
+    public void addLoadExchangeRatesMenuListener(ActionListener listener) {
+        loadRatesItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener della voce di menu “Riconcilia estratto conto...”.
+     */
+    public void addReconcileMenuListener(ActionListener listener) {
+        reconcileItem.addActionListener(listener);
+    }
+
+    /**
+     * Registra l'ActionListener chiamato quando l'utente cambia conto.
+     */
+    public void addAccountSelectionListener(ActionListener listener) {
+        accountCombo.addActionListener(listener);
+    }
+
+    /**
+     * Sostituisce l'elenco dei conti selezionabili.
+     *
+     * @param accounts nomi dei conti
+     * @param selected conto da mostrare come selezionato
+     */
+    public void setAccounts(List<String> accounts, String selected) {
+        accountCombo.setModel(new DefaultComboBoxModel<>(accounts.toArray(new String[0])));
+        accountCombo.setSelectedItem(selected);
+    }
+
+    /** @return il nome del conto selezionato, oppure null */
+    public String getSelectedAccount() {
+        return (String) accountCombo.getSelectedItem();
+    }
 }
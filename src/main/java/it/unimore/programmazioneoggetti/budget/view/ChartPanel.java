@@ -0,0 +1,211 @@
+package it.unimore.programmazioneoggetti.budget.view;
+
+import it.unimore.programmazioneoggetti.budget.model.DailySeries;
+import it.unimore.programmazioneoggetti.budget.util.Metrics;
+
+import javax.swing.*;
+import java.awt.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Pannello con due grafici disegnati in Java2D: in alto il saldo nel tempo
+ * (un punto per giorno), in basso le entrate e le uscite mensili.
+ * <p>
+ * I dati arrivano già aggregati per giorno da una {@link DailySeries}; il
+ * pannello non vede le singole transazioni. Prima del disegno le serie
+ * vengono ridotte alla larghezza in pixel con {@link SeriesDownsampler}, e
+ * la riduzione resta in cache finché non cambiano i dati o la larghezza,
+ * quindi i repaint costano O(pixel) qualunque sia la lunghezza della storia.
+ */
+public class ChartPanel extends JPanel {
+
+    private static final Metrics.Timer CHART_PAINT = Metrics.timer("view.chartPaint");
+
+    private static final int MARGIN_LEFT   = 100;
+    private static final int MARGIN_RIGHT  = 15;
+    private static final int MARGIN_TOP    = 25;
+    private static final int MARGIN_BOTTOM = 25;
+    private static final int GAP           = 40;
+
+    private static final Color BALANCE_COLOR = new Color(0x1f, 0x5f, 0xbf);
+    private static final Color INCOME_COLOR  = new Color(0x2e, 0x8b, 0x57);
+    private static final Color EXPENSE_COLOR = new Color(0xc0, 0x39, 0x2b);
+
+    private final DateTimeFormatter dateFormatter  = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private final DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MM/yyyy");
+
+    // Serie complete (null = nessun dato)
+    private DailySeries series;
+    private double[] balance;
+    private double[] monthlyIncome;
+    private double[] monthlyExpense;
+    private YearMonth firstMonth;
+
+    // Serie ridotte per la larghezza corrente (-1 = da ricalcolare)
+    private int cachedWidth = -1;
+    private SeriesDownsampler balanceColumns;
+    private double[] incomeBars;
+    private double[] expenseBars;
+
+    public ChartPanel() {
+        setBackground(Color.WHITE);
+        setPreferredSize(new Dimension(800, 450));
+    }
+
+    /**
+     * Imposta i dati da disegnare.
+     *
+     * @param series  serie giornaliera delle entrate e delle uscite
+     * @param opening saldo precedente al primo giorno della serie
+     */
+    public void setSeries(DailySeries series, double opening) {
+        if (series == null || series.isEmpty()) {
+            this.series = null;
+        } else {
+            this.series = series;
+            this.balance = series.cumulativeBalance(opening);
+            this.monthlyIncome = series.monthlyIncome();
+            this.monthlyExpense = series.monthlyExpense();
+            this.firstMonth = series.getFirstMonth();
+        }
+        cachedWidth = -1;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = Metrics.start();
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            if (series == null) {
+                g2.setColor(Color.GRAY);
+                g2.drawString("Nessuna transazione da mostrare", MARGIN_LEFT, MARGIN_TOP + 20);
+                return;
+            }
+            int plotWidth = Math.max(1, getWidth() - MARGIN_LEFT - MARGIN_RIGHT);
+            int available = getHeight() - MARGIN_TOP - MARGIN_BOTTOM - GAP;
+            if (available < 40) return;
+            if (plotWidth != cachedWidth) {
+                balanceColumns = SeriesDownsampler.minMax(balance, plotWidth);
+                // almeno 4 pixel per coppia di barre
+                incomeBars = SeriesDownsampler.sumGroups(monthlyIncome, plotWidth / 4);
+                expenseBars = SeriesDownsampler.sumGroups(monthlyExpense, plotWidth / 4);
+                cachedWidth = plotWidth;
+            }
+            int balanceHeight = available * 3 / 5;
+            Rectangle top = new Rectangle(MARGIN_LEFT, MARGIN_TOP, plotWidth, balanceHeight);
+            Rectangle bottom = new Rectangle(MARGIN_LEFT, MARGIN_TOP + balanceHeight + GAP,
+                    plotWidth, available - balanceHeight);
+            drawBalance(g2, top);
+            drawMonthly(g2, bottom);
+        } finally {
+            g2.dispose();
+            CHART_PAINT.stop(start);
+        }
+    }
+
+    /** Linea del saldo: un segmento min-max per colonna, collegato alla colonna precedente. */
+    private void drawBalance(Graphics2D g2, Rectangle area) {
+        SeriesDownsampler cols = balanceColumns;
+        double lo = Double.POSITIVE_INFINITY;
+        double hi = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < cols.size(); c++) {
+            lo = Math.min(lo, cols.min[c]);
+            hi = Math.max(hi, cols.max[c]);
+        }
+        lo = Math.min(lo, 0);
+        hi = Math.max(hi, 0);
+        drawFrame(g2, area, "Saldo nel tempo", lo, hi);
+        drawZeroLine(g2, area, lo, hi);
+
+        g2.setColor(BALANCE_COLOR);
+        int n = cols.size();
+        double step = (n > 1) ? (double) (area.width - 1) / (n - 1) : 0;
+        int prevX = -1;
+        int prevY = 0;
+        for (int c = 0; c < n; c++) {
+            int x = area.x + (int) Math.round(c * step);
+            int yMin = toY(cols.min[c], area, lo, hi);
+            int yMax = toY(cols.max[c], area, lo, hi);
+            if (prevX >= 0) {
+                g2.drawLine(prevX, prevY, x, toY(cols.first[c], area, lo, hi));
+            }
+            g2.drawLine(x, yMax, x, yMin);
+            prevX = x;
+            prevY = toY(cols.last[c], area, lo, hi);
+        }
+
+        g2.setColor(Color.DARK_GRAY);
+        String first = series.getFirstDay().format(dateFormatter);
+        String last = series.getLastDay().format(dateFormatter);
+        FontMetrics fm = g2.getFontMetrics();
+        g2.drawString(first, area.x, area.y + area.height + fm.getAscent() + 2);
+        g2.drawString(last, area.x + area.width - fm.stringWidth(last), area.y + area.height + fm.getAscent() + 2);
+    }
+
+    /** Barre affiancate delle entrate (verso l'alto) e delle uscite (verso il basso) per mese. */
+    private void drawMonthly(Graphics2D g2, Rectangle area) {
+        double hi = 0;
+        for (int i = 0; i < incomeBars.length; i++) {
+            hi = Math.max(hi, Math.max(incomeBars[i], expenseBars[i]));
+        }
+        if (hi == 0) hi = 1;
+        drawFrame(g2, area, "Entrate e uscite mensili", -hi, hi);
+        drawZeroLine(g2, area, -hi, hi);
+
+        int n = incomeBars.length;
+        double slot = (double) area.width / n;
+        int barWidth = Math.max(1, (int) (slot * 0.8));
+        int zero = toY(0, area, -hi, hi);
+        for (int i = 0; i < n; i++) {
+            int x = area.x + (int) (i * slot + (slot - barWidth) / 2);
+            int yIncome = toY(incomeBars[i], area, -hi, hi);
+            int yExpense = toY(-expenseBars[i], area, -hi, hi);
+            g2.setColor(INCOME_COLOR);
+            g2.fillRect(x, yIncome, barWidth, zero - yIncome);
+            g2.setColor(EXPENSE_COLOR);
+            g2.fillRect(x, zero, barWidth, yExpense - zero);
+        }
+
+        g2.setColor(Color.DARK_GRAY);
+        FontMetrics fm = g2.getFontMetrics();
+        String first = firstMonth.format(monthFormatter);
+        String last = firstMonth.plusMonths(monthlyIncome.length - 1L).format(monthFormatter);
+        g2.drawString(first, area.x, area.y + area.height + fm.getAscent() + 2);
+        g2.drawString(last, area.x + area.width - fm.stringWidth(last), area.y + area.height + fm.getAscent() + 2);
+    }
+
+    /** Titolo, bordo ed estremi dell'asse verticale di un grafico. */
+    private void drawFrame(Graphics2D g2, Rectangle area, String title, double lo, double hi) {
+        FontMetrics fm = g2.getFontMetrics();
+        g2.setColor(Color.BLACK);
+        g2.drawString(title, area.x, area.y - 6);
+        g2.setColor(Color.LIGHT_GRAY);
+        g2.drawRect(area.x, area.y, area.width, area.height);
+        g2.setColor(Color.DARK_GRAY);
+        String top = format(hi);
+        String bottom = format(lo);
+        g2.drawString(top, area.x - fm.stringWidth(top) - 5, area.y + fm.getAscent());
+        g2.drawString(bottom, area.x - fm.stringWidth(bottom) - 5, area.y + area.height);
+    }
+
+    private void drawZeroLine(Graphics2D g2, Rectangle area, double lo, double hi) {
+        g2.setColor(Color.LIGHT_GRAY);
+        int zero = toY(0, area, lo, hi);
+        g2.drawLine(area.x, zero, area.x + area.width, zero);
+    }
+
+    private static int toY(double value, Rectangle area, double lo, double hi) {
+        double range = (hi > lo) ? hi - lo : 1;
+        return area.y + area.height - (int) Math.round((value - lo) / range * area.height);
+    }
+
+    private static String format(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_EVEN).toPlainString();
+    }
+}
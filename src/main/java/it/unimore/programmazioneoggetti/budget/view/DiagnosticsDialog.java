@@ -0,0 +1,59 @@
+package it.unimore.programmazioneoggetti.budget.view;
+
+import it.unimore.programmazioneoggetti.budget.util.Metrics;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Finestra di diagnostica: mostra il report delle metriche raccolte da
+ * {@link Metrics} e permette di attivarle, disattivarle e azzerarle.
+ */
+public class DiagnosticsDialog extends JDialog {
+
+    private final JTextArea reportArea;
+    private final JToggleButton enableButton;
+
+    /**
+     * Costruisce la finestra (non modale) di diagnostica.
+     *
+     * @param owner frame principale
+     */
+    public DiagnosticsDialog(Frame owner) {
+        super(owner, "Diagnostica", false);
+        setLayout(new BorderLayout(5, 5));
+
+        reportArea = new JTextArea(25, 90);
+        reportArea.setEditable(false);
+        reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        add(new JScrollPane(reportArea), BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        enableButton = new JToggleButton("Metriche attive", Metrics.isEnabled());
+        enableButton.addActionListener(e -> {
+            Metrics.setEnabled(enableButton.isSelected());
+            refresh();
+        });
+        JButton refreshButton = new JButton("Aggiorna");
+        refreshButton.addActionListener(e -> refresh());
+        JButton resetButton = new JButton("Azzera");
+        resetButton.addActionListener(e -> {
+            Metrics.reset();
+            refresh();
+        });
+        buttons.add(enableButton);
+        buttons.add(resetButton);
+        buttons.add(refreshButton);
+        add(buttons, BorderLayout.SOUTH);
+
+        refresh();
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    /** Rilegge il report delle metriche. */
+    private void refresh() {
+        reportArea.setText(Metrics.report());
+        reportArea.setCaretPosition(0);
+    }
+}
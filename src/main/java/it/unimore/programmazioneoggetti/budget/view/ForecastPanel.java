@@ -0,0 +1,46 @@
+package it.unimore.programmazioneoggetti.budget.view;
+
+import it.unimore.programmazioneoggetti.budget.model.CashFlowForecaster.Forecast;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+/**
+ * Pannello che mostra una previsione del saldo: una riga per mese con il
+ * saldo previsto a fine mese.
+ */
+public class ForecastPanel extends JPanel {
+
+    private final DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MM/yyyy");
+
+    /**
+     * Costruisce il pannello per la previsione indicata.
+     *
+     * @param forecast previsione da mostrare
+     */
+    public ForecastPanel(Forecast forecast) {
+        super(new BorderLayout(5, 5));
+        setBorder(new EmptyBorder(10, 10, 10, 10));
+
+        DefaultTableModel model = new DefaultTableModel(new String[]{"Mese", "Saldo previsto"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        for (Map.Entry<YearMonth, Double> e : forecast.monthlyBalance().entrySet()) {
+            String balance = BigDecimal.valueOf(e.getValue()).setScale(2, RoundingMode.HALF_EVEN).toString();
+            model.addRow(new Object[]{e.getKey().format(monthFormatter), balance});
+        }
+        add(new JLabel("Saldo previsto a fine mese (media mobile con stagionalità mensile)"),
+                BorderLayout.NORTH);
+        add(new JScrollPane(new JTable(model)), BorderLayout.CENTER);
+    }
+}
@@ -0,0 +1,96 @@
+package it.unimore.programmazioneoggetti.budget.view;
+
+import it.unimore.programmazioneoggetti.budget.util.CsvImporter;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * Resoconto di un'importazione CSV con righe scartate: mostra quante righe
+ * sono valide, l'elenco degli errori (riga, motivo, testo) e chiede se
+ * importare comunque le righe valide.
+ */
+public class ImportReportDialog extends JDialog {
+
+    private boolean accepted;
+
+    /**
+     * Costruisce la finestra modale del resoconto.
+     *
+     * @param owner    frame principale
+     * @param fileName nome del file importato
+     * @param result   esito dell'importazione
+     */
+    public ImportReportDialog(Frame owner, String fileName, CsvImporter.Result result) {
+        super(owner, "Importazione di " + fileName, true);
+        setLayout(new BorderLayout(5, 5));
+
+        String summary = "<html>Righe valide: <b>" + result.getValid().size() + "</b> &nbsp; "
+                + "Righe scartate: <b>" + result.getErrorCount() + "</b>"
+                + (result.isTruncated() ? " (mostrate le prime " + result.getErrors().size() + ")" : "")
+                + "</html>";
+        JLabel summaryLabel = new JLabel(summary);
+        summaryLabel.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+        add(summaryLabel, BorderLayout.NORTH);
+
+        JTable table = new JTable(new ErrorTableModel(result.getErrors()));
+        table.getColumnModel().getColumn(0).setPreferredWidth(60);
+        table.getColumnModel().getColumn(1).setPreferredWidth(220);
+        table.getColumnModel().getColumn(2).setPreferredWidth(420);
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setPreferredSize(new Dimension(720, 300));
+        add(scroll, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton importButton = new JButton("Importa righe valide");
+        importButton.setEnabled(!result.getValid().isEmpty());
+        importButton.addActionListener(e -> {
+            accepted = true;
+            dispose();
+        });
+        JButton cancelButton = new JButton("Annulla");
+        cancelButton.addActionListener(e -> dispose());
+        buttons.add(importButton);
+        buttons.add(cancelButton);
+        add(buttons, BorderLayout.SOUTH);
+
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    /**
+     * Mostra la finestra e attende la scelta dell'utente.
+     *
+     * @return {@code true} se l'utente ha scelto di importare le righe valide
+     */
+    public boolean showDialog() {
+        setVisible(true);
+        return accepted;
+    }
+
+    /** Righe scartate, in sola lettura. */
+    private static final class ErrorTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"Riga", "Motivo", "Testo"};
+        private final List<CsvImporter.LineError> errors;
+
+        ErrorTableModel(List<CsvImporter.LineError> errors) {
+            this.errors = errors;
+        }
+
+        @Override public int getRowCount()              { return errors.size(); }
+        @Override public int getColumnCount()           { return COLUMNS.length; }
+        @Override public String getColumnName(int col)  { return COLUMNS[col]; }
+
+        @Override
+        public Object getValueAt(int row, int col) {
+            CsvImporter.LineError err = errors.get(row);
+            switch (col) {
+                case 0:  return err.getLineNumber();
+                case 1:  return err.getReason();
+                default: return err.getText();
+            }
+        }
+    }
+}
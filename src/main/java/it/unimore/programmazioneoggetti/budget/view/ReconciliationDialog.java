@@ -0,0 +1,113 @@
+package it.unimore.programmazioneoggetti.budget.view;
+
+import it.unimore.programmazioneoggetti.budget.model.Reconciler;
+import it.unimore.programmazioneoggetti.budget.model.Transaction;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Esito della riconciliazione di un estratto conto: tre schede con le righe
+ * abbinate a una transazione del bilancio, quelle ambigue (più candidati) e
+ * quelle senza alcun candidato.
+ */
+public class ReconciliationDialog extends JDialog {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    /**
+     * Costruisce la finestra (non modale) dell'esito.
+     *
+     * @param owner    frame principale
+     * @param fileName nome del file dell'estratto conto
+     * @param result   esito della riconciliazione
+     */
+    public ReconciliationDialog(Frame owner, String fileName, Reconciler.Result result) {
+        super(owner, "Riconciliazione di " + fileName, false);
+        setLayout(new BorderLayout(5, 5));
+
+        List<Reconciler.Match> matched = result.getMatched();
+        List<Reconciler.Ambiguity> ambiguous = result.getAmbiguous();
+        List<Transaction> unmatched = result.getUnmatched();
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Abbinate (" + matched.size() + ")", table(new RowTableModel<>(matched,
+                new String[]{"Data estratto", "Descrizione estratto", "Importo", "Data bilancio",
+                        "Descrizione bilancio", "Somiglianza"},
+                m -> new Object[]{
+                        date(m.getStatementLine()), m.getStatementLine().getDescription(),
+                        amount(m.getStatementLine()), date(m.getTransaction()),
+                        m.getTransaction().getDescription(), Math.round(m.getSimilarity() * 100) + "%"})));
+        tabs.addTab("Ambigue (" + ambiguous.size() + ")", table(new RowTableModel<>(ambiguous,
+                new String[]{"Data estratto", "Descrizione estratto", "Importo", "Candidati"},
+                a -> new Object[]{
+                        date(a.getStatementLine()), a.getStatementLine().getDescription(),
+                        amount(a.getStatementLine()), candidates(a.getCandidates())})));
+        tabs.addTab("Non trovate (" + unmatched.size() + ")", table(new RowTableModel<>(unmatched,
+                new String[]{"Data", "Descrizione", "Importo"},
+                t -> new Object[]{date(t), t.getDescription(), amount(t)})));
+        add(tabs, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton closeButton = new JButton("Chiudi");
+        closeButton.addActionListener(e -> dispose());
+        buttons.add(closeButton);
+        add(buttons, BorderLayout.SOUTH);
+
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    private static JScrollPane table(AbstractTableModel model) {
+        JScrollPane scroll = new JScrollPane(new JTable(model));
+        scroll.setPreferredSize(new Dimension(820, 360));
+        return scroll;
+    }
+
+    private static String date(Transaction t) {
+        return t.getDate().format(DATE_FORMATTER);
+    }
+
+    private static String amount(Transaction t) {
+        return t.signedAmount().toPlainString() + " " + t.getCurrency();
+    }
+
+    private static String candidates(List<Transaction> candidates) {
+        StringBuilder sb = new StringBuilder();
+        for (Transaction t : candidates) {
+            if (sb.length() > 0) sb.append("; ");
+            sb.append(date(t)).append(' ').append(t.getDescription());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Tabella in sola lettura su una lista: ogni elemento diventa una riga
+     * solo quando viene disegnato, quindi anche esiti con centinaia di
+     * migliaia di righe si aprono subito.
+     */
+    private static final class RowTableModel<T> extends AbstractTableModel {
+        private final List<T> rows;
+        private final String[] columns;
+        private final Function<T, Object[]> cells;
+
+        RowTableModel(List<T> rows, String[] columns, Function<T, Object[]> cells) {
+            this.rows = rows;
+            this.columns = columns;
+            this.cells = cells;
+        }
+
+        @Override public int getRowCount()              { return rows.size(); }
+        @Override public int getColumnCount()           { return columns.length; }
+        @Override public String getColumnName(int col)  { return columns[col]; }
+
+        @Override
+        public Object getValueAt(int row, int col) {
+            return cells.apply(rows.get(row))[col];
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package it.unimore.programmazioneoggetti.budget.view;
+
+/**
+ * Riduzione min/max di una serie numerica alla larghezza in pixel di un
+ * grafico: i punti vengono divisi in tante colonne contigue quante sono le
+ * colonne disponibili e di ogni colonna si tengono minimo, massimo, primo e
+ * ultimo valore. Disegnando per ogni colonna il segmento verticale
+ * min-max, e unendo l'ultimo valore di una colonna al primo della
+ * successiva, il grafico è identico a quello di tutti i punti (picchi
+ * compresi) ma costa O(colonne) invece di O(punti).
+ */
+final class SeriesDownsampler {
+
+    final double[] min;
+    final double[] max;
+    final double[] first;
+    final double[] last;
+
+    private SeriesDownsampler(int columns) {
+        min = new double[columns];
+        max = new double[columns];
+        first = new double[columns];
+        last = new double[columns];
+    }
+
+    /** @return numero di colonne della serie ridotta */
+    int size() {
+        return min.length;
+    }
+
+    /**
+     * Riduce la serie a (al più) {@code columns} colonne. Se i punti sono
+     * meno delle colonne, ogni punto occupa una colonna.
+     *
+     * @param values  serie completa
+     * @param columns numero massimo di colonne (almeno 1)
+     * @return serie ridotta
+     */
+    static SeriesDownsampler minMax(double[] values, int columns) {
+        int n = values.length;
+        int cols = Math.min(n, Math.max(1, columns));
+        SeriesDownsampler result = new SeriesDownsampler(cols);
+        for (int c = 0; c < cols; c++) {
+            int from = (int) ((long) c * n / cols);
+            int to = (int) ((long) (c + 1) * n / cols);
+            double lo = values[from];
+            double hi = values[from];
+            for (int i = from + 1; i < to; i++) {
+                double v = values[i];
+                if (v < lo) lo = v;
+                if (v > hi) hi = v;
+            }
+            result.min[c] = lo;
+            result.max[c] = hi;
+            result.first[c] = values[from];
+            result.last[c] = values[to - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Somma gruppi contigui di valori in modo da ottenere al più
+     * {@code columns} valori (usato per le barre mensili).
+     *
+     * @param values  serie completa
+     * @param columns numero massimo di valori (almeno 1)
+     * @return serie con i valori sommati per gruppo
+     */
+    static double[] sumGroups(double[] values, int columns) {
+        int n = values.length;
+        int cols = Math.min(n, Math.max(1, columns));
+        double[] result = new double[cols];
+        for (int c = 0; c < cols; c++) {
+            int from = (int) ((long) c * n / cols);
+            int to = (int) ((long) (c + 1) * n / cols);
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += values[i];
+            }
+            result[c] = sum;
+        }
+        return result;
+    }
+}
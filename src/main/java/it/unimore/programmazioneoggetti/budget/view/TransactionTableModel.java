@@ -1,30 +1,59 @@
 package it.unimore.programmazioneoggetti.budget.view;
-import java.math.BigDecimal;
 
 import it.unimore.programmazioneoggetti.budget.model.Transaction;
 
 import javax.swing.table.AbstractTableModel;
+import java.math.BigDecimal;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * TableModel personalizzato per mostrare una lista di Transaction in una JTable.
+ * Le stringhe visualizzate (data e importo) vengono calcolate una sola volta per
+ * riga e tenute in cache fino al successivo {@link #setTransactions(List)}, così
+ * lo scorrimento e i repaint della tabella non allocano nuovi oggetti.
+ * <p>
+ * Il model supporta l'ordinamento per data, descrizione, importo con segno,
+ * categoria e valuta: per ogni colonna viene precalcolata una chiave primitiva (giorno
+ * epoch, rango dell'importo o del testo) e l'ordinamento risultante viene
+ * riusato finché i dati non cambiano.
  */
 public class TransactionTableModel extends AbstractTableModel {
 
     private final List<Transaction> transactions;
-    private final String[] columnNames = {"Data", "Descrizione", "Importo"};
+    private final String[] columnNames = {"Data", "Descrizione", "Importo", "Categoria", "Valuta"};
 
     // Formatter per visualizzare LocalDate in formato leggibile (dd/MM/yyyy)
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
+    // Cache delle celle già formattate, indicizzate per riga (null = non ancora calcolata)
+    private String[] dateCache   = new String[0];
+    private String[] amountCache = new String[0];
+
+    /** Sotto questa soglia l'ordinamento è sequenziale, sopra usa {@code Arrays.parallelSort}. */
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+
+    // Chiavi di ordinamento precalcolate per colonna (null = non ancora calcolate)
+    private final long[][] sortKeys = new long[5][];
+
+    // Ordinamento corrente: riga della vista -> indice in transactions (null = ordine naturale)
+    private int[]   viewToModel;
+    private int     sortColumn = -1;
+    private boolean ascending  = true;
+
     public TransactionTableModel() {
         this.transactions = new ArrayList<>();
     }
 
     /**
-     * Aggiorna l'intera lista di transazioni e notifica la JTable di rinfrescare.
+     * Aggiorna l'intera lista di transazioni, invalida la cache delle celle
+     * e notifica la JTable di rinfrescare.
      *
      * @param list lista di Transaction da mostrare
      */
@@ -33,9 +62,38 @@ public class TransactionTableModel extends AbstractTableModel {
         if (list != null) {
             transactions.addAll(list);
         }
+        dateCache   = new String[transactions.size()];
+        amountCache = new String[transactions.size()];
+        Arrays.fill(sortKeys, null);
+        viewToModel = null;
+        if (sortColumn >= 0) {
+            // i dati sono cambiati: ricalcola l'ordinamento sulla colonna corrente
+            viewToModel = computeOrder(sortColumn, ascending);
+        }
         fireTableDataChanged();
     }
 
+    /**
+     * Aggiunge righe in coda alla tabella senza ricalcolare le celle già
+     * presenti. Se la tabella è ordinata, l'ordinamento viene ricalcolato.
+     *
+     * @param list transazioni da aggiungere
+     */
+    public void appendTransactions(List<Transaction> list) {
+        if (list == null || list.isEmpty()) return;
+        int first = transactions.size();
+        transactions.addAll(list);
+        dateCache   = Arrays.copyOf(dateCache, transactions.size());
+        amountCache = Arrays.copyOf(amountCache, transactions.size());
+        Arrays.fill(sortKeys, null);
+        if (sortColumn >= 0) {
+            viewToModel = computeOrder(sortColumn, ascending);
+            fireTableDataChanged();
+        } else {
+            fireTableRowsInserted(first, transactions.size() - 1);
+        }
+    }
+
     @Override
     public int getRowCount() {
         return transactions.size();
@@ -51,23 +109,43 @@ public class TransactionTableModel extends AbstractTableModel {
         return columnNames[column];
     }
 
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        return String.class;
+    }
+
     /**
      * Ritorna il valore da mostrare nella cella [rowIndex, columnIndex].
-     * Col 0 = Data (formattata), Col 1 = Descrizione, Col 2 = Importo con segno.
+     * Col 0 = Data (formattata), Col 1 = Descrizione, Col 2 = Importo con segno,
+     * Col 3 = Categoria, Col 4 = Valuta dell'importo.
+     * Le celle formattate vengono calcolate al primo accesso e poi riusate.
      */
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        Transaction t = transactions.get(rowIndex);
+        rowIndex = toModelIndex(rowIndex);
         switch (columnIndex) {
             case 0:
-                // format da LocalDate in dd/MM/yyyy
-                return t.getDate().format(dateFormatter);
+                // format da LocalDate in dd/MM/yyyy, calcolato una sola volta per riga
+                String date = dateCache[rowIndex];
+                if (date == null) {
+                    date = transactions.get(rowIndex).getDate().format(dateFormatter);
+                    dateCache[rowIndex] = date;
+                }
+                return date;
             case 1:
-                return t.getDescription();
+                return transactions.get(rowIndex).getDescription();
             case 2:
                 // mostriamo signedAmount() come stringa, es. "-600.00" o "+1500.00"
-                BigDecimal signed = t.signedAmount();
-                return signed.toString();
+                String amount = amountCache[rowIndex];
+                if (amount == null) {
+                    amount = transactions.get(rowIndex).signedAmount().toString();
+                    amountCache[rowIndex] = amount;
+                }
+                return amount;
+            case 3:
+                return transactions.get(rowIndex).getCategory();
+            case 4:
+                return transactions.get(rowIndex).getCurrency();
             default:
                 return null;
         }
@@ -84,6 +162,146 @@ public class TransactionTableModel extends AbstractTableModel {
         if (rowIndex < 0 || rowIndex >= transactions.size()) {
             return null;
         }
-        return transactions.get(rowIndex);
+        return transactions.get(toModelIndex(rowIndex));
+    }
+
+    /**
+     * Ordina la tabella in base alla colonna indicata. Se la colonna è già
+     * quella di ordinamento, inverte il verso (crescente/decrescente).
+     *
+     * @param column indice di colonna (0 = Data, 1 = Descrizione, 2 = Importo, 3 = Categoria, 4 = Valuta)
+     */
+    public void toggleSort(int column) {
+        if (column < 0 || column >= columnNames.length) return;
+        boolean asc = (column == sortColumn) ? !ascending : true;
+        sortBy(column, asc);
+    }
+
+    /**
+     * Ordina la tabella in base alla colonna e al verso indicati.
+     *
+     * @param column    indice di colonna (0 = Data, 1 = Descrizione, 2 = Importo, 3 = Categoria, 4 = Valuta)
+     * @param ascending {@code true} per ordine crescente
+     */
+    public void sortBy(int column, boolean ascending) {
+        if (column < 0 || column >= columnNames.length) return;
+        if (column == sortColumn && ascending == this.ascending && viewToModel != null) {
+            return; // ordinamento già valido per i dati correnti
+        }
+        this.sortColumn  = column;
+        this.ascending   = ascending;
+        this.viewToModel = computeOrder(column, ascending);
+        fireTableDataChanged();
+    }
+
+    /** @return colonna di ordinamento corrente, oppure -1 se non ordinata */
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    /** @return {@code true} se l'ordinamento corrente è crescente */
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    private int toModelIndex(int viewIndex) {
+        return (viewToModel == null) ? viewIndex : viewToModel[viewIndex];
+    }
+
+    /**
+     * Calcola la permutazione vista -> model per la colonna richiesta.
+     * L'ordinamento è stabile: a parità di chiave vale l'ordine di inserimento.
+     * Chiave e posizione sono impacchettate in un long (chiave nei 32 bit alti,
+     * posizione nei 32 bassi) e ordinate come primitivi, senza comparatore.
+     */
+    private int[] computeOrder(int column, boolean asc) {
+        long[] keys = keysFor(column);
+        int n = keys.length;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            long key = asc ? keys[i] : -keys[i];
+            packed[i] = (key << 32) | i;
+        }
+        if (n >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(packed);
+        } else {
+            Arrays.sort(packed);
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) packed[i];
+        }
+        return order;
+    }
+
+    /**
+     * Restituisce (calcolandole se necessario) le chiavi primitive di una colonna.
+     */
+    private long[] keysFor(int column) {
+        long[] keys = sortKeys[column];
+        if (keys != null) return keys;
+        int n = transactions.size();
+        keys = new long[n];
+        switch (column) {
+            case 0:
+                for (int i = 0; i < n; i++) {
+                    keys[i] = transactions.get(i).getDate().toEpochDay();
+                }
+                break;
+            case 1:
+                rankKeys(keys, Transaction::getDescription);
+                break;
+            case 3:
+                rankKeys(keys, Transaction::getCategory);
+                break;
+            case 4:
+                rankKeys(keys, Transaction::getCurrency);
+                break;
+            default:
+                rankAmounts(keys);
+                break;
+        }
+        sortKeys[column] = keys;
+        return keys;
+    }
+
+    /**
+     * Riempie le chiavi con il rango del testo di ogni riga tra i testi
+     * distinti ordinati (senza distinguere maiuscole e minuscole).
+     */
+    private void rankKeys(long[] keys, Function<Transaction, String> text) {
+        String[] distinct = transactions.stream()
+                .map(text)
+                .distinct()
+                .sorted(String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder()))
+                .toArray(String[]::new);
+        Map<String, Integer> rank = new HashMap<>(distinct.length * 2);
+        for (int i = 0; i < distinct.length; i++) {
+            rank.put(distinct[i], i);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rank.get(text.apply(transactions.get(i)));
+        }
+    }
+
+    /**
+     * Riempie le chiavi con il rango esatto dell'importo con segno di ogni
+     * riga tra gli importi distinti ordinati: i BigDecimal si confrontano una
+     * volta sola qui, non a ogni confronto dell'ordinamento.
+     */
+    private void rankAmounts(long[] keys) {
+        BigDecimal[] amounts = new BigDecimal[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            amounts[i] = transactions.get(i).signedAmount();
+        }
+        // stripTrailingZeros: 1.0 e 1.00 sono lo stesso importo
+        BigDecimal[] distinct = Arrays.stream(amounts)
+                .map(BigDecimal::stripTrailingZeros)
+                .distinct()
+                .sorted()
+                .toArray(BigDecimal[]::new);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Arrays.binarySearch(distinct, amounts[i]);
+        }
     }
 }